@@ -132,7 +132,7 @@ public class MainActivity extends Activity implements OnClickListener {
 	/**
 	 * Called when a view has been clicked. For more information read the
 	 * method description in OnClickListener. If the play_button was clicked it
-	 * starts the SettingsActivity.
+	 * starts the SettingsActivity, after the quests are loaded.
 	 *
 	 * @param v The view that was clicked.
 	 * @see OnClickListener
@@ -143,7 +143,21 @@ public class MainActivity extends Activity implements OnClickListener {
 		if (v == this.play_button) {
 			if (GameDataManager.enoughPlayer()) {
 				findViewById(R.id.choose_some_player).setVisibility(View.GONE);
-				startActivity(new Intent(MainActivity.this, SettingsActivity.class));
+				this.play_button.setEnabled(false);
+				GameDataManager.whenQuestsReady(new Runnable() {
+
+					/**
+					 * Starts the SettingsActivity as soon as the quests are
+					 * loaded.
+					 */
+					@Override
+					public void run() {
+						play_button.setEnabled(true);
+						if (!isFinishing()) {
+							startActivity(new Intent(MainActivity.this, SettingsActivity.class));
+						}
+					}
+				});
 			} else {
 				findViewById(R.id.choose_some_player).setVisibility(View.VISIBLE);
 			}
@@ -211,11 +225,12 @@ public class MainActivity extends Activity implements OnClickListener {
 			}
 		});
 
+		// Quests are loaded in the background while the users are read.
+		GameDataManager.onCreate(this);
 		ArrayList<User> userListActive = new ArrayList<>();
 		userList = new ArrayList<>();
 		DataAccess.getUsers(this, userListActive, userList);
 
-		GameDataManager.onCreate(this);
 		for (User u: userListActive) {
 			GameDataManager.addPlayer(u);
 			userList.add(0, u);
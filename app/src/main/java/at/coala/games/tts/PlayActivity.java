@@ -112,6 +112,19 @@ public class PlayActivity extends Activity implements OnClickListener {
 		GameDataManager.saveGameData(this);
 	}
 
+	/**
+	 * Called when the activity will start interacting with the user. For more
+	 * information read the method description in Activity. This method loads
+	 * quest packs added since the game started.
+	 *
+	 * @see Activity
+	 */
+	@Override
+	protected void onResume() {
+		super.onResume();
+		GameDataManager.loadQuestPacks(this);
+	}
+
 	/**
 	 * This method sets the text to all text views and hides the no_button if
 	 * there is no text to show.
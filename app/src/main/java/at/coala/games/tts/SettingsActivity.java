@@ -59,6 +59,14 @@ public class SettingsActivity extends Activity {
 	 */
 	CheckBox custom_options;
 
+	/**
+	 * A CheckBox checked if quests are drawn out of decks, so no quest comes
+	 * up twice before all quests of its category came up.
+	 *
+	 * @see CheckBox
+	 */
+	CheckBox deck_mode;
+
 	/**
 	 * A RadioButton representing a very deep friendship between players.
 	 *
@@ -172,6 +180,12 @@ public class SettingsActivity extends Activity {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_settings);
 
+		/**
+		 * The settings validate the quests. This only blocks if the user got
+		 * here before the quests finished loading.
+		 */
+		GameDataManager.awaitQuests();
+
 		/**
 		 * Location Radio Group
 		 */
@@ -218,6 +232,33 @@ public class SettingsActivity extends Activity {
 		}
 		this.collapsible_options.add(this.already_drunk);
 
+		/**
+		 * Checkbox deck_mode
+		 */
+		this.deck_mode = (CheckBox)findViewById(R.id.deck_mode);
+		if (DataAccess.getSetting(this, Settings.ATTRIBUTE_DECK_MODE, false)) {
+			this.deck_mode.setChecked(true);
+		}
+		this.deck_mode.setOnCheckedChangeListener(new OnCheckedChangeListener() {
+
+			/**
+			 * Called when the checked state of a compound button has changed.
+			 * For more information read the method description in
+			 * OnCheckedChangeListener. This method listens to the deck mode
+			 * check box and sets the new deck mode.
+			 *
+			 * @param buttonView The compound button view whose state has changed.
+			 * @param isChecked The new checked state of buttonView.
+			 * @see CompoundButton
+			 * @see OnCheckedChangeListener
+			 */
+			@Override
+			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+				onDeckModeChange(isChecked);
+			}
+		});
+		this.collapsible_options.add(this.deck_mode);
+
 		/**
 		 * Friendship Level Radio Group
 		 */
@@ -372,6 +413,7 @@ public class SettingsActivity extends Activity {
 					radio_private_game.setChecked(true);
 					friends_loose.setChecked(true);
 					already_drunk.setChecked(false);
+					deck_mode.setChecked(false);
 					requirement_cream.setChecked(false);
 					requirement_dance.setChecked(false);
 					requirement_ice_cube.setChecked(false);
@@ -443,6 +485,16 @@ public class SettingsActivity extends Activity {
 				GameDataManager.getValidQuestTextCount()));
 	}
 
+	/**
+	 * Updates the deck mode in game and database.
+	 *
+	 * @param isChecked true if quests are drawn out of decks; false if not.
+	 */
+	private void onDeckModeChange(boolean isChecked) {
+		GameDataManager.setDeckMode(isChecked);
+		DataAccess.updateSetting(this, Settings.ATTRIBUTE_DECK_MODE, isChecked);
+	}
+
 	/**
 	 * Updates the friendship level in  game and database.
 	 *
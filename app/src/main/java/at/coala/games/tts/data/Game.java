@@ -4,10 +4,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import at.coala.games.tts.data.quest.Quest;
 import at.coala.games.tts.data.quest.QuestConfiguration;
-import at.coala.games.tts.game.GameDataManager;
 
 /**
  * This class stores and maintains the players through a game.
@@ -104,6 +104,14 @@ public class Game {
      */
     private List<User> player_all = new LinkedList<>();
 
+    /**
+     * A private static number generator shared by all game data, so quest
+     * data can be used without the game package.
+     *
+     * @see Random
+     */
+    private static Random r = new Random();
+
     /**
      * A local List storing these users whose data has changed (game points
      * e.g.) This list can be retrieved via getChangedUserList() and is reset
@@ -279,6 +287,13 @@ public class Game {
      */
     public int getQuestLevel() { return conf.level; }
 
+    /**
+     * Calls nextDouble() with the shared number generator.
+     *
+     * @return a double between 0 and 1.
+     */
+    public static double getRandom() { return r.nextDouble(); }
+
     /**
      * Returns a list of all Users where data changes should be stored.
      *
@@ -317,6 +332,11 @@ public class Game {
         while (player_all.contains(player)) player_all.remove(player);
     }
 
+    /**
+     * Replaces the shared number generator with a new one.
+     */
+    public static void resetRandom() { r = new Random(); }
+
     /**
      * Resets all game data for a new game.
      */
@@ -382,7 +402,7 @@ public class Game {
         for (int i = 1; i < last_call.length; i++) {
             weight[i] = weight[i - 1] + (last_call[i] * (double)category_probability[i]);
         }
-        double random = GameDataManager.getRandom() * weight[weight.length -1];
+        double random = getRandom() * weight[weight.length -1];
         for (int c = 0; c < weight.length; c++) {
             if (weight[c] >= random) return c;
         }
@@ -417,7 +437,7 @@ public class Game {
                             Math.max(Math.round(5 - i), 1));
                 else weight[i] = weight[i - 1];
             }
-            double random = GameDataManager.getRandom() * weight[weight.length -1];
+            double random = getRandom() * weight[weight.length -1];
             for (int i = 0; i < weight.length; i++) {
                 if (random < weight[i]) return player_all.get(i);
             }
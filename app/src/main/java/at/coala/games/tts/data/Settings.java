@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import at.coala.games.tts.data.quest.Quest;
-import at.coala.games.tts.game.GameDataManager;
 
 /**
  * This class contains all the settings and parameters that can be set for this
@@ -63,6 +62,13 @@ public class Settings {
      */
     public static final int DEFAULT_SKIP = Quest.SKIP_FALSE;
 
+    /**
+     * A constant holding the default weight of a quest.
+     *
+     * @see Quest
+     */
+    public static final int DEFAULT_WEIGHT = 1;
+
     /**
      * TODO
      * static fields and methods
@@ -87,10 +93,22 @@ public class Settings {
 
     private static List<Integer> default_requirements = new ArrayList<>();
 
+    /**
+     * A local variable set true if quests are drawn out of decks, so no
+     * quest comes up twice before all quests of its category came up.
+     */
+    private boolean deck_mode = false;
+
     private int friendship_level = Game.FRIENDS_LOOSE;
 
     private int location = Game.LOCATION_PRIVATE;
 
+    /**
+     * A local variable containing the number of players in the current game,
+     * used to balance the category probability.
+     */
+    private int player_count = 0;
+
     // TODO documentation
     public static final int ATTRIBUTE_ALREADY_DRUNK = 0;
     public static final int ATTRIBUTE_CUSTOM_SETTINGS = ATTRIBUTE_ALREADY_DRUNK + 1;
@@ -101,10 +119,12 @@ public class Settings {
     public static final int ATTRIBUTE_REQUIREMENT_ICE_CUBE = ATTRIBUTE_REQUIREMENT_DANCE + 1;
     public static final int ATTRIBUTE_REQUIREMENT_POOL = ATTRIBUTE_REQUIREMENT_ICE_CUBE + 1;
     public static final int ATTRIBUTE_REQUIREMENT_PENCIL = ATTRIBUTE_REQUIREMENT_POOL + 1;
+    public static final int ATTRIBUTE_DECK_MODE = ATTRIBUTE_REQUIREMENT_PENCIL + 1;
 
     // TODO documentation
     private static final String ATTRIBUTE_STRING_ALREADY_DRUNK = "already_drunk";
     private static final String ATTRIBUTE_STRING_CUSTOM_SETTINGS = "custom_settings";
+    private static final String ATTRIBUTE_STRING_DECK_MODE = "deck_mode";
     private static final String ATTRIBUTE_STRING_FRIENDSHIP_LEVEL = "friendship_level";
     private static final String ATTRIBUTE_STRING_GAME_LOCATION = "game_location";
     private static final String ATTRIBUTE_STRING_REQUIREMENT_CREAM = "requirement_cream";
@@ -153,7 +173,7 @@ public class Settings {
      * TODO
      */
     private void calculateCategoryProbability() {
-        int pc = GameDataManager.getPlayerCount();
+        int pc = player_count;
 
         if (default_probability == null) default_probability = new int[Quest.CATEGORY_SUM];
         default_probability[Quest.CATEGORY_CLOTHES_BACK_ON] = DEFAULT_PROBABILITY_CLOTHES_BACK_ON
@@ -205,6 +225,21 @@ public class Settings {
                         ? (pc > 9 ? 5 : pc > 7 ? 4 : pc > 5 ? 3 : pc > 3 ? 2 : 1) : 0);
     }
 
+    /**
+     * Sets if quests are drawn out of decks.
+     *
+     * @param deck_mode true if quests are drawn without replacement; false
+     *                  if not.
+     */
+    public void setDeckMode(boolean deck_mode) { this.deck_mode = deck_mode; }
+
+    /**
+     * Returns if quests are drawn out of decks.
+     *
+     * @return true if quests are drawn without replacement; false if not.
+     */
+    public boolean isDeckMode() { return deck_mode; }
+
     /**
      * TODO
      *
@@ -219,6 +254,15 @@ public class Settings {
      */
     public int getLocation() { return location; }
 
+    /**
+     * Sets the number of players in the current game. The category
+     * probability is calculated with this number the next time the
+     * friendship level changes.
+     *
+     * @param player_count the number of players.
+     */
+    public void setPlayerCount(int player_count) { this.player_count = player_count; }
+
     /**
      * TODO
      *
@@ -272,6 +316,8 @@ public class Settings {
                 return ATTRIBUTE_STRING_ALREADY_DRUNK;
             case ATTRIBUTE_CUSTOM_SETTINGS:
                 return ATTRIBUTE_STRING_CUSTOM_SETTINGS;
+            case ATTRIBUTE_DECK_MODE:
+                return ATTRIBUTE_STRING_DECK_MODE;
             case ATTRIBUTE_FRIENDSHIP_LEVEL:
                 return ATTRIBUTE_STRING_FRIENDSHIP_LEVEL;
             case ATTRIBUTE_GAME_LOCATION:
@@ -0,0 +1,99 @@
+package at.coala.games.tts.data.quest;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool canonicalizing equal objects while quests are loaded. The first
+ * instance offered for a value is kept and returned for every equal value
+ * offered later, so repeated sources, comments, rule ids and configurations
+ * share one instance in the loaded quests. The pool is meant to live only as
+ * long as one load and should be dropped afterwards, it does not shrink.
+ *
+ * The pool may be used by multiple threads at the same time. It counts an
+ * estimate of the heap bytes saved by every replaced instance.
+ *
+ * @author Klaus
+ * @see QuestCreator
+ */
+public class DedupPool {
+
+    /**
+     * A constant containing the estimated heap size of a QuestConfiguration:
+     * object header and six int fields.
+     */
+    private static final int CONFIGURATION_SIZE = 8 + 6 * 4;
+
+    /**
+     * A constant containing the estimated heap size of an empty String:
+     * object header, fields and the header of its character array.
+     */
+    private static final int STRING_SIZE = 8 + 12 + 16;
+
+    /**
+     * The estimated number of heap bytes saved by now.
+     *
+     * @see AtomicLong
+     */
+    private final AtomicLong bytes_saved = new AtomicLong();
+
+    /**
+     * A map containing the canonical instance for each key.
+     *
+     * @see ConcurrentMap
+     */
+    private final ConcurrentMap<Object, Object> pool = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical instance for a key. If no instance was pooled for
+     * an equal key yet, value is pooled and returned.
+     *
+     * @param key the key to look up, it has to implement equals() and
+     *            hashCode() on its content.
+     * @param value the instance to pool if the key is new, or null to pool
+     *              the key itself.
+     * @param size the estimated heap size of value, counted as saved if an
+     *             instance was pooled before.
+     * @param <T> the type of value.
+     * @return the pooled instance, or null if key is null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T canonicalize(Object key, T value, int size) {
+        if (key == null) return null;
+        Object pooled = pool.putIfAbsent(key, (value == null) ? key : value);
+        if (pooled == null) return (value == null) ? (T) key : value;
+        bytes_saved.addAndGet(size);
+        return (T) pooled;
+    }
+
+    /**
+     * Returns the canonical instance of a configuration.
+     *
+     * @param conf a configuration.
+     * @return an equal configuration, or null if conf is null.
+     * @see QuestConfiguration
+     */
+    public QuestConfiguration canonicalize(QuestConfiguration conf) {
+        return canonicalize(conf, null, CONFIGURATION_SIZE);
+    }
+
+    /**
+     * Returns the canonical instance of a string.
+     *
+     * @param string a string.
+     * @return an equal string, or null if string is null.
+     */
+    public String canonicalize(String string) {
+        if (string == null) return null;
+        return this.<String>canonicalize(string, null, STRING_SIZE + 2 * string.length());
+    }
+
+    /**
+     * Returns the estimated number of heap bytes saved since this pool was
+     * created.
+     *
+     * @return the saved bytes.
+     */
+    public long getBytesSaved() { return bytes_saved.get(); }
+}
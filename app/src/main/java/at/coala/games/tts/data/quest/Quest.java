@@ -6,7 +6,6 @@ import java.util.List;
 
 import at.coala.games.tts.data.Game;
 import at.coala.games.tts.data.User;
-import at.coala.games.tts.game.GameDataManager;
 
 /**
  * This class stores and provides a quest and all data that comes with it.
@@ -195,6 +194,13 @@ public class Quest {
 	 */
 	private List<QuestConfiguration> conf;
 
+	/**
+	 * A local array containing the lowest valid level of each eligibility
+	 * context, 0 for contexts the quest is not eligible in, or null if all
+	 * eligible contexts share eligible_level.
+	 */
+	private final int[] context_levels;
+
 	/**
 	 * Flag describing a quest that can not set the delete flag.
 	 */
@@ -215,6 +221,28 @@ public class Quest {
 	 */
 	private static final String DELETE_TRUE_STRING = "true";
 
+	/**
+	 * A constant containing the number of eligibility contexts: every
+	 * location, Game.FRIENDS_ flag and sex restriction a collection can be
+	 * validated against. Contexts are numbered from 0 and returned by
+	 * getEligibilityContext().
+	 */
+	static final int ELIGIBILITY_CONTEXT_SUM = 2 * (Game.FRIENDS_LOOSE + 1) * 3;
+
+	/**
+	 * A local bitmask with the bit of every eligibility context set the
+	 * quest is valid in, not regarding its requirements. It is computed
+	 * once by the constructor.
+	 */
+	private final int eligibility;
+
+	/**
+	 * A local variable containing the lowest valid level shared by all
+	 * eligible contexts, or 0 if it differs between them and is stored in
+	 * context_levels.
+	 */
+	private final int eligible_level;
+
 	/**
 	 * A local variable containing the minimum valid level. It is initialised
 	 * to Integer.MAX_VALUE
@@ -223,6 +251,12 @@ public class Quest {
 	 */
 	private int minLevel = Integer.MAX_VALUE;
 
+	/**
+	 * A constant containing the highest weight of a quest, so it fits into
+	 * one byte of a quest catalog.
+	 */
+	public static final int MAX_WEIGHT = 0xFF;
+
 	/**
 	 * Flag describing a quest where all players are partner.
 	 */
@@ -391,6 +425,13 @@ public class Quest {
 	 */
 	public final List<String> quest_texts;
 
+	/**
+	 * A local bitmask with bit r set for every REQUIREMENT_ flag r of this
+	 * quest. Flags that do not fit a bitmask set the highest bit, which is
+	 * never met.
+	 */
+	private final int requirement_mask;
+
 	/**
 	 * A publicly accessible unmodifiable (as converted due to the constructor)
 	 * list of final REQUIREMENT_ flags defined in this class, or null if no
@@ -457,6 +498,15 @@ public class Quest {
 	 */
 	public final List<String> rule_ids;
 
+	/**
+	 * A local unmodifiable list of the rules of rule_ids, resolved by the
+	 * last RuleMap passed to getRules(), or null if not resolved yet.
+	 *
+	 * @see List
+	 * @see RuleMap
+	 */
+	private List<String> rules;
+
 	/**
 	 * Flag describing a quest that can not be aborted.
 	 */
@@ -478,20 +528,32 @@ public class Quest {
 	private static final String SKIP_TRUE_STRING = "true";
 
 	/**
-	 * A public field containing the source, or null if no exists.
+	 * A local list containing the source as its only element, or null if no
+	 * exists. It is a list, so the source can be decoded on first access.
+	 *
+	 * @see List
+	 */
+	private final List<String> source;
+
+	/**
+	 * A publicly accessible weight between 1 and MAX_WEIGHT. A quest with a
+	 * higher weight is drawn more likely by a weighted QuestCollection.
+	 *
+	 * @see QuestCollection
 	 */
-	public final String source;
+	public final int weight;
 
 	/**
 	 * The constructor takes every data needed to create a quest. This is the
 	 * only way to insert the data into final fields. Even lists are converted
-	 * into an unmodifiable list.
+	 * into an unmodifiable list. The lists of strings may be views decoding
+	 * their strings on access.
 	 *
 	 * @param categories takes a list of final CATEGORY_ flags defined in this
 	 *                      class.
 	 * @param requirements takes a list of final REQUIREMENT_ flag defined in
 	 *                        this class, or NULL
-	 * @param source a possible source, or NULL
+	 * @param source a possible list with the source as only element, or NULL
 	 * @param quest_texts a list of quest texts, each describing the same
 	 *                       quest.
 	 * @param comments, a possible list of comments, or NULL
@@ -499,18 +561,20 @@ public class Quest {
 	 * @param conf a list of configurations
 	 * @param public_conf a possible list of configurations for public use, or
 	 *                       NULL
+	 * @param weight a weight between 1 and MAX_WEIGHT.
 	 * @see List
 	 * @see QuestConfiguration
 	 * @see RuleMap
 	 */
 	Quest(List<Integer> categories,
 		  List<Integer> requirements,
-		  String source,
+		  List<String> source,
 		  List<String> quest_texts,
 		  List<String> comments,
 		  List<String> rule_ids,
 		  List<QuestConfiguration> conf,
-		  List<QuestConfiguration> public_conf) {
+		  List<QuestConfiguration> public_conf,
+		  int weight) {
 		this.categories = Collections.unmodifiableList(categories);
 		this.requirements = (requirements == null) ? null
 				: Collections.unmodifiableList(requirements);
@@ -520,6 +584,38 @@ public class Quest {
 		this.rule_ids = (rule_ids == null ? null : Collections.unmodifiableList(rule_ids));
 		this.conf = conf;
 		this.public_conf = public_conf;
+		this.weight = weight;
+
+		int mask = 0;
+		if (requirements != null) {
+			for (int r : requirements)
+				mask |= (r >= 0 && r < Integer.SIZE - 1) ? 1 << r : Integer.MIN_VALUE;
+		}
+		requirement_mask = mask;
+
+		int[] levels = new int[ELIGIBILITY_CONTEXT_SUM];
+		int eligible = 0;
+		int shared_level = 0;
+		boolean shared = true;
+		for (int location = Game.LOCATION_PRIVATE; location <= Game.LOCATION_PUBLIC; location++) {
+			List<QuestConfiguration> location_conf =
+					(location == Game.LOCATION_PRIVATE || public_conf == null) ? conf : public_conf;
+			for (int friendship_level = Game.FRIENDS_BENEFITS;
+				 friendship_level <= Game.FRIENDS_LOOSE; friendship_level++) {
+				for (Integer sex : new Integer[] { null, User.SEX_FEMALE, User.SEX_MALE }) {
+					int level = getMinLevel(location_conf, friendship_level, sex);
+					if (level == Integer.MAX_VALUE) continue;
+					int context = getEligibilityContext(location, friendship_level, sex);
+					levels[context] = level;
+					eligible |= 1 << context;
+					if (shared_level == 0) shared_level = level;
+					else if (shared_level != level) shared = false;
+				}
+			}
+		}
+		eligibility = eligible;
+		eligible_level = shared ? shared_level : 0;
+		context_levels = shared ? null : levels;
 	}
 
 	/**
@@ -534,7 +630,7 @@ public class Quest {
 	 * @see QuestConfiguration
 	 */
 	public QuestConfiguration getConfiguration(int location, int level) {
-		double random = GameDataManager.getRandom();
+		double random = Game.getRandom();
 		if (location == Game.LOCATION_PRIVATE || public_conf == null) {
 			if (conf.size() == 1) return conf.get(0);
 			List<QuestConfiguration> valid_conf = new ArrayList<>();
@@ -554,37 +650,185 @@ public class Quest {
 		}
 	}
 
+	/**
+	 * Returns the unmodifiable list of configurations stored for a location.
+	 * Other than getConfiguration() this method does not fall back to private
+	 * configurations if no public configuration exists.
+	 *
+	 * @param location takes a final Game.LOCATION_ flag.
+	 * @return list of configurations, or null if none exist for a public
+	 * location.
+	 * @see Game
+	 * @see QuestConfiguration
+	 */
+	public List<QuestConfiguration> getConfigurations(int location) {
+		if (location == Game.LOCATION_PRIVATE) return Collections.unmodifiableList(conf);
+		return (public_conf == null) ? null : Collections.unmodifiableList(public_conf);
+	}
+
+	/**
+	 * Returns the bitmask of the eligibility contexts this quest is valid in,
+	 * not regarding its requirements.
+	 *
+	 * @return a bitmask with the bit of every eligible context set.
+	 */
+	int getEligibility() { return eligibility; }
+
+	/**
+	 * Returns the eligibility context of validation settings, the bit of the
+	 * settings in getEligibility().
+	 *
+	 * @param location takes a final Game.LOCATION_ flag.
+	 * @param friendship_level takes a final Game.FRIENDS_ flag.
+	 * @param all_players_are null, or a restriction to valid against only one
+	 *                           sex set with a final User.SEX_ flag.
+	 * @return the context between 0 and ELIGIBILITY_CONTEXT_SUM - 1, or -1 if
+	 * the settings contain unknown flags and have to be validated with
+	 * isValid().
+	 * @see Game
+	 * @see User
+	 */
+	static int getEligibilityContext(int location, int friendship_level, Integer all_players_are) {
+		if (friendship_level < Game.FRIENDS_BENEFITS || friendship_level > Game.FRIENDS_LOOSE)
+			return -1;
+		int sex;
+		if (all_players_are == null) sex = 0;
+		else if (all_players_are == User.SEX_FEMALE) sex = 1;
+		else if (all_players_are == User.SEX_MALE) sex = 2;
+		else return -1;
+		int context = (location == Game.LOCATION_PRIVATE) ? 0 : 1;
+		context = context * (Game.FRIENDS_LOOSE + 1) + friendship_level - Game.FRIENDS_BENEFITS;
+		return context * 3 + sex;
+	}
+
 	/**
 	 * Returns the lowest level that is set during a call of
-	 * isValid(). If that method was never called, or there is no
-	 * valid level, Integer.MAX_INT will be returned.
+	 * isValid() or updateMinLevel(). If neither method was called, or there
+	 * is no valid level, Integer.MAX_INT will be returned.
 	 *
 	 * @return the lowest valid level.
 	 */
 	int getMinLevel() { return minLevel; }
 
+	/**
+	 * Returns the lowest level of a list of configurations that is valid with
+	 * a certain friendship level. It can also limit the validation to
+	 * quests that only need a certain sex, or to be exact: quests that do not
+	 * need an other sex.
+	 *
+	 * @param conf list of possible configurations.
+	 * @param friendship_level takes a final Game.FRIENDS_ flag.
+	 * @param all_players_are null, or a restriction to valid against only one
+	 *                           sex set with a final User.SEX_ flag.
+	 * @return the lowest valid level, or Integer.MAX_VALUE if no
+	 * configuration is valid.
+	 * @see Game
+	 * @see List
+	 * @see	QuestConfiguration
+	 */
+	private static int getMinLevel(
+			List<QuestConfiguration> conf, int friendship_level, Integer all_players_are) {
+		int min_level = Integer.MAX_VALUE;
+		for (QuestConfiguration c : conf) {
+			if (c.level != 0 &&
+					(friendship_level == c.friendship_level
+							|| c.friendship_level == Game.FRIENDS_LOOSE
+							|| friendship_level == Game.FRIENDS_BENEFITS)
+					&& (all_players_are == null
+					|| (validPlayer(c.player, all_players_are))
+					&& validPartner(c.partner, all_players_are))) {
+				if (c.level < min_level) min_level = c.level;
+			}
+		}
+		return min_level;
+	}
+
+	/**
+	 * Returns the bitmask of a list of requirements, to be passed to
+	 * isValid(int, int).
+	 *
+	 * @param requirements a list of final REQUIREMENT_ flags.
+	 * @return a bitmask with bit r set for every flag r; flags that do not
+	 * fit a bitmask are ignored.
+	 * @see List
+	 */
+	static int getRequirementMask(List<Integer> requirements) {
+		int mask = 0;
+		for (int r : requirements) {
+			if (r >= 0 && r < Integer.SIZE - 1) mask |= 1 << r;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the bitmask of the requirements of this quest.
+	 *
+	 * @return a bitmask with bit r set for every REQUIREMENT_ flag r, and the
+	 * highest bit set for flags that do not fit a bitmask.
+	 */
+	int getRequirements() { return requirement_mask; }
+
 	/**
 	 * Takes a map with rules and returns a list with all rules that can be
-	 * matched witch the ids stored for this quest.
+	 * matched witch the ids stored for this quest. The ids are resolved once
+	 * per map, usually by RuleMap.resolveRules() on loading, so later calls
+	 * return the same list without allocating.
 	 *
 	 * @param rule_map a RuleMap.
-	 * @return list of applied rules.
+	 * @return unmodifiable list of applied rules, null for undefined rules.
 	 * @see List
 	 * @see RuleMap
 	 */
 	public List<String> getRules(RuleMap rule_map) {
 		if (rule_ids == null) return null;
-		List<String> rules = new ArrayList<>();
-		//noinspection Convert2streamapi
-		for (String id : rule_ids) rules.add(rule_map.getRule(id));
-		return Collections.unmodifiableList(rules);
+		if (!rule_map.isResolved(rules)) rules = rule_map.resolve(rule_ids);
+		return rules;
+	}
+
+	/**
+	 * Returns the source of this quest.
+	 *
+	 * @return the source, or null if no exists.
+	 */
+	public String getSource() { return (source == null) ? null : source.get(0); }
+
+	/**
+	 * Decodes all texts, comments and the source of this quest in advance.
+	 * Lists decoding their strings on access keep the last decoded strings,
+	 * so calling this while the quest is prepared moves the decoding out of
+	 * the moment the quest is shown.
+	 */
+	public void prefetchTexts() {
+		for (int i = 0; i < quest_texts.size(); i++) quest_texts.get(i);
+		if (comments != null) {
+			for (int i = 0; i < comments.size(); i++) comments.get(i);
+		}
+		getSource();
+	}
+
+	/**
+	 * This method checks if the game is valid in an eligibility context with
+	 * certain requirements. It matches isValid() for the settings of the
+	 * context, but only looks up the bitmasks computed by the constructor
+	 * and leaves the lowest valid level untouched, see updateMinLevel().
+	 *
+	 * @param context an eligibility context returned by
+	 *                   getEligibilityContext().
+	 * @param requirements the bitmask of the met requirements returned by
+	 *                        getRequirementMask(), or -1 if requirements are
+	 *                        not checked.
+	 * @return true if it is a valid Quest; false if not.
+	 */
+	boolean isValid(int context, int requirements) {
+		return (requirement_mask & ~requirements) == 0 && (eligibility & 1 << context) != 0;
 	}
 
 	/**
 	 * This method checks if the game is valid on a certain location with a
 	 * certain friendship level, sets the lowest valid level that can be
 	 * received with getMinLevel(). For that it gets a list of configurations
-	 * and calls the private method validFriendshipLevel().
+	 * and calls the private method getMinLevel(). Settings covered by an
+	 * eligibility context are validated faster with isValid(int, int).
 	 *
 	 * @param location takes a final Game.GAME_ flag.
 	 * @param friendship_level takes a final Game.FRIENDS_ flag.
@@ -607,44 +851,27 @@ public class Quest {
 			}
 		}
 		if (location == Game.LOCATION_PRIVATE || public_conf == null) {
-			return validFriendshipLevel(conf, friendship_level, all_players_are);
+			minLevel = getMinLevel(conf, friendship_level, all_players_are);
 		} else {
-			return validFriendshipLevel(public_conf, friendship_level, all_players_are);
+			minLevel = getMinLevel(public_conf, friendship_level, all_players_are);
 		}
+		return minLevel != Integer.MAX_VALUE;
 	}
 
 	/**
-	 * This method checks if the game is valid on a certain location with a
-	 * certain friendship level and sets the lowest valid level that can be
-	 * received with getMinLevel(). It can also limit the validation to
-	 * quests that only need a certain sex, or to be exact: quests that do not
-	 * need an other sex.
+	 * Sets the lowest valid level in an eligibility context with certain
+	 * requirements, that can be received with getMinLevel(), as isValid()
+	 * does for the settings of the context.
 	 *
-	 * @param conf list of possible configurations.
-	 * @param friendship_level takes a final Game.FRIENDS_ flag.
-	 * @param all_players_are null, or a restriction to valid against only one
-	 *                           sex set with a final User.SEX_ flag.
-	 * @return true if it is a valid Quest; false if not.
-	 * @see Game
-	 * @see List
-	 * @see	QuestConfiguration
-	 */
-	private boolean validFriendshipLevel(
-			List<QuestConfiguration> conf, int friendship_level, Integer all_players_are) {
-		boolean valid = false;
-		for (QuestConfiguration c : conf) {
-			if (c.level != 0 &&
-					(friendship_level == c.friendship_level
-							|| c.friendship_level == Game.FRIENDS_LOOSE
-							|| friendship_level == Game.FRIENDS_BENEFITS)
-					&& (all_players_are == null
-					|| (validPlayer(c.player, all_players_are))
-					&& validPartner(c.partner, all_players_are))) {
-				if (c.level < minLevel) minLevel = c.level;
-				valid = true;
-			}
-		}
-		return valid;
+	 * @param context an eligibility context returned by
+	 *                   getEligibilityContext().
+	 * @param requirements the bitmask of the met requirements returned by
+	 *                        getRequirementMask(), or -1 if requirements are
+	 *                        not checked.
+	 */
+	void updateMinLevel(int context, int requirements) {
+		if (!isValid(context, requirements)) minLevel = Integer.MAX_VALUE;
+		else minLevel = (context_levels == null) ? eligible_level : context_levels[context];
 	}
 
 	/**
@@ -656,7 +883,7 @@ public class Quest {
 	 * @return true if this quest ist suitable; false otherwise.
 	 * @see User
 	 */
-	private boolean validPartner(int partner, int all_players_are) {
+	private static boolean validPartner(int partner, int all_players_are) {
 		if (partner == PARTNER_NO || partner == PARTNER_YES || partner == PARTNER_ALL) return true;
 		switch (all_players_are) {
 			case User.SEX_FEMALE:
@@ -676,7 +903,7 @@ public class Quest {
 	 * @return true if this quest ist suitable; false otherwise.
 	 * @see User
 	 */
-	private boolean validPlayer(int player, int all_players_are) {
+	private static boolean validPlayer(int player, int all_players_are) {
 		if (player == PLAYER_ONE || player == PLAYER_ALL) return true;
 		switch (all_players_are) {
 			case User.SEX_FEMALE:
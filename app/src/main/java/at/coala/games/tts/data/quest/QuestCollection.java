@@ -1,9 +1,16 @@
 package at.coala.games.tts.data.quest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import at.coala.games.tts.data.Game;
-import at.coala.games.tts.game.GameDataManager;
 
 /**
  * The collection stores a large number of quests. It provides different
@@ -12,28 +19,120 @@ import at.coala.games.tts.game.GameDataManager;
  * The most important methods are addQuest() to add new quests and
  * getRandomQuest() which is the only way to receive quests at the moment.
  *
+ * Quests are drawn with equal chances by default. With setWeighting() they
+ * are drawn by their weight instead: each category keeps an alias table per
+ * level, so a weighted draw takes constant time. A table is built on the
+ * first draw of its level and only rebuilt after quests were inserted into
+ * its level or half of its weight was removed, removed quests are skipped
+ * until then. Level changes need no rebuild at all.
+ *
+ * Weights changing during a game are drawn with WEIGHTING_DYNAMIC instead:
+ * each category keeps a binary indexed tree over the weights of its pool,
+ * so setDynamicWeight() and a draw both take logarithmic time.
+ *
+ * In deck mode set with setDeckMode(), quests are drawn without replacement
+ * regardless of the weighting: each level of a pool is dealt into a deck
+ * that is drawn from until all linked decks are exhausted and reshuffled.
+ * Decks of levels unlocked later join the remaining cards as they are, and
+ * new quests are put into the remaining cards of their deck, removed ones are
+ * taken out of it. The remaining cards of the linked decks are counted along
+ * the way, so a draw takes one step per linked level. Each snapshot
+ * keeps its decks, so switching back to its settings goes on with them.
+ *
+ * The result of a validation is kept as snapshot for the last used settings,
+ * so switching back to them only swaps the snapshot in. Snapshots are
+ * dropped as soon as quests are added, removed or flagged as deleted.
+ * Dynamic weights changed while a snapshot is not in use are kept by the
+ * snapshot and only added to its trees when it is swapped in again.
+ *
  * @author Klaus
  * @see Quest
  */
 public class QuestCollection {
 
     /**
-     * A local array containing the first linked element of the specific
-     * category. Each position can be accessed with the Quest.CATEGORY_ flag.
+     * A constant containing the capacity of a pool when it is first filled.
+     */
+    private static final int POOL_CAPACITY = 16;
+
+    /**
+     * Flag set true if quests are drawn out of decks, false otherwise.
+     */
+    private boolean deck_mode = false;
+
+    /**
+     * A local array containing for each element id the index of the element
+     * in the deck of its level of the specific category, if it is in the
+     * deck. It belongs to the validation like the decks. Each position can
+     * be accessed with the Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     */
+    private int[][] deck_index = new int[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing the number of levels of the pool of the
+     * specific category whose decks are linked, so their remaining cards are
+     * counted in deck_remaining. Each position can be accessed with the
+     * Quest.CATEGORY_ flag.
      *
      * @see Quest
-     * @see QuestCollectionElement
      */
-    private QuestCollectionElement[] firstLinked = new QuestCollectionElement[Quest.CATEGORY_SUM];
+    private int[] deck_linked_levels = new int[Quest.CATEGORY_SUM];
 
     /**
-     * A local array containing the first valid element of the specific
-     * category. Each position can be accessed with the Quest.CATEGORY_ flag.
+     * A local array containing the number of remaining cards in the linked
+     * decks of the specific category. Each position can be accessed with the
+     * Quest.CATEGORY_ flag.
      *
      * @see Quest
+     */
+    private int[] deck_remaining = new int[Quest.CATEGORY_SUM];
+
+    /**
+     * A constant containing the factor the weight of a quest is multiplied
+     * with for its initial dynamic weight, so the dynamic weight can be
+     * lowered below the weight of a quest without reaching 0.
+     */
+    public static final int DYNAMIC_WEIGHT_SCALE = 8;
+
+    /**
+     * A constant containing the number of validation snapshots kept.
+     */
+    private static final int SNAPSHOT_CAPACITY = 8;
+
+    /**
+     * A local array containing every element of the collection at the index
+     * of its id, or null if the element was removed. Only the first
+     * element_count elements are used.
+     *
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement[] elements = new QuestCollectionElement[0];
+
+    /**
+     * The number of ids given to elements by now.
+     */
+    private int element_count = 0;
+
+    /**
+     * A map containing the element of each quest, or null if it was not
+     * needed yet. It is built on the first call of setDynamicWeight().
+     *
      * @see QuestCollectionElement
      */
-    private QuestCollectionElement[] firstValid = new QuestCollectionElement[Quest.CATEGORY_SUM];
+    private Map<Quest, QuestCollectionElement> element_map = null;
+
+    /**
+     * A local array containing a bitset of element ids for each eligibility
+     * context: bit i of word i / 64 is set if the element with id i is
+     * eligible in the context, not regarding its requirements. Removed
+     * elements are never eligible. Each position can be accessed with an
+     * eligibility context of Quest.
+     *
+     * @see Quest
+     */
+    private long[][] eligible = new long[Quest.ELIGIBILITY_CONTEXT_SUM][0];
 
     /**
      * A local array containing the first element of the specific category.
@@ -66,21 +165,152 @@ public class QuestCollection {
     private int level = 0;
 
     /**
-     * A local array containing the number of linked elements for the specific
-     * category. Each position can be accessed with the Quest.CATEGORY_ flag.
+     * A local array containing a bitset of element ids for each bit of a
+     * requirement mask: bit i of word i / 64 is set if the element with id i
+     * needs the requirement. A position is null if no element needs the
+     * requirement.
+     *
+     * @see Quest
+     */
+    private long[][] required = new long[Integer.SIZE][];
+
+    /**
+     * A local array containing the pool of the specific category: all valid
+     * elements not flagged as deleted, grouped by their min level in
+     * ascending order. The elements linked for a level are the prefix of the
+     * pool up to the end of the level, so a random element is drawn by its
+     * index and level changes need no linking. Within a level the elements
+     * are in no particular order, so an element is removed by moving the
+     * last element of its level into its place. Only the first pool_size
+     * elements of each pool are used. Each position can be accessed with the
+     * Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement[][] pool = new QuestCollectionElement[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing for each element id the index of the element
+     * in the pool of the specific category, if it is in the pool. It belongs
+     * to the validation like the pools, so a snapshot keeps its own. Each
+     * position can be accessed with the Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     */
+    private int[][] pool_index = new int[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing for each level of the pool of the specific
+     * category the index behind its last element. Each position can be
+     * accessed with the Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     */
+    private int[][] pool_level_ends = new int[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing the min levels of the elements in the pool of
+     * the specific category, each only once and in ascending order. A level
+     * stays in the array if its last element is removed. Each position can
+     * be accessed with the Quest.CATEGORY_ flag.
      *
      * @see Quest
      */
-    private int[] linked_size = new int[Quest.CATEGORY_SUM];
+    private int[][] pool_levels = new int[Quest.CATEGORY_SUM][0];
 
     /**
-     * A local array containing the number of linked quest texts for the
+     * A local array containing for each level of the pool of the specific
+     * category its alias table, or null if it has to be built before the
+     * next weighted draw of the level. Each position can be accessed with the
+     * Quest.CATEGORY_ flag.
+     *
+     * @see AliasTable
+     * @see Quest
+     */
+    private AliasTable[][] pool_alias_tables = new AliasTable[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing for each level of the pool of the specific
+     * category its deck, or null if it was not dealt yet. Each position can
+     * be accessed with the Quest.CATEGORY_ flag.
+     *
+     * @see Deck
+     * @see Quest
+     */
+    private Deck[][] pool_decks = new Deck[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing the number of elements in the pool of the
      * specific category. Each position can be accessed with the
      * Quest.CATEGORY_ flag.
      *
      * @see Quest
      */
-    private int[] linked_quest_text_count = new int[Quest.CATEGORY_SUM];
+    private int[] pool_size = new int[Quest.CATEGORY_SUM];
+
+    /**
+     * A local array containing the prefix sums of the quest texts in the pool
+     * of the specific category: the element at index i is the number of
+     * quest texts of all elements up to the end of the level at index i in
+     * pool_levels. Each position can be accessed with the Quest.CATEGORY_
+     * flag.
+     *
+     * @see Quest
+     */
+    private int[][] pool_text_counts = new int[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing the prefix sums of the weights in the pool of
+     * the specific category: the element at index i is the weight of all
+     * elements up to the end of the level at index i in pool_levels, as
+     * returned by getWeight(). Each position can be accessed with the
+     * Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     */
+    private long[][] pool_weights = new long[Quest.CATEGORY_SUM][0];
+
+    /**
+     * A local array containing a binary indexed tree over the weights of
+     * the pool of the specific category, as returned by getWeight(), for
+     * WEIGHTING_DYNAMIC only. The tree of a pool has one node more than the
+     * pool has capacity, node i+1 stands for index i of the pool. Each
+     * position can be accessed with the Quest.CATEGORY_ flag.
+     *
+     * @see Quest
+     */
+    private long[][] pool_weight_trees = new long[Quest.CATEGORY_SUM][];
+
+    /**
+     * The snapshot of the current validation, or null if the settings are not
+     * kept as snapshot.
+     *
+     * @see ValidationSnapshot
+     */
+    private ValidationSnapshot snapshot = null;
+
+    /**
+     * The validation snapshots of the last used settings, keyed by their
+     * eligibility context and requirement mask, the least recently used
+     * first.
+     *
+     * @see Map
+     * @see ValidationSnapshot
+     */
+    private final Map<Long, ValidationSnapshot> snapshots =
+            new LinkedHashMap<Long, ValidationSnapshot>(SNAPSHOT_CAPACITY, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ValidationSnapshot> eldest) {
+                    return size() > SNAPSHOT_CAPACITY;
+                }
+            };
+
+    /**
+     * A local bitset of the ids of all valid elements, flagged as deleted or
+     * not: bit i of word i / 64 is set if the element with id i is valid.
+     */
+    private long[] valid = new long[0];
 
     /**
      * A local array containing the number of valid quest texts for the
@@ -91,14 +321,180 @@ public class QuestCollection {
      */
     private int[] valid_quest_text_count = new int[Quest.CATEGORY_SUM];
 
+    /**
+     * Flag set true after the first validation, false before.
+     */
+    private boolean validated = false;
+
+    /**
+     * The sex restriction of the last validation, or null if none is set.
+     */
+    private Integer validated_all_players_are;
+
+    /**
+     * The eligibility context of the last validation, or -1 if the settings
+     * are not covered by an eligibility context.
+     */
+    private int validated_context;
+
+    /**
+     * The friendship level of the last validation.
+     */
+    private int validated_friendship_level;
+
+    /**
+     * The location of the last validation.
+     */
+    private int validated_location;
+
+    /**
+     * The requirements of the last validation, or null if none were set.
+     *
+     * @see List
+     */
+    private List<Integer> validated_requirements;
+
+    /**
+     * The requirement mask of the last validation, or -1 if no requirements
+     * were set.
+     */
+    private int validated_requirement_mask;
+
+    /**
+     * The final WEIGHTING_ flag the quests are drawn with.
+     */
+    private int weighting = WEIGHTING_NONE;
+
+    /**
+     * Flag drawing every quest with the same chance.
+     */
+    public static final int WEIGHTING_NONE = 0;
+
+    /**
+     * Flag drawing every quest by its weight.
+     *
+     * @see Quest
+     */
+    public static final int WEIGHTING_QUEST = WEIGHTING_NONE + 1;
+
+    /**
+     * Flag drawing every quest by its weight multiplied by the number of its
+     * quest texts, so every quest text is drawn with the same chance if all
+     * weights are equal.
+     *
+     * @see Quest
+     */
+    public static final int WEIGHTING_TEXTS = WEIGHTING_QUEST + 1;
+
+    /**
+     * Flag drawing every quest by its dynamic weight, as set with
+     * setDynamicWeight().
+     */
+    public static final int WEIGHTING_DYNAMIC = WEIGHTING_TEXTS + 1;
+
+    /**
+     * Adds a delta to the dynamic weight of an element in the binary indexed
+     * trees and prefix sums of the weights of each current pool holding it.
+     *
+     * @param elem the element.
+     * @param delta the weight to add, may be negative.
+     * @see QuestCollectionElement
+     */
+    private void addDynamicWeight(QuestCollectionElement elem, long delta) {
+        for (int c : elem.elem.categories) {
+            int index = pool_index[c][elem.id];
+            if (index >= pool_size[c] || pool[c][index] != elem) continue;
+            addTreeWeight(c, index, delta);
+            for (int l = getPoolLevel(c, index); l < pool_levels[c].length; l++)
+                pool_weights[c][l] += delta;
+        }
+    }
+
+    /**
+     * Stores a new element at the index of its id and sets its bits in the
+     * bitsets of its eligibility contexts and requirements. All snapshots are
+     * dropped.
+     *
+     * @param elem the new element.
+     * @see QuestCollectionElement
+     */
+    private void addElement(QuestCollectionElement elem) {
+        snapshots.clear();
+        if (elem.id == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(2 * elements.length, POOL_CAPACITY));
+            int words = (elements.length + Long.SIZE - 1) / Long.SIZE;
+            valid = Arrays.copyOf(valid, words);
+            for (int i = 0; i < pool_index.length; i++) {
+                pool_index[i] = Arrays.copyOf(pool_index[i], elements.length);
+                deck_index[i] = Arrays.copyOf(deck_index[i], elements.length);
+            }
+            for (int i = 0; i < eligible.length; i++) eligible[i] = Arrays.copyOf(eligible[i], words);
+            for (int i = 0; i < required.length; i++) {
+                if (required[i] != null) required[i] = Arrays.copyOf(required[i], words);
+            }
+        }
+        elements[elem.id] = elem;
+        if (element_map != null) element_map.put(elem.elem, elem);
+        int word = elem.id / Long.SIZE;
+        long bit = 1L << elem.id;
+        int eligibility = elem.elem.getEligibility();
+        for (int i = 0; i < eligible.length; i++) {
+            if ((eligibility & 1 << i) != 0) eligible[i][word] |= bit;
+        }
+        int requirements = elem.elem.getRequirements();
+        for (int i = 0; i < required.length; i++) {
+            if ((requirements & 1 << i) == 0) continue;
+            if (required[i] == null) required[i] = new long[eligible[0].length];
+            required[i][word] |= bit;
+        }
+    }
 
     /**
      * Add a Quest element.
      *
      * @param quest the quest to add.
      */
-    public void addQuest(Quest quest) {
-        QuestCollectionElement newElem = new QuestCollectionElement(quest);
+    public void addQuest(Quest quest) { appendQuest(quest); }
+
+    /**
+     * Adds quests to a collection that may be validated and linked already.
+     * The quests are appended to the lists of their categories and only the
+     * new quests are validated against the settings of the last validation
+     * and linked with regard to the current level, so the collection does
+     * not have to be validated again.
+     *
+     * @param quests the quests to add.
+     * @see List
+     */
+    public void addQuests(List<Quest> quests) {
+        for (Quest quest : quests) insertQuest(quest, false);
+    }
+
+    /**
+     * Adds a delta to the weight of an index in the binary indexed tree of
+     * the pool of a category. Nothing happens if the pools have no trees.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param index the index of the pool.
+     * @param delta the weight to add, may be negative.
+     * @see Quest
+     */
+    private void addTreeWeight(int category, int index, long delta) {
+        long[] tree = pool_weight_trees[category];
+        if (tree == null) return;
+        for (int i = index + 1; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+
+    /**
+     * Appends a quest to the lists of its categories.
+     *
+     * @param quest the quest to add.
+     * @return the new element.
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement appendQuest(Quest quest) {
+        QuestCollectionElement newElem = new QuestCollectionElement(quest, element_count++);
+        addElement(newElem);
         for (int c : quest.categories) {
             if (head[c] == null) {
                 head[c] = newElem;
@@ -108,181 +504,1288 @@ public class QuestCollection {
                 last[c] = last[c].next[c];
             }
         }
+        return newElem;
     }
 
     /**
-     * Get the count of all linked quest texts.
+     * Inserts a level into the pool of a category. The level starts empty. If
+     * it is inserted between linked decks, its empty deck is linked as well.
      *
-     * @return the quest text count.
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param index the index of the level in pool_levels.
+     * @param level the level to insert.
+     * @see Quest
      */
-    public int getLinkedQuestTextCount() {
-        int count = 0;
-        for (int s : linked_quest_text_count) count += s;
-        return count;
+    private void addPoolLevel(int category, int index, int level) {
+        int levels = pool_levels[category].length;
+        int[] new_levels = new int[levels + 1];
+        int[] new_ends = new int[levels + 1];
+        int[] new_counts = new int[levels + 1];
+        long[] new_weights = new long[levels + 1];
+        AliasTable[] new_tables = new AliasTable[levels + 1];
+        Deck[] new_decks = new Deck[levels + 1];
+        System.arraycopy(pool_levels[category], 0, new_levels, 0, index);
+        System.arraycopy(pool_levels[category], index, new_levels, index + 1, levels - index);
+        System.arraycopy(pool_level_ends[category], 0, new_ends, 0, index);
+        System.arraycopy(pool_level_ends[category], index, new_ends, index + 1, levels - index);
+        System.arraycopy(pool_text_counts[category], 0, new_counts, 0, index);
+        System.arraycopy(pool_text_counts[category], index, new_counts, index + 1, levels - index);
+        System.arraycopy(pool_weights[category], 0, new_weights, 0, index);
+        System.arraycopy(pool_weights[category], index, new_weights, index + 1, levels - index);
+        System.arraycopy(pool_alias_tables[category], 0, new_tables, 0, index);
+        System.arraycopy(pool_alias_tables[category], index, new_tables, index + 1, levels - index);
+        System.arraycopy(pool_decks[category], 0, new_decks, 0, index);
+        System.arraycopy(pool_decks[category], index, new_decks, index + 1, levels - index);
+        new_levels[index] = level;
+        new_ends[index] = (index == 0) ? 0 : new_ends[index - 1];
+        new_counts[index] = (index == 0) ? 0 : new_counts[index - 1];
+        new_weights[index] = (index == 0) ? 0 : new_weights[index - 1];
+        if (index < deck_linked_levels[category]) {
+            new_decks[index] = new Deck(new QuestCollectionElement[0], category);
+            new_decks[index].linked = true;
+            deck_linked_levels[category]++;
+        }
+        pool_levels[category] = new_levels;
+        pool_level_ends[category] = new_ends;
+        pool_text_counts[category] = new_counts;
+        pool_weights[category] = new_weights;
+        pool_alias_tables[category] = new_tables;
+        pool_decks[category] = new_decks;
     }
 
     /**
-     * This method returns a random quest with regard to the level argument and
-     * current validation, or null if no suitable quest could be found.
+     * Builds the binary indexed tree of the pool of a category out of the
+     * weights of its elements in linear time.
      *
-     * @param level the new level, should be an Integer between 1 and 10
-     * @param category takes a final Quest.CATEGORY_ flag
-     * @return a quest of the specified category, or null if no valid quest could be found
+     * @param category takes a final Quest.CATEGORY_ flag.
      * @see Quest
      */
-    public Quest getRandomQuest(int level, int category) {
-        if (this.level != level) {
-            this.level = level;
-            linkCollection();
+    private void buildWeightTree(int category) {
+        long[] tree = new long[pool[category].length + 1];
+        for (int i = 0; i < pool_size[category]; i++) tree[i + 1] = getWeight(pool[category][i]);
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) tree[parent] += tree[i];
         }
-        last_returned = firstLinked[category];
-        if (last_returned == null) return null;
-        double random = GameDataManager.getRandom() * (double)(linked_size[category]);
-        for (int i = 1; i < Math.round(random); i++) {
-            last_returned = last_returned.linked[category];
-        }
-        return last_returned.elem;
+        pool_weight_trees[category] = tree;
     }
 
     /**
-     * Get the count of all valid quest texts.
-     *
-     * @return the quest text count.
+     * Drops all decks, so every level is dealt again on its next draw in
+     * deck mode.
      */
-    public int getValidQuestTextCount() {
-        int count = 0;
-        for (int s : valid_quest_text_count) count += s;
-        return count;
+    private void clearDecks() {
+        pool_decks = new Deck[Quest.CATEGORY_SUM][];
+        for (int i = 0; i < pool.length; i++) pool_decks[i] = new Deck[pool_levels[i].length];
+        deck_linked_levels = new int[Quest.CATEGORY_SUM];
+        deck_remaining = new int[Quest.CATEGORY_SUM];
+    }
+
+    /**
+     * Computes the prefix sums of the weights of all pools again into new
+     * arrays, and the binary indexed trees for WEIGHTING_DYNAMIC. All alias
+     * tables are dropped.
+     */
+    private void computePoolWeights() {
+        pool_weights = new long[Quest.CATEGORY_SUM][];
+        pool_alias_tables = new AliasTable[Quest.CATEGORY_SUM][];
+        pool_weight_trees = new long[Quest.CATEGORY_SUM][];
+        for (int i = 0; i < pool.length; i++) {
+            pool_weights[i] = new long[pool_levels[i].length];
+            pool_alias_tables[i] = new AliasTable[pool_levels[i].length];
+            long weight = 0;
+            for (int l = 0, j = 0; l < pool_levels[i].length; l++) {
+                for (; j < pool_level_ends[i][l]; j++) weight += getWeight(pool[i][j]);
+                pool_weights[i][l] = weight;
+            }
+            if (weighting == WEIGHTING_DYNAMIC) buildWeightTree(i);
+        }
     }
 
     /**
-     * Links quests with regard to the current level and validation. If settings
-     * have changed, this method first calls validateCollection().
-     */
-    private void linkCollection() {
-        for (int i = 0; i <  firstLinked.length; i++) {
-            QuestCollectionElement next = firstValid[i];
-            while (next != null && (next.elem.getMinLevel() > level || next.deleted))
-                next = next.valid[i];
-            if (next != null) {
-                firstLinked[i] = next;
-                linked_size[i] = 1;
-                linked_quest_text_count[i] = next.elem.quest_texts.size();
-                QuestCollectionElement lastLinked = next;
-                while (next.valid[i] != null) {
-                    next = next.valid[i];
-                    if (next.elem.getMinLevel() <= level && !next.deleted) {
-                        lastLinked.linked[i] = next;
-                        lastLinked = next;
-                        linked_size[i]++;
-                        linked_quest_text_count[i] += next.elem.quest_texts.size();
+     * Fills new pools for all categories out of the valid elements not
+     * flagged as deleted. The levels are counted first, then every element
+     * is placed behind the elements of its level before it, so the elements
+     * of a level keep the order of their ids without sorting.
+     */
+    private void fillPools() {
+        pool = new QuestCollectionElement[Quest.CATEGORY_SUM][];
+        pool_level_ends = new int[Quest.CATEGORY_SUM][0];
+        pool_levels = new int[Quest.CATEGORY_SUM][0];
+        pool_size = new int[Quest.CATEGORY_SUM];
+        pool_text_counts = new int[Quest.CATEGORY_SUM][0];
+        pool_weights = new long[Quest.CATEGORY_SUM][0];
+        pool_alias_tables = new AliasTable[Quest.CATEGORY_SUM][0];
+        pool_decks = new Deck[Quest.CATEGORY_SUM][0];
+        pool_index = new int[Quest.CATEGORY_SUM][elements.length];
+        deck_index = new int[Quest.CATEGORY_SUM][elements.length];
+        deck_linked_levels = new int[Quest.CATEGORY_SUM];
+        deck_remaining = new int[Quest.CATEGORY_SUM];
+        for (int w = 0; w < valid.length; w++) {
+            for (long bits = valid[w]; bits != 0; bits &= bits - 1) {
+                QuestCollectionElement elem =
+                        elements[w * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                if (elem.deleted) continue;
+                int min_level = elem.elem.getMinLevel();
+                int text_count = elem.elem.quest_texts.size();
+                long weight = getWeight(elem);
+                for (int c : elem.elem.categories) {
+                    int level = getPoolLevelCount(c, min_level) - 1;
+                    if (level < 0 || pool_levels[c][level] != min_level)
+                        addPoolLevel(c, ++level, min_level);
+                    for (int l = level; l < pool_levels[c].length; l++) {
+                        pool_level_ends[c][l]++;
+                        pool_text_counts[c][l] += text_count;
+                        pool_weights[c][l] += weight;
                     }
-                    next.linked[i] = null;
+                    pool_size[c]++;
+                }
+            }
+        }
+
+        int[][] free = new int[Quest.CATEGORY_SUM][];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new QuestCollectionElement[pool_size[i]];
+            free[i] = new int[pool_levels[i].length];
+            for (int l = 1; l < free[i].length; l++) free[i][l] = pool_level_ends[i][l - 1];
+        }
+        for (int w = 0; w < valid.length; w++) {
+            for (long bits = valid[w]; bits != 0; bits &= bits - 1) {
+                QuestCollectionElement elem =
+                        elements[w * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                if (elem.deleted) continue;
+                int min_level = elem.elem.getMinLevel();
+                for (int c : elem.elem.categories) {
+                    int index = free[c][getPoolLevelCount(c, min_level) - 1]++;
+                    pool[c][index] = elem;
+                    pool_index[c][elem.id] = index;
                 }
-            } else {
-                firstLinked[i] = null;
-                linked_size[i] = 0;
-                linked_quest_text_count[i] = 0;
             }
         }
+        pool_weight_trees = new long[Quest.CATEGORY_SUM][];
+        if (weighting == WEIGHTING_DYNAMIC) {
+            for (int i = 0; i < pool.length; i++) buildWeightTree(i);
+        }
     }
 
     /**
-     * Sets the delete flag to not asked the current question again.
+     * Returns the alias table of a level of the pool of a category, built out
+     * of the elements of the level if it is missing or half of its weight was
+     * removed from the pool.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param level the index of the level in pool_levels.
+     * @return the alias table.
+     * @see AliasTable
+     * @see Quest
      */
-    public void setDeleteFlag() {
-        if (last_returned != null) {
-            last_returned.deleted = true;
-            linkCollection();
+    private AliasTable getAliasTable(int category, int level) {
+        AliasTable table = pool_alias_tables[category][level];
+        if (table == null || 2 * table.removed_weight > table.total_weight) {
+            int start = (level == 0) ? 0 : pool_level_ends[category][level - 1];
+            QuestCollectionElement[] level_elements =
+                    Arrays.copyOfRange(pool[category], start, pool_level_ends[category][level]);
+            long[] weights = new long[level_elements.length];
+            for (int i = 0; i < weights.length; i++) weights[i] = getWeight(level_elements[i]);
+            table = new AliasTable(level_elements, weights);
+            pool_alias_tables[category][level] = table;
         }
+        return table;
     }
 
     /**
-     * Validates these collection against the settings.
+     * Returns the deck of a level of the pool of a category, dealt out of
+     * the elements of the level if it is missing.
      *
-     * @param location takes a final Game.GAME_ flag.
-     * @param friendship_level takes a final Game.FRIENDS_ flag.
-     * @param all_players_are null, or a restriction to valid against only one
-    *                           sex set with a final User.SEX_ flag.
-     * @param requirements true if it is a valid Quest; false if not.
-     * @see Game
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param level the index of the level in pool_levels.
+     * @return the deck.
+     * @see Deck
      * @see Quest
      */
-    public void validateCollection(
-            int location,
-            int friendship_level,
-            Integer all_players_are,
-            List<Integer> requirements) {
-        for (int i = 0; i <  firstValid.length; i++) {
-            QuestCollectionElement next = head[i];
-            while (next != null && !next.elem.isValid(
-                            location, friendship_level, all_players_are, requirements)) {
-                next = next.next[i];
-            }
-            if (next != null) {
-                firstValid[i] = next;
-                valid_quest_text_count[i] = next.elem.quest_texts.size();
-                QuestCollectionElement lastValid = next;
-                while (next.next[i] != null) {
-                    next = next.next[i];
-                    if (next.elem.isValid(
-                            location, friendship_level, all_players_are, requirements)) {
-                        lastValid.valid[i] = next;
-                        lastValid = next;
-                        valid_quest_text_count[i] += next.elem.quest_texts.size();
-                    }
-                    next.valid[i] = null;
-                }
-            } else {
-                firstValid[i] = null;
-                valid_quest_text_count[i] = 0;
-            }
+    private Deck getDeck(int category, int level) {
+        Deck deck = pool_decks[category][level];
+        if (deck == null) {
+            int start = (level == 0) ? 0 : pool_level_ends[category][level - 1];
+            deck = new Deck(Arrays.copyOfRange(pool[category], start,
+                    pool_level_ends[category][level]), category);
+            pool_decks[category][level] = deck;
         }
+        return deck;
     }
 
     /**
-     * This class contains an element for the QuestCollection. It also contains
-     * links to the next element and a not yet implemented delete flag.
+     * Draws an element of the pool of a category out of the decks of the
+     * linked levels without replacement. The decks of levels linked or
+     * unlinked since the last draw are counted in or out first. A deck is
+     * chosen by the number of its remaining cards, then a remaining card of
+     * it, so this takes one step per linked level. If all linked decks are
+     * exhausted, they are reshuffled.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param levels the number of linked levels, at least 1.
+     * @return the drawn element.
+     * @throws IllegalStateException if the linked decks hold no card even
+     *                               after a reshuffle.
+     * @see Deck
+     * @see Quest
+     * @see QuestCollectionElement
      */
-    class QuestCollectionElement {
-
-        /**
-         * The nested Quest element.
-         *
-         * @see Quest
-         */
-        final Quest elem;
-
-        /**
-         * Flag set true if this element should be ignored, false otherwise.
-         */
-        boolean deleted = false;
+    private QuestCollectionElement getDeckElement(int category, int levels) {
+        linkDecks(category, levels);
+        if (deck_remaining[category] == 0) {
+            for (int l = 0; l < levels; l++) pool_decks[category][l].reshuffle();
+            if (deck_remaining[category] == 0)
+                throw new IllegalStateException("No card in the linked decks.");
+        }
+        int target = Math.min((int) (Game.getRandom() * deck_remaining[category]),
+                deck_remaining[category] - 1);
+        int level = 0;
+        while (target >= pool_decks[category][level].remaining)
+            target -= pool_decks[category][level++].remaining;
+        return pool_decks[category][level].draw(target);
+    }
+
+    /**
+     * Returns the element of a quest, building the map of elements first if
+     * it is missing.
+     *
+     * @param quest the quest.
+     * @return the element, or null if the quest is not in the collection.
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement getElement(Quest quest) {
+        if (element_map == null) {
+            element_map = new IdentityHashMap<>();
+            for (int i = 0; i < element_count; i++) {
+                if (elements[i] != null) element_map.put(elements[i].elem, elements[i]);
+            }
+        }
+        return element_map.get(quest);
+    }
+
+    /**
+     * Get the count of all linked quest texts.
+     *
+     * @return the quest text count.
+     */
+    public int getLinkedQuestTextCount() {
+        int count = 0;
+        for (int i = 0; i < pool.length; i++) {
+            int levels = getPoolLevelCount(i, level);
+            if (levels > 0) count += pool_text_counts[i][levels - 1];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of elements linked for the current level, the
+     * length of the prefix of the pool of a category whose min level is not
+     * higher than the level.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @return the number of linked elements.
+     * @see Quest
+     */
+    private int getLinkedSize(int category) {
+        int levels = getPoolLevelCount(category, level);
+        return (levels == 0) ? 0 : pool_level_ends[category][levels - 1];
+    }
+
+    /**
+     * Returns the index in pool_levels of the level an index of the pool of
+     * a category belongs to.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param index an index of the pool, lower than pool_size.
+     * @return the index of the level, found by binary search.
+     * @see Quest
+     */
+    private int getPoolLevel(int category, int index) {
+        int[] ends = pool_level_ends[category];
+        int low = 0;
+        int high = ends.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= index) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of levels in the pool of a category that are not
+     * higher than a level.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param level the level to search.
+     * @return the number of levels, found by binary search.
+     * @see Quest
+     */
+    private int getPoolLevelCount(int category, int level) {
+        int[] levels = pool_levels[category];
+        int low = 0;
+        int high = levels.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (levels[middle] <= level) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * This method returns a random quest with regard to the level argument and
+     * current validation, or null if no suitable quest could be found.
+     *
+     * @param level the new level, should be an Integer between 1 and 10
+     * @param category takes a final Quest.CATEGORY_ flag
+     * @return a quest of the specified category, or null if no valid quest could be found
+     * @see Quest
+     */
+    public Quest getRandomQuest(int level, int category) {
+        this.level = level;
+        int linked_size = getLinkedSize(category);
+        if (linked_size == 0) {
+            last_returned = null;
+            return null;
+        }
+        if (deck_mode) {
+            last_returned = getDeckElement(category, getPoolLevelCount(category, level));
+            return last_returned.elem;
+        }
+        if (weighting == WEIGHTING_DYNAMIC) {
+            last_returned = getTreeElement(category, getPoolLevelCount(category, level));
+            return last_returned.elem;
+        }
+        if (weighting != WEIGHTING_NONE) {
+            last_returned = getWeightedElement(category, getPoolLevelCount(category, level));
+            return last_returned.elem;
+        }
+        double random = Game.getRandom() * (double)(linked_size);
+        last_returned = pool[category][(int) random];
+        return last_returned.elem;
+    }
+
+    /**
+     * Draws an element of the pool of a category by its weight, descending
+     * the binary indexed tree of the pool to the index whose prefix sum of
+     * weights covers a random target below the weight of the linked levels.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param levels the number of linked levels, at least 1.
+     * @return the drawn element.
+     * @see Quest
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement getTreeElement(int category, int levels) {
+        long[] tree = pool_weight_trees[category];
+        long total_weight = pool_weights[category][levels - 1];
+        long target = Math.min((long) (Game.getRandom() * total_weight), total_weight - 1);
+        int index = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>>= 1) {
+            if (index + step < tree.length && tree[index + step] <= target) {
+                index += step;
+                target -= tree[index];
+            }
+        }
+        return pool[category][index];
+    }
+
+    /**
+     * Get the count of all valid quest texts.
+     *
+     * @return the quest text count.
+     */
+    public int getValidQuestTextCount() {
+        int count = 0;
+        for (int s : valid_quest_text_count) count += s;
+        return count;
+    }
+
+    /**
+     * Returns the weight of an element for the current weighting.
+     *
+     * @param elem the element.
+     * @return the weight, at least 1.
+     * @see QuestCollectionElement
+     */
+    private long getWeight(QuestCollectionElement elem) {
+        switch (weighting) {
+            case WEIGHTING_QUEST:
+                return elem.elem.weight;
+            case WEIGHTING_TEXTS:
+                return (long) elem.elem.weight * elem.elem.quest_texts.size();
+            case WEIGHTING_DYNAMIC:
+                return elem.dynamic_weight;
+        }
+        return 1;
+    }
+
+    /**
+     * Draws an element of the pool of a category by its weight. A level is
+     * chosen by the prefix sums of the weights, then an element of the level
+     * by its alias table. An element removed from the pool after the table
+     * was built is drawn again.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param levels the number of linked levels, at least 1.
+     * @return the drawn element.
+     * @see Quest
+     * @see QuestCollectionElement
+     */
+    private QuestCollectionElement getWeightedElement(int category, int levels) {
+        long[] weights = pool_weights[category];
+        long total_weight = weights[levels - 1];
+        while (true) {
+            long target = Math.min((long) (Game.getRandom() * total_weight), total_weight - 1);
+            int low = 0;
+            int high = levels - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (weights[middle] <= target) low = middle + 1;
+                else high = middle;
+            }
+            QuestCollectionElement elem = getAliasTable(category, low).draw(Game.getRandom());
+            if (isDrawable(elem)) return elem;
+        }
+    }
+
+    /**
+     * Inserts a valid element not flagged as deleted into the pool of a
+     * category. The first element of every higher level is moved to the end
+     * of its level to make room, so this takes one move per level.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param elem the element to insert.
+     * @see Quest
+     * @see QuestCollectionElement
+     */
+    private void insertIntoPool(int category, QuestCollectionElement elem) {
+        int size = pool_size[category];
+        boolean grown = size == pool[category].length;
+        if (grown) pool[category] = Arrays.copyOf(pool[category], Math.max(2 * size, POOL_CAPACITY));
+        int min_level = elem.elem.getMinLevel();
+        int level = getPoolLevelCount(category, min_level) - 1;
+        if (level < 0 || pool_levels[category][level] != min_level)
+            addPoolLevel(category, ++level, min_level);
+        int text_count = elem.elem.quest_texts.size();
+        long weight = getWeight(elem);
+        int free = size;
+        for (int l = pool_levels[category].length - 1; l >= level; l--) {
+            if (l > level) {
+                int start = pool_level_ends[category][l - 1];
+                if (start != free) movePoolElement(category, start, free);
+                free = start;
+            }
+            pool_level_ends[category][l]++;
+            pool_text_counts[category][l] += text_count;
+            pool_weights[category][l] += weight;
+        }
+        pool_alias_tables[category][level] = null;
+        if (pool_decks[category][level] != null) pool_decks[category][level].add(elem);
+        pool[category][free] = elem;
+        pool_index[category][elem.id] = free;
+        pool_size[category]++;
+        if (pool_weight_trees[category] == null) return;
+        if (grown) buildWeightTree(category);
+        else addTreeWeight(category, free, weight);
+    }
+
+    /**
+     * Appends a quest and validates and pools only the new element against
+     * the settings of the last validation.
+     *
+     * @param quest the quest to add.
+     * @param deleted true if the new element should be flagged as deleted,
+     *                deleted elements are validated but never pooled.
+     */
+    private void insertQuest(Quest quest, boolean deleted) {
+        QuestCollectionElement elem = appendQuest(quest);
+        elem.deleted = deleted;
+        if (!validated || !validateQuest(quest)) return;
+        valid[elem.id / Long.SIZE] |= 1L << elem.id;
+        for (int c : quest.categories) {
+            valid_quest_text_count[c] += quest.quest_texts.size();
+            if (!deleted) insertIntoPool(c, elem);
+        }
+    }
+
+    /**
+     * Returns if an element kept by an alias table can still be
+     * drawn, that is it was neither flagged as deleted nor removed from the
+     * collection.
+     *
+     * @param elem the element.
+     * @return true if the element can be drawn; false if not.
+     * @see QuestCollectionElement
+     */
+    private boolean isDrawable(QuestCollectionElement elem) {
+        return !elem.deleted && elements[elem.id] == elem;
+    }
+
+    /**
+     * Links the decks of the linked levels of a category and unlinks the
+     * decks of higher levels, dealing missing decks. The remaining cards of
+     * the decks are added to or subtracted from deck_remaining, so this only
+     * takes one step per level linked or unlinked since the last call.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param levels the number of linked levels.
+     * @see Quest
+     */
+    private void linkDecks(int category, int levels) {
+        while (deck_linked_levels[category] < levels) {
+            Deck deck = getDeck(category, deck_linked_levels[category]++);
+            deck.linked = true;
+            deck_remaining[category] += deck.remaining;
+        }
+        while (deck_linked_levels[category] > levels) {
+            Deck deck = pool_decks[category][--deck_linked_levels[category]];
+            deck.linked = false;
+            deck_remaining[category] -= deck.remaining;
+        }
+    }
+
+    /**
+     * Moves an element of the pool of a category to another index.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param from the index of the element.
+     * @param to the new index of the element.
+     * @see Quest
+     */
+    private void movePoolElement(int category, int from, int to) {
+        QuestCollectionElement elem = pool[category][from];
+        pool[category][to] = elem;
+        pool_index[category][elem.id] = to;
+        if (pool_weight_trees[category] != null) {
+            long weight = getWeight(elem);
+            addTreeWeight(category, from, -weight);
+            addTreeWeight(category, to, weight);
+        }
+    }
+
+    /**
+     * Removes an element from the array of elements and clears its bits in
+     * the bitsets of the eligibility contexts and valid elements, so it is
+     * never validated again. All snapshots are dropped.
+     *
+     * @param elem the element to remove.
+     * @see QuestCollectionElement
+     */
+    private void removeElement(QuestCollectionElement elem) {
+        if (elements[elem.id] != elem) return;
+        snapshots.clear();
+        elements[elem.id] = null;
+        if (element_map != null && element_map.get(elem.elem) == elem) element_map.remove(elem.elem);
+        int word = elem.id / Long.SIZE;
+        long bit = 1L << elem.id;
+        for (long[] words : eligible) words[word] &= ~bit;
+        if ((valid[word] & bit) != 0) {
+            valid[word] &= ~bit;
+            for (int c : elem.elem.categories)
+                valid_quest_text_count[c] -= elem.elem.quest_texts.size();
+        }
+    }
+
+    /**
+     * Removes an element from the pool of a category. The last element of its
+     * level takes its place and the last element of every higher level
+     * moves to the start of its level, so this takes one move per level. The
+     * element is also taken out of the deck of its level. Nothing happens if
+     * the element is not in the pool.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param elem the element to remove.
+     * @see Quest
+     * @see QuestCollectionElement
+     */
+    private void removeFromPool(int category, QuestCollectionElement elem) {
+        int free = pool_index[category][elem.id];
+        if (free >= pool_size[category] || pool[category][free] != elem) return;
+        int text_count = elem.elem.quest_texts.size();
+        long weight = getWeight(elem);
+        int level = getPoolLevel(category, free);
+        if (pool_decks[category][level] != null) pool_decks[category][level].remove(elem);
+        if (pool_alias_tables[category][level] != null)
+            pool_alias_tables[category][level].removed_weight += weight;
+        addTreeWeight(category, free, -weight);
+        for (int l = level; l < pool_levels[category].length; l++) {
+            int last = pool_level_ends[category][l] - 1;
+            if (last != free) movePoolElement(category, last, free);
+            free = last;
+            pool_level_ends[category][l]--;
+            pool_text_counts[category][l] -= text_count;
+            pool_weights[category][l] -= weight;
+        }
+        pool[category][free] = null;
+        pool_size[category]--;
+    }
+
+    /**
+     * Removes quests from the lists of their categories. The remaining
+     * elements keep their delete flags and stay valid and linked as they
+     * were, so neither validation nor linking has to be repeated.
+     *
+     * @param quests the quests to remove, compared by identity.
+     * @return the removed quests that were flagged as deleted.
+     * @see Set
+     */
+    private Set<Quest> removeQuests(Collection<Quest> quests) {
+        Set<Quest> removed = Collections.newSetFromMap(new IdentityHashMap<Quest, Boolean>());
+        removed.addAll(quests);
+        Set<Quest> deleted = Collections.newSetFromMap(new IdentityHashMap<Quest, Boolean>());
+        for (int i = 0; i < head.length; i++) {
+            QuestCollectionElement previous = null;
+            for (QuestCollectionElement next = head[i]; next != null; next = next.next[i]) {
+                if (!removed.contains(next.elem)) {
+                    previous = next;
+                    continue;
+                }
+                if (next.deleted) deleted.add(next.elem);
+                removeElement(next);
+                if (previous == null) head[i] = next.next[i];
+                else previous.next[i] = next.next[i];
+            }
+            last[i] = previous;
+
+            for (int j = pool_size[i] - 1; j >= 0; j--) {
+                if (removed.contains(pool[i][j].elem)) removeFromPool(i, pool[i][j]);
+            }
+        }
+        if (last_returned != null && removed.contains(last_returned.elem)) last_returned = null;
+        return deleted;
+    }
+
+    /**
+     * Resolves the rule ids of all quests of the collection to the indices
+     * of a rule map. Quests resolved by the map before are skipped.
+     *
+     * @param rule_map the map containing the rules.
+     * @return the sorted rule ids the quests refer to that are not defined in
+     * the map, empty if there are none.
+     * @see RuleMap
+     * @see Set
+     */
+    public Set<String> resolveRules(RuleMap rule_map) {
+        Set<Quest> quests = Collections.newSetFromMap(new IdentityHashMap<Quest, Boolean>());
+        for (int i = 0; i < head.length; i++) {
+            for (QuestCollectionElement next = head[i]; next != null; next = next.next[i])
+                quests.add(next.elem);
+        }
+        return rule_map.resolveRules(quests);
+    }
+
+    /**
+     * Sets if quests are drawn out of decks. Switching the deck mode deals
+     * new decks and drops all snapshots. Nothing happens if the deck mode is
+     * not changed, so the started decks are kept.
+     *
+     * @param deck_mode true if quests should be drawn without replacement;
+     *                  false if they should be drawn by the weighting.
+     */
+    public void setDeckMode(boolean deck_mode) {
+        if (this.deck_mode == deck_mode) return;
+        this.deck_mode = deck_mode;
+        snapshots.clear();
+        clearDecks();
+    }
+
+    /**
+     * Sets the delete flag to not asked the current question again. All
+     * snapshots are dropped.
+     */
+    public void setDeleteFlag() {
+        if (last_returned != null) {
+            snapshots.clear();
+            last_returned.deleted = true;
+            for (int c : last_returned.elem.categories) removeFromPool(c, last_returned);
+        }
+    }
+
+    /**
+     * Sets the dynamic weight of a quest, as done by the game loop after each
+     * round. If the quests are drawn with WEIGHTING_DYNAMIC, the weight is
+     * updated in the binary indexed tree of each pool holding the quest, so
+     * this takes logarithmic time per category. The other snapshots keep the
+     * change until they are swapped in again. Nothing happens if the quest
+     * is not in the collection.
+     *
+     * @param quest the quest.
+     * @param weight the new dynamic weight, at least 1. A quest starts with
+     *               its weight times DYNAMIC_WEIGHT_SCALE.
+     * @throws IllegalArgumentException if the weight is lower than 1.
+     */
+    public void setDynamicWeight(Quest quest, long weight) {
+        if (weight < 1) throw new IllegalArgumentException("Dynamic weight lower than 1.");
+        QuestCollectionElement elem = getElement(quest);
+        if (elem == null || elem.dynamic_weight == weight) return;
+        long delta = weight - elem.dynamic_weight;
+        elem.dynamic_weight = weight;
+        if (weighting != WEIGHTING_DYNAMIC) return;
+        addDynamicWeight(elem, delta);
+        for (ValidationSnapshot other : snapshots.values())
+            if (other != snapshot) other.addPendingWeight(elem, delta);
+    }
+
+    /**
+     * Sets how quests are drawn. The weights of the pools are computed again
+     * and all alias tables and snapshots are dropped.
+     *
+     * @param weighting takes a final WEIGHTING_ flag.
+     */
+    public void setWeighting(int weighting) {
+        if (this.weighting == weighting) return;
+        this.weighting = weighting;
+        snapshots.clear();
+        computePoolWeights();
+    }
+
+    /**
+     * Applies a delta to a collection that may be validated and linked
+     * already. Removed quests are unlinked, added quests are appended like
+     * in addQuests(). A changed quest replaces its old version at the end of
+     * its lists and takes over its delete flag. Elements not named in the
+     * delta are left untouched.
+     *
+     * @param removed the quests to remove.
+     * @param added the quests to add.
+     * @param changed a map containing the new version of each changed quest,
+     *                keyed by its old version.
+     * @see Collection
+     * @see List
+     * @see Map
+     */
+    public void updateQuests(
+            Collection<Quest> removed,
+            List<Quest> added,
+            Map<Quest, Quest> changed) {
+        List<Quest> old_quests = new ArrayList<>(removed);
+        old_quests.addAll(changed.keySet());
+        Set<Quest> deleted = removeQuests(old_quests);
+        for (Map.Entry<Quest, Quest> entry : changed.entrySet())
+            insertQuest(entry.getValue(), deleted.contains(entry.getKey()));
+        for (Quest quest : added) insertQuest(quest, false);
+    }
+
+    /**
+     * Returns the bitset of the element ids valid for the settings, calling
+     * isValid() on every element. This is only used for settings not covered
+     * by an eligibility context.
+     *
+     * @param location takes a final Game.GAME_ flag.
+     * @param friendship_level takes a final Game.FRIENDS_ flag.
+     * @param all_players_are null, or a restriction to valid against only one
+     *                           sex set with a final User.SEX_ flag.
+     * @param requirements the requirements, or null if they are not checked.
+     * @return a new bitset of element ids.
+     * @see Game
+     * @see Quest
+     */
+    private long[] validateElements(
+            int location,
+            int friendship_level,
+            Integer all_players_are,
+            List<Integer> requirements) {
+        long[] valid = new long[eligible[0].length];
+        for (int i = 0; i < element_count; i++) {
+            if (elements[i] != null && elements[i].elem.isValid(
+                    location, friendship_level, all_players_are, requirements))
+                valid[i / Long.SIZE] |= 1L << i;
+        }
+        return valid;
+    }
+
+    /**
+     * Validates these collection against the settings. The valid elements
+     * are found with a word-wide scan of the bitsets of the eligibility
+     * context and the requirements that are not met, 64 elements per word.
+     * If a snapshot of the same settings is kept, it is swapped in instead.
+     *
+     * @param location takes a final Game.GAME_ flag.
+     * @param friendship_level takes a final Game.FRIENDS_ flag.
+     * @param all_players_are null, or a restriction to valid against only one
+    *                           sex set with a final User.SEX_ flag.
+     * @param requirements true if it is a valid Quest; false if not.
+     * @see Game
+     * @see Quest
+     */
+    public void validateCollection(
+            int location,
+            int friendship_level,
+            Integer all_players_are,
+            List<Integer> requirements) {
+        int context = Quest.getEligibilityContext(location, friendship_level, all_players_are);
+        int requirement_mask = (requirements == null) ? -1 : Quest.getRequirementMask(requirements);
+        validated_location = location;
+        validated_friendship_level = friendship_level;
+        validated_all_players_are = all_players_are;
+        validated_requirements = (requirements == null) ? null : new ArrayList<>(requirements);
+        validated_context = context;
+        validated_requirement_mask = requirement_mask;
+        validated = true;
+
+        Long key = null;
+        if (context >= 0) {
+            int met = requirement_mask;
+            for (int r = 0; r < required.length; r++) {
+                if (required[r] == null) met |= 1 << r;
+            }
+            key = (long) context << Integer.SIZE | met & 0xFFFFFFFFL;
+            snapshot = snapshots.get(key);
+            if (snapshot != null) {
+                snapshot.restore();
+                return;
+            }
+            valid = eligible[context].clone();
+            for (int r = 0; r < required.length; r++) {
+                if (required[r] == null || (requirement_mask & 1 << r) != 0) continue;
+                long[] needs = required[r];
+                for (int w = 0; w < valid.length; w++) valid[w] &= ~needs[w];
+            }
+        } else {
+            snapshot = null;
+            valid = validateElements(location, friendship_level, all_players_are, requirements);
+        }
+
+        valid_quest_text_count = new int[Quest.CATEGORY_SUM];
+        for (int w = 0; w < valid.length; w++) {
+            for (long bits = valid[w]; bits != 0; bits &= bits - 1) {
+                Quest quest = elements[w * Long.SIZE + Long.numberOfTrailingZeros(bits)].elem;
+                if (context >= 0) quest.updateMinLevel(context, requirement_mask);
+                for (int c : quest.categories)
+                    valid_quest_text_count[c] += quest.quest_texts.size();
+            }
+        }
+        fillPools();
+        if (key == null) return;
+        snapshot = new ValidationSnapshot();
+        snapshots.put(key, snapshot);
+    }
+
+    /**
+     * Validates a quest against the settings of the last validation, by its
+     * eligibility context if the settings are covered by one, and sets its
+     * lowest valid level.
+     *
+     * @param quest the quest to validate.
+     * @return true if it is a valid Quest; false if not.
+     */
+    private boolean validateQuest(Quest quest) {
+        if (validated_context >= 0) {
+            quest.updateMinLevel(validated_context, validated_requirement_mask);
+            return quest.isValid(validated_context, validated_requirement_mask);
+        }
+        return quest.isValid(
+                validated_location,
+                validated_friendship_level,
+                validated_all_players_are,
+                validated_requirements);
+    }
+
+    /**
+     * This class contains an alias table drawing one of a fixed set of
+     * elements by their weights in constant time (Vose's alias method).
+     */
+    private static class AliasTable {
 
         /**
-         * Field containing the next linked element in this collection, or null
-         * if no next linked element exists.
+         * The index of the element standing in for each column.
          */
-        QuestCollectionElement[] linked = new QuestCollectionElement[Quest.CATEGORY_SUM];
+        private final int[] alias;
 
         /**
-         * Field containing the next element in this collection, or null if no
-         * next element exists.
+         * The elements of the table.
+         *
+         * @see QuestCollectionElement
          */
-        QuestCollectionElement[] next = new QuestCollectionElement[Quest.CATEGORY_SUM];
+        private final QuestCollectionElement[] elements;
+
+        /**
+         * The chance of each column to draw its own element.
+         */
+        private final double[] probability;
 
         /**
-         * Field containing the next valid element in this collection, or null
-         * if no next valid element exists.
+         * The weight of the elements removed from the pool since the table
+         * was built.
          */
-        QuestCollectionElement[] valid = new QuestCollectionElement[Quest.CATEGORY_SUM];
+        long removed_weight = 0;
 
+        /**
+         * The weight of all elements of the table.
+         */
+        final long total_weight;
+
+        /**
+         * Creates a new alias table.
+         *
+         * @param elements the elements, at least one.
+         * @param weights the weight of each element, at least 1.
+         * @see QuestCollectionElement
+         */
+        AliasTable(QuestCollectionElement[] elements, long[] weights) {
+            int n = elements.length;
+            long total = 0;
+            for (long weight : weights) total += weight;
+            this.elements = elements;
+            total_weight = total;
+            probability = new double[n];
+            alias = new int[n];
+
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int small_size = 0;
+            int large_size = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = (double) weights[i] * n / total;
+                if (scaled[i] < 1.0) small[small_size++] = i;
+                else large[large_size++] = i;
+            }
+            while (small_size > 0 && large_size > 0) {
+                int less = small[--small_size];
+                int more = large[--large_size];
+                probability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] += scaled[less] - 1.0;
+                if (scaled[more] < 1.0) small[small_size++] = more;
+                else large[large_size++] = more;
+            }
+            while (large_size > 0) probability[large[--large_size]] = 1.0;
+            while (small_size > 0) probability[small[--small_size]] = 1.0;
+        }
+
+        /**
+         * Draws an element.
+         *
+         * @param random a random number between 0 (inclusive) and 1
+         *               (exclusive).
+         * @return the drawn element.
+         * @see QuestCollectionElement
+         */
+        QuestCollectionElement draw(double random) {
+            double column = random * elements.length;
+            int index = Math.min((int) column, elements.length - 1);
+            return (column - index < probability[index]) ? elements[index] : elements[alias[index]];
+        }
+    }
+
+    /**
+     * This class contains a deck of the elements of one level of a pool,
+     * drawn without replacement. The remaining cards are kept at the start
+     * of the array, the drawn ones behind them. The index of every card is
+     * kept in deck_index, so a card is taken out in constant time. While the
+     * deck is linked, every change of its remaining cards is counted in
+     * deck_remaining.
+     */
+    private class Deck {
+
+        /**
+         * The cards of the deck, the remaining ones first.
+         *
+         * @see QuestCollectionElement
+         */
+        private QuestCollectionElement[] cards;
+
+        /**
+         * The final Quest.CATEGORY_ flag of the pool of the deck.
+         *
+         * @see Quest
+         */
+        private final int category;
+
+        /**
+         * Flag set true if the remaining cards are counted in deck_remaining,
+         * false otherwise.
+         */
+        boolean linked = false;
+
+        /**
+         * The number of remaining cards.
+         */
+        int remaining;
+
+        /**
+         * The number of cards.
+         */
+        int size;
+
+        /**
+         * Creates a new deck with all cards remaining.
+         *
+         * @param cards the cards, the array is kept.
+         * @param category takes a final Quest.CATEGORY_ flag.
+         * @see Quest
+         * @see QuestCollectionElement
+         */
+        Deck(QuestCollectionElement[] cards, int category) {
+            this.cards = cards;
+            this.category = category;
+            size = cards.length;
+            remaining = size;
+            for (int i = 0; i < size; i++) deck_index[category][cards[i].id] = i;
+        }
+
+        /**
+         * Adds a card to the remaining cards. The first drawn card is moved
+         * to the end to make room.
+         *
+         * @param elem the new card.
+         * @see QuestCollectionElement
+         */
+        void add(QuestCollectionElement elem) {
+            if (size == cards.length) cards = Arrays.copyOf(cards, Math.max(2 * size, POOL_CAPACITY));
+            place(cards[remaining], size++);
+            place(elem, remaining);
+            setRemaining(remaining + 1);
+        }
+
+        /**
+         * Draws a remaining card. The last remaining card takes its place.
+         *
+         * @param index the index of the card, lower than remaining.
+         * @return the drawn card.
+         * @see QuestCollectionElement
+         */
+        QuestCollectionElement draw(int index) {
+            QuestCollectionElement elem = cards[index];
+            place(cards[remaining - 1], index);
+            place(elem, remaining - 1);
+            setRemaining(remaining - 1);
+            return elem;
+        }
+
+        /**
+         * Stores a card at an index of the deck.
+         *
+         * @param elem the card, or null.
+         * @param index the index.
+         * @see QuestCollectionElement
+         */
+        private void place(QuestCollectionElement elem, int index) {
+            cards[index] = elem;
+            if (elem != null) deck_index[category][elem.id] = index;
+        }
+
+        /**
+         * Takes a card out of the deck. A remaining card is replaced by the
+         * last remaining card, whose place is taken by the last drawn card.
+         * Nothing happens if the card is not in the deck.
+         *
+         * @param elem the card.
+         * @see QuestCollectionElement
+         */
+        void remove(QuestCollectionElement elem) {
+            int index = deck_index[category][elem.id];
+            if (index >= size || cards[index] != elem) return;
+            if (index < remaining) {
+                place(cards[remaining - 1], index);
+                index = remaining - 1;
+                setRemaining(remaining - 1);
+            }
+            if (index != --size) place(cards[size], index);
+            cards[size] = null;
+        }
+
+        /**
+         * Puts all drawn cards back.
+         */
+        void reshuffle() { setRemaining(size); }
+
+        /**
+         * Sets the number of remaining cards and counts the change in
+         * deck_remaining if the deck is linked.
+         *
+         * @param remaining the new number of remaining cards.
+         */
+        private void setRemaining(int remaining) {
+            if (linked) deck_remaining[category] += remaining - this.remaining;
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * This class contains an element for the QuestCollection. It also contains
+     * links to the next element and a not yet implemented delete flag.
+     */
+    class QuestCollectionElement {
+
+        /**
+         * The nested Quest element.
+         *
+         * @see Quest
+         */
+        final Quest elem;
+
+        /**
+         * Flag set true if this element should be ignored, false otherwise.
+         */
+        boolean deleted = false;
+
+        /**
+         * The weight this element is drawn with for WEIGHTING_DYNAMIC.
+         */
+        long dynamic_weight;
+
+        /**
+         * The id of this element, its index in the array of elements and its
+         * bit in the bitsets of the collection.
+         */
+        final int id;
+
+        /**
+         * Field containing the next element in this collection, or null if no
+         * next element exists.
+         */
+        QuestCollectionElement[] next = new QuestCollectionElement[Quest.CATEGORY_SUM];
 
         /**
          * Creates a new QuestCollection element.
          *
          * @param elem a Quest.
+         * @param id the id of the element.
          * @see Quest
          */
-        QuestCollectionElement(Quest elem) { this.elem = elem; }
+        QuestCollectionElement(Quest elem, int id) {
+            this.elem = elem;
+            this.id = id;
+            dynamic_weight = (long) elem.weight * DYNAMIC_WEIGHT_SCALE;
+        }
+    }
+
+    /**
+     * This class keeps the result of a validation: the valid elements and
+     * the pools filled out of them. It is created right after the validation
+     * and refers to the arrays of the collection, which are not changed
+     * while the snapshot is kept, except for dynamic weights. A change of a
+     * dynamic weight while another snapshot is in use is kept as pending
+     * delta and added when this snapshot is swapped in again.
+     */
+    private class ValidationSnapshot {
+
+        /**
+         * The dynamic weight deltas of the elements changed while this
+         * snapshot was not in use.
+         *
+         * @see Map
+         */
+        private final Map<QuestCollectionElement, Long> pending_weights = new IdentityHashMap<>();
+
+        /**
+         * The index of each element in the decks.
+         */
+        private final int[][] deck_index = QuestCollection.this.deck_index;
+
+        /**
+         * The number of linked decks of the pools.
+         */
+        private final int[] deck_linked_levels = QuestCollection.this.deck_linked_levels;
+
+        /**
+         * The number of remaining cards in the linked decks of the pools.
+         */
+        private final int[] deck_remaining = QuestCollection.this.deck_remaining;
+
+        /**
+         * The pools of the validation.
+         */
+        private final QuestCollectionElement[][] pool = QuestCollection.this.pool;
+
+        /**
+         * The decks of the levels of the pools.
+         */
+        private final Deck[][] pool_decks = QuestCollection.this.pool_decks;
+
+        /**
+         * The index of each element in the pools.
+         */
+        private final int[][] pool_index = QuestCollection.this.pool_index;
+
+        /**
+         * The alias tables of the levels of the pools.
+         */
+        private final AliasTable[][] pool_alias_tables = QuestCollection.this.pool_alias_tables;
+
+        /**
+         * The ends of the levels of the pools.
+         */
+        private final int[][] pool_level_ends = QuestCollection.this.pool_level_ends;
+
+        /**
+         * The levels of the pools.
+         */
+        private final int[][] pool_levels = QuestCollection.this.pool_levels;
+
+        /**
+         * The sizes of the pools.
+         */
+        private final int[] pool_size = QuestCollection.this.pool_size;
+
+        /**
+         * The prefix sums of the quest texts of the pools.
+         */
+        private final int[][] pool_text_counts = QuestCollection.this.pool_text_counts;
+
+        /**
+         * The prefix sums of the weights of the pools.
+         */
+        private final long[][] pool_weights = QuestCollection.this.pool_weights;
+
+        /**
+         * The binary indexed trees of the weights of the pools.
+         */
+        private final long[][] pool_weight_trees = QuestCollection.this.pool_weight_trees;
+
+        /**
+         * The bitset of the valid elements.
+         */
+        private final long[] valid = QuestCollection.this.valid;
+
+        /**
+         * The number of valid quest texts of each category.
+         */
+        private final int[] valid_quest_text_count = QuestCollection.this.valid_quest_text_count;
+
+        /**
+         * Adds a dynamic weight delta of an element to the pending deltas.
+         *
+         * @param elem the element.
+         * @param delta the weight to add, may be negative.
+         * @see QuestCollectionElement
+         */
+        void addPendingWeight(QuestCollectionElement elem, long delta) {
+            Long pending = pending_weights.get(elem);
+            pending_weights.put(elem, (pending == null) ? delta : pending + delta);
+        }
+
+        /**
+         * Swaps this snapshot in as the current validation of the
+         * collection. Only the dynamic weights changed since it was last in
+         * use are added to its trees, so this takes logarithmic time per
+         * changed element. The decks are kept as they were left, so a deck
+         * cycle goes on where it stopped.
+         */
+        void restore() {
+            QuestCollection.this.deck_index = deck_index;
+            QuestCollection.this.deck_linked_levels = deck_linked_levels;
+            QuestCollection.this.deck_remaining = deck_remaining;
+            QuestCollection.this.pool = pool;
+            QuestCollection.this.pool_alias_tables = pool_alias_tables;
+            QuestCollection.this.pool_decks = pool_decks;
+            QuestCollection.this.pool_index = pool_index;
+            QuestCollection.this.pool_level_ends = pool_level_ends;
+            QuestCollection.this.pool_levels = pool_levels;
+            QuestCollection.this.pool_size = pool_size;
+            QuestCollection.this.pool_text_counts = pool_text_counts;
+            QuestCollection.this.pool_weights = pool_weights;
+            QuestCollection.this.pool_weight_trees = pool_weight_trees;
+            QuestCollection.this.valid = valid;
+            QuestCollection.this.valid_quest_text_count = valid_quest_text_count;
+            for (Map.Entry<QuestCollectionElement, Long> pending : pending_weights.entrySet())
+                addDynamicWeight(pending.getKey(), pending.getValue());
+            pending_weights.clear();
+        }
     }
 }
@@ -71,4 +71,36 @@ public class QuestConfiguration {
         this.skip = skip;
         this.allow_delete = allow_delete;
     }
+
+    /**
+     * Returns whether another object is a configuration with the same flags
+     * and level.
+     *
+     * @param o the object to compare with.
+     * @return true if all fields are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QuestConfiguration)) return false;
+        QuestConfiguration c = (QuestConfiguration) o;
+        return level == c.level && player == c.player && partner == c.partner
+                && friendship_level == c.friendship_level && skip == c.skip
+                && allow_delete == c.allow_delete;
+    }
+
+    /**
+     * Returns a hash code built out of all fields.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        int hash = level;
+        hash = 31 * hash + player;
+        hash = 31 * hash + partner;
+        hash = 31 * hash + friendship_level;
+        hash = 31 * hash + skip;
+        return 31 * hash + allow_delete;
+    }
 }
@@ -1,6 +1,7 @@
 package at.coala.games.tts.data.quest;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import at.coala.games.tts.data.Game;
@@ -41,6 +42,14 @@ public class QuestCreator {
      */
     private List<QuestConfiguration> conf;
 
+    /**
+     * The pool canonicalizing strings and configurations, or null if they
+     * are used as they are.
+     *
+     * @see DedupPool
+     */
+    private final DedupPool pool;
+
     /**
      * A local list of configurations for public locations, or null of none
      * exist for the prepared quest.
@@ -65,10 +74,12 @@ public class QuestCreator {
     private List<String> rule_ids;
 
     /**
-     * A local variable containing the source for the prepared quest, or null
-     * if no exists.
+     * A local list containing the source for the prepared quest as only
+     * element, or null if no exists.
+     *
+     * @see List
      */
-    private String source;
+    private List<String> source;
 
     /**
      * A local list of quest texts.
@@ -82,6 +93,25 @@ public class QuestCreator {
      */
     private boolean quest_in_preparation = false;
 
+    /**
+     * A local variable containing the weight of the prepared quest.
+     */
+    private int weight;
+
+    /**
+     * Create a new QuestCreator without pool.
+     */
+    public QuestCreator() { this(null); }
+
+    /**
+     * Create a new QuestCreator passing all strings and configurations
+     * through a pool, so repeated values share one instance.
+     *
+     * @param pool the pool, or null if values are used as they are.
+     * @see DedupPool
+     */
+    public QuestCreator(DedupPool pool) { this.pool = pool; }
+
     /**
      * Aborts the preparation. craftQuest() will return null after this call.
      */
@@ -102,7 +132,7 @@ public class QuestCreator {
      */
     public void addComment(String comment) {
         if (comments == null) comments = new ArrayList<>(1);
-        comments.add(comment);
+        comments.add(canonicalize(comment));
     }
 
     /**
@@ -205,13 +235,13 @@ public class QuestCreator {
             Integer skip,
             Integer allow_delete,
             QuestConfiguration conf) {
-        list.add(new QuestConfiguration(
+        list.add(canonicalize(new QuestConfiguration(
                 level,
                 (player == null) ? conf.player: player,
                 (partner == null) ? conf.partner : partner,
                 (friendship_level == null) ? conf.friendship_level : friendship_level,
                 (skip == null) ? conf.skip : skip,
-                (allow_delete == null) ? conf.allow_delete : allow_delete));
+                (allow_delete == null) ? conf.allow_delete : allow_delete)));
     }
 
     /**
@@ -233,7 +263,7 @@ public class QuestCreator {
      */
     public void addRuleId(String rule_id) {
         if (rule_ids == null) rule_ids = new ArrayList<>(1);
-        rule_ids.add(rule_id);
+        rule_ids.add(canonicalize(rule_id));
     }
 
     /**
@@ -241,14 +271,40 @@ public class QuestCreator {
      *
      * @param source a source.
      */
-    public void addSource(String source) { this.source = source; }
+    public void addSource(String source) {
+        this.source = Collections.singletonList(canonicalize(source));
+    }
 
     /**
      * Adds an alternative quest text for an existing quest prepared currently.
      *
      * @param text an alternative quest text.
      */
-    public void addText(String text) { this.text.add(text); }
+    public void addText(String text) { this.text.add(canonicalize(text)); }
+
+    /**
+     * Returns the pooled instance of a configuration.
+     *
+     * @param conf a configuration.
+     * @return an equal configuration out of the pool, or conf if no pool is
+     * used.
+     * @see DedupPool
+     * @see QuestConfiguration
+     */
+    private QuestConfiguration canonicalize(QuestConfiguration conf) {
+        return (pool == null) ? conf : pool.canonicalize(conf);
+    }
+
+    /**
+     * Returns the pooled instance of a string.
+     *
+     * @param string a string.
+     * @return an equal string out of the pool, or string if no pool is used.
+     * @see DedupPool
+     */
+    private String canonicalize(String string) {
+        return (pool == null) ? string : pool.canonicalize(string);
+    }
 
     /**
      * Crafts the Quest element with set data and configuration and returns it.
@@ -262,7 +318,8 @@ public class QuestCreator {
         if (quest_in_preparation) {
             quest_in_preparation = false;
             return new Quest(
-                    categories, requirements, source, text, comments, rule_ids, conf, public_conf);
+                    categories, requirements, source, text, comments, rule_ids, conf, public_conf,
+                    weight);
         } else return null;
     }
 
@@ -274,6 +331,35 @@ public class QuestCreator {
      */
     public boolean getInPreparation() { return quest_in_preparation; }
 
+    /**
+     * Replaces the quest texts, comments and source of the quest prepared
+     * currently. The lists are used by the crafted Quest as they are, so they
+     * can decode their strings on first access.
+     *
+     * @param text a list of quest texts, must not be empty.
+     * @param comments a list of comments, or null if none exist.
+     * @param source a list with the source as only element, or null if no
+     *               exists.
+     * @see List
+     */
+    public void setTexts(List<String> text, List<String> comments, List<String> source) {
+        this.text = text;
+        this.comments = comments;
+        this.source = source;
+    }
+
+    /**
+     * Sets the weight of the quest prepared currently.
+     *
+     * @param weight a weight between 1 and Quest.MAX_WEIGHT.
+     * @throws IllegalArgumentException if the weight is out of range.
+     * @see Quest
+     */
+    public void setWeight(int weight) throws IllegalArgumentException {
+        if (weight < 1 || weight > Quest.MAX_WEIGHT) throw new IllegalArgumentException();
+        this.weight = weight;
+    }
+
     /**
      * Clears all previous data and prepares a new quest. For some arguments
      * default values exist, so null is a valid argument for everything but
@@ -314,20 +400,21 @@ public class QuestCreator {
         categories = new ArrayList<>(1);
         categories.add(category);
         this.text = new ArrayList<>(1);
-        this.text.add(text);
+        this.text.add(canonicalize(text));
         conf = new ArrayList<>(1);
-        conf.add(new QuestConfiguration(
+        conf.add(canonicalize(new QuestConfiguration(
                 level,
                 (player == null) ? Settings.DEFAULT_PLAYER : player,
                 (partner == null) ? Settings.DEFAULT_PARTNER : partner,
                 (friendship_level == null) ? Settings.DEFAULT_FRIENDS : friendship_level,
                 (skip == null) ? Settings.DEFAULT_SKIP : skip,
-                (allow_delete == null) ? Settings.DEFAULT_DELETE : allow_delete));
+                (allow_delete == null) ? Settings.DEFAULT_DELETE : allow_delete)));
         source = null;
         comments = null;
         rule_ids = null;
         public_conf = null;
         requirements = null;
+        weight = Settings.DEFAULT_WEIGHT;
 
         quest_in_preparation = true;
     }
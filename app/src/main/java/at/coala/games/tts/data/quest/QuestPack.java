@@ -0,0 +1,373 @@
+package at.coala.games.tts.data.quest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import at.coala.games.tts.data.Game;
+
+/**
+ * Stores one version of a quest pack together with the delta to its previous
+ * version, so a changed pack can be applied to a collection in use without
+ * loading all quests again. Quests have no ids, so they are matched by their
+ * content, looked up by a hash: a quest with the same content as a quest of
+ * the previous version is unchanged and replaced by the instance already in
+ * the collection. A run of left over quests is only paired as changed quests
+ * if it takes the place of a run of left over quests of the same length
+ * between the same unchanged neighbours, so it was edited in place. All
+ * other left over quests are added or removed.
+ *
+ * The rules of a pack are added to the rule map on behalf of the pack, so
+ * removing a rule restores the text of the same id defined by the game or
+ * by another pack instead of removing it.
+ *
+ * diff() does not touch any collection and may run in the background,
+ * apply() has to run on the thread using the collection.
+ *
+ * @author Klaus
+ * @see QuestCollection
+ */
+public class QuestPack {
+
+    /**
+     * A constant containing the offset basis of the 64 bit FNV-1a hash.
+     */
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * A constant containing the prime of the 64 bit FNV-1a hash.
+     */
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    /**
+     * The quests added since the previous version.
+     *
+     * @see List
+     */
+    private final List<Quest> added = new ArrayList<>();
+
+    /**
+     * The new version of each changed quest, keyed by its old version.
+     *
+     * @see Map
+     */
+    private final Map<Quest, Quest> changed = new LinkedHashMap<>();
+
+    /**
+     * The rules added or changed since the previous version.
+     *
+     * @see RuleMap
+     */
+    private final RuleMap changed_rules = new RuleMap();
+
+    /**
+     * The content hash of each quest, in the order of quests.
+     */
+    private final long[] hashes;
+
+    /**
+     * The name of the pack, owning its rules in the rule map.
+     */
+    private final String name;
+
+    /**
+     * The quests of this version in file order.
+     *
+     * @see List
+     */
+    private final List<Quest> quests;
+
+    /**
+     * The quests removed since the previous version.
+     *
+     * @see List
+     */
+    private final List<Quest> removed = new ArrayList<>();
+
+    /**
+     * The ids of the rules removed since the previous version.
+     *
+     * @see List
+     */
+    private final List<String> removed_rules = new ArrayList<>();
+
+    /**
+     * The rules of this version.
+     *
+     * @see RuleMap
+     */
+    private final RuleMap rules;
+
+    /**
+     * Creates a new version of a quest pack. Until diff() is called, all
+     * quests and rules are taken as added.
+     *
+     * @param name the name of the pack, like its file name.
+     * @param quests the quests of the pack in file order.
+     * @param rules the rules of the pack.
+     * @see List
+     * @see RuleMap
+     */
+    public QuestPack(String name, List<Quest> quests, RuleMap rules) {
+        this.name = name;
+        this.quests = new ArrayList<>(quests);
+        this.rules = rules;
+        hashes = new long[quests.size()];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = getContentHash(quests.get(i));
+        added.addAll(quests);
+        changed_rules.addRules(rules);
+    }
+
+    /**
+     * Applies the delta to the previous version to a collection and a rule
+     * map. Quests and rules not part of the delta are left untouched, so
+     * their delete flags and the current linking stay intact. Removed rules
+     * give way to the rules of the same id the pack shadowed.
+     *
+     * @param collection the collection containing the previous version.
+     * @param rule_map the map containing the rules of the previous version.
+     * @see QuestCollection
+     * @see RuleMap
+     */
+    public void apply(QuestCollection collection, RuleMap rule_map) {
+        for (String id : removed_rules) rule_map.removeRule(id, name);
+        rule_map.addRules(changed_rules, name);
+        collection.updateQuests(removed, added, changed);
+    }
+
+    /**
+     * Computes the delta to the previous version of this pack. Quests equal
+     * to quests of the previous version are replaced by their previous
+     * instances, so the next delta refers to the quests in the collection.
+     *
+     * @param previous the previous version, or null if the pack is new.
+     */
+    public void diff(QuestPack previous) {
+        added.clear();
+        changed.clear();
+        removed.clear();
+        changed_rules.clear();
+        removed_rules.clear();
+        if (previous == null)
+            previous = new QuestPack(name, Collections.<Quest>emptyList(), new RuleMap());
+
+        Map<Long, Deque<Integer>> old_quests = new HashMap<>();
+        for (int i = 0; i < previous.hashes.length; i++) {
+            Deque<Integer> equal = old_quests.get(previous.hashes[i]);
+            if (equal == null) {
+                equal = new ArrayDeque<>();
+                old_quests.put(previous.hashes[i], equal);
+            }
+            equal.add(i);
+        }
+        int[] matches = new int[hashes.length];
+        boolean[] kept = new boolean[previous.hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            matches[i] = -1;
+            Deque<Integer> equal = old_quests.get(hashes[i]);
+            if (equal == null) continue;
+            for (Iterator<Integer> it = equal.iterator(); it.hasNext(); ) {
+                int old = it.next();
+                if (!hasEqualContent(previous.quests.get(old), quests.get(i))) continue;
+                it.remove();
+                matches[i] = old;
+                kept[old] = true;
+                quests.set(i, previous.quests.get(old));
+                break;
+            }
+        }
+
+        boolean[] paired = new boolean[previous.hashes.length];
+        for (int start = 0; start < hashes.length; start++) {
+            if (matches[start] >= 0) continue;
+            int end = start;
+            while (end < hashes.length && matches[end] < 0) end++;
+            int before = (start == 0) ? -1 : matches[start - 1];
+            int after = (end == hashes.length) ? previous.hashes.length : matches[end];
+            boolean in_place = after - before - 1 == end - start;
+            for (int old = before + 1; in_place && old < after; old++) in_place = !kept[old];
+            for (int i = start; i < end; i++) {
+                if (!in_place) {
+                    added.add(quests.get(i));
+                    continue;
+                }
+                int old = before + 1 + i - start;
+                paired[old] = true;
+                changed.put(previous.quests.get(old), quests.get(i));
+            }
+            start = end;
+        }
+        for (int old = 0; old < previous.hashes.length; old++)
+            if (!kept[old] && !paired[old]) removed.add(previous.quests.get(old));
+
+        for (String id : previous.rules.getRuleIds()) {
+            if (rules.getRule(id) == null) removed_rules.add(id);
+        }
+        for (String id : rules.getRuleIds()) {
+            String text = rules.getRule(id);
+            if (text == null || !text.equals(previous.rules.getRule(id)))
+                changed_rules.addRule(id, text);
+        }
+    }
+
+    /**
+     * Returns the quests added since the previous version.
+     *
+     * @return the added quests in file order.
+     * @see List
+     */
+    List<Quest> getAdded() { return Collections.unmodifiableList(added); }
+
+    /**
+     * Returns the changed quests.
+     *
+     * @return the new version of each changed quest, keyed by its old version.
+     * @see Map
+     */
+    Map<Quest, Quest> getChanged() { return Collections.unmodifiableMap(changed); }
+
+    /**
+     * Computes a 64 bit FNV-1a hash over all content of a quest.
+     *
+     * @param quest the quest.
+     * @return the content hash.
+     * @see Quest
+     */
+    private static long getContentHash(Quest quest) {
+        long hash = HASH_OFFSET;
+        hash = hashIntegers(hash, quest.categories);
+        hash = hashIntegers(hash, quest.requirements);
+        hash = hashStrings(hash, quest.rule_ids);
+        hash = hashStrings(hash, quest.quest_texts);
+        hash = hashStrings(hash, quest.comments);
+        hash = hashStrings(hash, Collections.singletonList(quest.getSource()));
+        hash = hashInt(hash, quest.weight);
+        for (int location : new int[] { Game.LOCATION_PRIVATE, Game.LOCATION_PUBLIC }) {
+            List<QuestConfiguration> confs = quest.getConfigurations(location);
+            hash = hashInt(hash, (confs == null) ? -1 : confs.size());
+            if (confs == null) continue;
+            for (QuestConfiguration conf : confs) {
+                hash = hashInt(hash, conf.level);
+                hash = hashInt(hash, conf.player);
+                hash = hashInt(hash, conf.partner);
+                hash = hashInt(hash, conf.friendship_level);
+                hash = hashInt(hash, conf.skip);
+                hash = hashInt(hash, conf.allow_delete);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the quests of this version. After diff(), unchanged quests are
+     * the instances of the previous version.
+     *
+     * @return the quests in file order.
+     * @see List
+     */
+    List<Quest> getQuests() { return Collections.unmodifiableList(quests); }
+
+    /**
+     * Returns the quests removed since the previous version.
+     *
+     * @return the removed quests in the file order of the previous version.
+     * @see List
+     */
+    List<Quest> getRemoved() { return Collections.unmodifiableList(removed); }
+
+    /**
+     * Returns whether the pack differs from its previous version.
+     *
+     * @return true if quests or rules were added, changed or removed.
+     */
+    public boolean hasDelta() {
+        return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty()
+                || !changed_rules.getRuleIds().isEmpty() || !removed_rules.isEmpty();
+    }
+
+    /**
+     * Returns whether two quests have the same content, covering everything
+     * the content hash covers.
+     *
+     * @param a the one quest.
+     * @param b the other quest.
+     * @return true if all content is equal.
+     * @see Quest
+     */
+    static boolean hasEqualContent(Quest a, Quest b) {
+        if (!Objects.equals(a.categories, b.categories)
+                || !Objects.equals(a.requirements, b.requirements)
+                || !Objects.equals(a.rule_ids, b.rule_ids)
+                || !Objects.equals(a.quest_texts, b.quest_texts)
+                || !Objects.equals(a.comments, b.comments)
+                || !Objects.equals(a.getSource(), b.getSource()) || a.weight != b.weight)
+            return false;
+        for (int location : new int[] { Game.LOCATION_PRIVATE, Game.LOCATION_PUBLIC }) {
+            if (!Objects.equals(a.getConfigurations(location), b.getConfigurations(location)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds an int to a hash.
+     *
+     * @param hash the hash so far.
+     * @param value the value to add.
+     * @return the new hash.
+     */
+    private static long hashInt(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xFF;
+            hash *= HASH_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds a list of integers and its size to a hash.
+     *
+     * @param hash the hash so far.
+     * @param values the values, or null.
+     * @return the new hash.
+     * @see List
+     */
+    private static long hashIntegers(long hash, List<Integer> values) {
+        hash = hashInt(hash, (values == null) ? -1 : values.size());
+        if (values == null) return hash;
+        for (int value : values) hash = hashInt(hash, value);
+        return hash;
+    }
+
+    /**
+     * Adds a list of strings and their lengths to a hash.
+     *
+     * @param hash the hash so far.
+     * @param strings the strings, single strings may be null, or null.
+     * @return the new hash.
+     * @see List
+     */
+    private static long hashStrings(long hash, List<String> strings) {
+        hash = hashInt(hash, (strings == null) ? -1 : strings.size());
+        if (strings == null) return hash;
+        for (String string : strings) {
+            hash = hashInt(hash, (string == null) ? -1 : string.length());
+            if (string == null) continue;
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                hash ^= c & 0xFF;
+                hash *= HASH_PRIME;
+                hash ^= c >>> 8;
+                hash *= HASH_PRIME;
+            }
+        }
+        return hash;
+    }
+}
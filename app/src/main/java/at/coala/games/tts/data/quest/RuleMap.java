@@ -1,21 +1,92 @@
 package at.coala.games.tts.data.quest;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Stores key-value-pairs of rule ids and rule texts.
+ * Stores key-value-pairs of rule ids and rule texts. Every text is kept as
+ * only element of a list, so loaders can store views decoding the text when
+ * it is shown.
+ *
+ * Every rule id, defined or only referenced by a quest, is given a dense
+ * index that never changes, even if the rule is removed. Quests resolve their
+ * rule ids to these indices once with resolveRules(), so showing their rules
+ * neither looks up ids nor allocates.
+ *
+ * Quest packs add their rules with an owner. A rule of a pack shadows the
+ * rule of the same id added without owner and the rules of packs added
+ * before, and removing it brings the shadowed text back. So a pack removing
+ * its rule never removes a rule the game or another pack still defines.
  *
  * @author Klaus
  */
 public class RuleMap {
 
     /**
-     * The data structure storing a rule id as key and the rule text as value.
+     * The dense index of every rule id ever added or resolved.
+     *
+     * @see Map
+     */
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    /**
+     * The data structure storing a rule id as key and a list with the rule
+     * text as only element as value.
+     *
+     * @see List
+     * @see Map
+     */
+    private Map<String, List<String>> map = new HashMap<>();
+
+    /**
+     * The text of every owner defining a rule id, accessible by rule id. The
+     * owners of a rule id are kept in the order they added it, the text of
+     * the last owner is the one in map.
+     *
+     * @see LinkedHashMap
+     * @see List
+     * @see Map
+     */
+    private final Map<String, LinkedHashMap<String, List<String>>> owned = new HashMap<>();
+
+    /**
+     * The text added without owner of every rule id that is also defined by
+     * an owner, accessible by rule id.
      *
+     * @see List
      * @see Map
      */
-    private Map<String, String> map = new HashMap<>();
+    private final Map<String, List<String>> shadowed = new HashMap<>();
+
+    /**
+     * The list with the rule text of every index as only element, or null if
+     * the rule of the index is not defined.
+     *
+     * @see List
+     */
+    private final List<List<String>> texts = new ArrayList<>();
+
+    /**
+     * Adds a rule to the map. If an owner defines the same id, the text is
+     * kept until the last owner removes its rule.
+     *
+     * @param id the id/key.
+     * @param text a list with the rule text as only element.
+     * @see List
+     */
+    public void addRule(String id, List<String> text) {
+        if (owned.containsKey(id)) shadowed.put(id, text);
+        else putRule(id, text);
+    }
 
     /**
      * Adds a rule to the map.
@@ -23,7 +94,82 @@ public class RuleMap {
      * @param id the id/key.
      * @param text the rule text/value.
      */
-    public void addRule(String id, String text) { map.put(id, text); }
+    public void addRule(String id, String text) { addRule(id, Collections.singletonList(text)); }
+
+    /**
+     * Adds all rules of another map to this map, without decoding their
+     * texts.
+     *
+     * @param rules the map to copy the rules of.
+     */
+    public void addRules(RuleMap rules) {
+        //noinspection Convert2streamapi
+        for (Map.Entry<String, List<String>> rule : rules.map.entrySet())
+            addRule(rule.getKey(), rule.getValue());
+    }
+
+    /**
+     * Adds all rules of another map to this map on behalf of an owner,
+     * without decoding their texts. The rules shadow the rules of the same
+     * ids added before, until the owner removes them. An owner adding a rule
+     * id again replaces its text and shadows all other owners again.
+     *
+     * @param rules the map to copy the rules of.
+     * @param owner the name of the owner, like the file name of a quest pack.
+     */
+    public void addRules(RuleMap rules, String owner) {
+        for (Map.Entry<String, List<String>> rule : rules.map.entrySet()) {
+            String id = rule.getKey();
+            LinkedHashMap<String, List<String>> owners = owned.get(id);
+            if (owners == null) {
+                owners = new LinkedHashMap<>();
+                owned.put(id, owners);
+                if (map.containsKey(id)) shadowed.put(id, map.get(id));
+            }
+            owners.remove(owner);
+            owners.put(owner, rule.getValue());
+            putRule(id, rule.getValue());
+        }
+    }
+
+    /**
+     * Removes all rules from the map, including the rules of all owners.
+     * Their indices stay reserved.
+     */
+    public void clear() {
+        map.clear();
+        owned.clear();
+        shadowed.clear();
+        Collections.fill(texts, null);
+    }
+
+    /**
+     * Returns the dense index of a rule id, reserving a new one if the id is
+     * not known yet.
+     *
+     * @param id the id/key of the rule.
+     * @return the index.
+     */
+    private int getIndex(String id) {
+        Integer index = indices.get(id);
+        if (index == null) {
+            index = texts.size();
+            indices.put(id, index);
+            texts.add(null);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the rule stored at a dense index.
+     *
+     * @param index the index of the rule.
+     * @return the rule text, or null if the rule is not defined.
+     */
+    String getRule(int index) {
+        List<String> text = texts.get(index);
+        return (text == null) ? null : text.get(0);
+    }
 
     /**
      * Returns the rule associated with this id.
@@ -31,5 +177,155 @@ public class RuleMap {
      * @param id the id/key for the wanted rule.
      * @return the rule text, or null if the rule could not be found.
      */
-    public String getRule(String id) { return map.get(id); }
+    public String getRule(String id) {
+        List<String> text = map.get(id);
+        return (text == null) ? null : text.get(0);
+    }
+
+    /**
+     * Returns all rule ids stored in this map.
+     *
+     * @return an unmodifiable set of rule ids.
+     * @see Set
+     */
+    public Set<String> getRuleIds() { return Collections.unmodifiableSet(map.keySet()); }
+
+    /**
+     * Returns if a list of rules was resolved by this map.
+     *
+     * @param rules the list returned by resolve().
+     * @return true if the list refers to the indices of this map; false
+     * otherwise.
+     * @see List
+     */
+    boolean isResolved(List<String> rules) {
+        return rules instanceof ResolvedRules && ((ResolvedRules) rules).getRuleMap() == this;
+    }
+
+    /**
+     * Stores the text shown for a rule id.
+     *
+     * @param id the id/key.
+     * @param text a list with the rule text as only element.
+     * @see List
+     */
+    private void putRule(String id, List<String> text) {
+        map.put(id, text);
+        texts.set(getIndex(id), text);
+    }
+
+    /**
+     * Removes the rule an owner added. If other owners define the rule id,
+     * the text of the last of them is shown, otherwise the text added
+     * without owner. If there is none of them, the index of the rule stays
+     * reserved, so quests referring to it show null until the rule is added
+     * again. Does nothing if the owner does not define the rule id.
+     *
+     * @param id the id/key of the rule to remove.
+     * @param owner the name of the owner that added the rule.
+     */
+    public void removeRule(String id, String owner) {
+        LinkedHashMap<String, List<String>> owners = owned.get(id);
+        if (owners == null || !owners.containsKey(owner)) return;
+        owners.remove(owner);
+        if (!owners.isEmpty()) {
+            List<String> text = null;
+            for (List<String> owner_text : owners.values()) text = owner_text;
+            putRule(id, text);
+            return;
+        }
+        owned.remove(id);
+        if (shadowed.containsKey(id)) {
+            putRule(id, shadowed.remove(id));
+        } else {
+            map.remove(id);
+            texts.set(getIndex(id), null);
+        }
+    }
+
+    /**
+     * Resolves rule ids to their indices once.
+     *
+     * @param ids the rule ids.
+     * @return an unmodifiable list of the rule texts of the ids, looked up by
+     * index on every access.
+     * @see List
+     */
+    List<String> resolve(List<String> ids) {
+        int[] resolved = new int[ids.size()];
+        for (int i = 0; i < resolved.length; i++) resolved[i] = getIndex(ids.get(i));
+        return new ResolvedRules(resolved);
+    }
+
+    /**
+     * Resolves the rule ids of quests to the indices of this map, so their
+     * rules can be shown without allocating. Quests resolved by this map
+     * before are skipped. This method should be called as soon as quests and
+     * rules are loaded.
+     *
+     * @param quests the quests to resolve.
+     * @return the sorted rule ids the quests refer to that are not defined in
+     * this map, empty if there are none.
+     * @see Collection
+     * @see Quest
+     * @see Set
+     */
+    public Set<String> resolveRules(Collection<Quest> quests) {
+        Set<String> dangling = new TreeSet<>();
+        for (Quest q : quests) {
+            if (q.rule_ids == null) continue;
+            q.getRules(this);
+            //noinspection Convert2streamapi
+            for (String id : q.rule_ids) {
+                if (!map.containsKey(id)) dangling.add(id);
+            }
+        }
+        return dangling;
+    }
+
+    /**
+     * An unmodifiable list of rule texts, looked up by their indices in the
+     * map on access. Later changes of the rules are shown without resolving
+     * the quest again.
+     */
+    private class ResolvedRules extends AbstractList<String> implements RandomAccess {
+
+        /**
+         * The index of each rule of the list.
+         */
+        private final int[] rule_indices;
+
+        /**
+         * Creates a new list of resolved rules.
+         *
+         * @param rule_indices the index of each rule.
+         */
+        ResolvedRules(int[] rule_indices) { this.rule_indices = rule_indices; }
+
+        /**
+         * Returns the text of the rule at the specified position in this
+         * list.
+         *
+         * @param index index of the rule to return.
+         * @return the rule text, or null if the rule is not defined.
+         * @throws IndexOutOfBoundsException if the index is out of range.
+         */
+        @Override
+        public String get(int index) { return getRule(rule_indices[index]); }
+
+        /**
+         * Returns the map resolving this list.
+         *
+         * @return the map.
+         */
+        RuleMap getRuleMap() { return RuleMap.this; }
+
+        /**
+         * Returns the number of rules in this list.
+         *
+         * @return the number of rules.
+         */
+        @Override
+        public int size() { return rule_indices.length; }
+    }
 }
@@ -1,19 +1,39 @@
 package at.coala.games.tts.dba;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 
 import org.xmlpull.v1.XmlPullParser;
 
 import at.coala.games.tts.data.Settings;
+import at.coala.games.tts.data.quest.Quest;
 import at.coala.games.tts.data.quest.QuestCollection;
 import at.coala.games.tts.data.User;
 import at.coala.games.tts.data.quest.RuleMap;
+import at.coala.games.tts.dba.catalog.QuestCatalogAccess;
+import at.coala.games.tts.dba.catalog.QuestCatalogShards;
+import at.coala.games.tts.dba.catalog.QuestCatalogWriter;
 import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+import at.coala.games.tts.dba.xml.QuestDataXMLChunkLoader;
 import at.coala.games.tts.game.GameDataManager;
 
 /**
@@ -24,14 +44,53 @@ import at.coala.games.tts.game.GameDataManager;
  */
 public class DataAccess {
 
+	/**
+	 * The name of the asset containing the binary quest catalog compiled at
+	 * build time.
+	 */
+	private static final String ASSET_QUEST_CATALOG = "quest_catalog.bin";
+
+	/**
+	 * The name of the asset containing the gzip compressed XML file with the
+	 * built-in quests.
+	 */
+	private static final String ASSET_QUEST_DATA = "tts_data.xml.gz";
+
+	/**
+	 * The prefix of the quest snapshot files in the cache directory. It is
+	 * followed by the language code, the checksum of the compressed XML asset
+	 * and SUFFIX_QUEST_SNAPSHOT.
+	 */
+	private static final String CACHE_QUEST_SNAPSHOT = "quest_snapshot_";
+
+	/**
+	 * The size of the buffer decompressing the XML asset.
+	 */
+	private static final int GZIP_BUFFER_SIZE = 8192;
+
 	/**
 	 * Field to access Settings SharedPreferences
 	 */
 	private static final String PREFERENCES_SETTING = "settings";
 
+	/**
+	 * The name of the directory in the app storage containing quest packs.
+	 */
+	private static final String DIRECTORY_QUEST_PACKS = "quest_packs";
+
 	//TODO
 	private static final String PREFERENCES_GAME_DATA = "game_data";
 
+	/**
+	 * The file extension of quest packs.
+	 */
+	public static final String SUFFIX_QUEST_PACK = ".xml";
+
+	/**
+	 * The file extension of the quest snapshot files in the cache directory.
+	 */
+	private static final String SUFFIX_QUEST_SNAPSHOT = ".bin";
+
 	/**
 	 * Add a new user into the database.
 	 *
@@ -60,6 +119,45 @@ public class DataAccess {
 		dbHelper.close();
 	}
 
+	/**
+	 * Opens the binary quest catalog compiled at build time, stores its rules
+	 * and the quests of all shards up to a level into the data-sets. The
+	 * catalog stays mapped into memory and the quests decode their texts out
+	 * of it when shown. The shards of higher levels can be read later out of
+	 * the returned shards. No quest is stored if the catalog is missing or the
+	 * shards up to the level could not be read completely.
+	 *
+	 * @param context the context of which to open the assets.
+	 * @param quests collection needed to store quests.
+	 * @param rules map to store the rules.
+	 * @param lang_code a xsd:language code.
+	 * @param max_level the highest level of the shards to read now.
+	 * @return the shards of the catalog; null if it could not be read.
+	 * @see Context
+	 * @see QuestCatalogShards
+	 * @see QuestCollection
+	 * @see RuleMap
+	 */
+	public static QuestCatalogShards getQuestCatalog(Context context, QuestCollection quests,
+			RuleMap rules, String lang_code, int max_level) {
+		try {
+			RuleMap catalog_rules = new RuleMap();
+			QuestCatalogShards shards = new QuestCatalogAccess().getShards(
+					catalog_rules, lang_code, mapAsset(context, ASSET_QUEST_CATALOG));
+			List<Quest> read = shards.readShards(max_level);
+			rules.addRules(catalog_rules);
+			//noinspection Convert2streamapi
+			for (Quest q : read) quests.addQuest(q);
+			return shards;
+		} catch (IOException e) {
+			/**
+			 * It is ok to ignore this exception. The quests will be parsed
+			 * out of the XML file instead.
+			 */
+			return null;
+		}
+	}
+
 	/**
 	 * Reads a XML file and stores the quests and rules into the data-sets.
 	 *
@@ -71,7 +169,6 @@ public class DataAccess {
 	 * @see QuestCollection
 	 * @see RuleMap
 	 */
-	@SuppressWarnings("unused")
 	public static void getQuests(
 			QuestCollection quests, RuleMap rules, String lang_code, InputStream dataStream) {
 		QuestDataXMLAccess xmlAccess = new QuestDataXMLAccess();
@@ -96,6 +193,7 @@ public class DataAccess {
 	 * @see RuleMap
 	 * @see XmlPullParser
 	 */
+	@SuppressWarnings("unused")
 	public static void getQuests(
 			QuestCollection quests, RuleMap rules, String lang_code, XmlPullParser parser) {
 		QuestDataXMLAccess xmlAccess = new QuestDataXMLAccess();
@@ -109,6 +207,161 @@ public class DataAccess {
 		}
 	}
 
+	/**
+	 * Reads a quest pack, a XML file with the same schema as the built-in
+	 * quests, in parallel chunks. The quests are returned instead of being
+	 * stored, so they can be added to a collection in use with
+	 * QuestCollection.addQuests(). Chunks of the file that can not be parsed
+	 * are left out.
+	 *
+	 * @param pack the quest pack file.
+	 * @param rules map to store the rules of the pack.
+	 * @param lang_code a xsd:language code.
+	 * @return the quests of the pack in file order, or an empty list if the
+	 * file could not be read.
+	 * @see File
+	 * @see Quest
+	 * @see QuestDataXMLChunkLoader
+	 * @see RuleMap
+	 */
+	public static List<Quest> getQuestPack(File pack, RuleMap rules, String lang_code) {
+		final List<Quest> quests = new ArrayList<>();
+		try {
+			InputStream in = new FileInputStream(pack);
+			try {
+				new QuestDataXMLChunkLoader().getQuests(quests, rules, lang_code, in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			/**
+			 * It is ok to ignore this exception. This app will not collapse
+			 * without this quest pack.
+			 */
+		}
+		return quests;
+	}
+
+	/**
+	 * Returns the quest pack directory of the app storage and creates it if
+	 * it does not exist yet, so it can be watched for new packs.
+	 *
+	 * @param context the context of which to open the app storage.
+	 * @return the quest pack directory.
+	 * @see Context
+	 * @see File
+	 */
+	public static File getQuestPackDirectory(Context context) {
+		File directory = new File(context.getFilesDir(), DIRECTORY_QUEST_PACKS);
+		//noinspection ResultOfMethodCallIgnored
+		directory.mkdirs();
+		return directory;
+	}
+
+	/**
+	 * Returns the quest packs stored in the quest pack directory of the app
+	 * storage, sorted by name.
+	 *
+	 * @param context the context of which to open the app storage.
+	 * @return the quest pack files, or an empty list if none exist.
+	 * @see Context
+	 * @see File
+	 */
+	public static List<File> getQuestPackFiles(Context context) {
+		File[] files = getQuestPackDirectory(context).listFiles();
+		if (files == null) return Collections.emptyList();
+		List<File> packs = new ArrayList<>(files.length);
+		//noinspection Convert2streamapi
+		for (File file : files) {
+			if (file.isFile() && file.getName().endsWith(SUFFIX_QUEST_PACK)) packs.add(file);
+		}
+		Collections.sort(packs);
+		return packs;
+	}
+
+	/**
+	 * Reads the quests and rules of the compressed XML asset and stores them
+	 * into the data-sets. The asset is decompressed while it is parsed, so
+	 * the XML file is never held in memory as a whole. The first time the
+	 * asset is read, it is parsed and a snapshot of the parsed quests is
+	 * written as binary catalog into the cache directory. The snapshot is
+	 * keyed by the language code and a checksum of the asset, so later calls
+	 * map the snapshot instead of parsing XML until the asset changes.
+	 *
+	 * @param context the context of which to open the asset and the cache
+	 *                directory.
+	 * @param quests collection needed to store quests.
+	 * @param rules map to store the rules.
+	 * @param lang_code a xsd:language code.
+	 * @see Context
+	 * @see QuestCollection
+	 * @see RuleMap
+	 */
+	public static void getQuestSnapshot(
+			Context context, QuestCollection quests, RuleMap rules, String lang_code) {
+		String prefix = CACHE_QUEST_SNAPSHOT + lang_code + "_";
+		File snapshot;
+		try {
+			snapshot = new File(context.getCacheDir(),
+					prefix + Long.toHexString(getAssetChecksum(context, ASSET_QUEST_DATA))
+							+ SUFFIX_QUEST_SNAPSHOT);
+			if (snapshot.isFile()) {
+				new QuestCatalogAccess().getQuests(quests, rules, lang_code, mapFile(snapshot));
+				return;
+			}
+		} catch (IOException e) {
+			/**
+			 * It is ok to ignore this exception. The asset is parsed and the
+			 * snapshot is written again.
+			 */
+			snapshot = null;
+		}
+
+		final List<Quest> parsed = new ArrayList<>();
+		RuleMap parsed_rules = new RuleMap();
+		try {
+			InputStream in = new GZIPInputStream(context.getAssets().open(
+					ASSET_QUEST_DATA, AssetManager.ACCESS_STREAMING), GZIP_BUFFER_SIZE);
+			try {
+				new QuestDataXMLAccess().getQuests(parsed, parsed_rules, lang_code, in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			/**
+			 * It is ok to ignore this exception. This app will not collapse
+			 * without parsing this file.
+			 */
+		}
+		rules.addRules(parsed_rules);
+		//noinspection Convert2streamapi
+		for (Quest q : parsed) quests.addQuest(q);
+		if (snapshot != null && !parsed.isEmpty())
+			writeQuestSnapshot(snapshot, prefix, lang_code, parsed, parsed_rules);
+	}
+
+	/**
+	 * Calculates the CRC-32 checksum of an asset.
+	 *
+	 * @param context the context of which to open the asset.
+	 * @param asset the name of the asset.
+	 * @return the checksum.
+	 * @throws IOException if the asset could not be read.
+	 * @see Context
+	 */
+	private static long getAssetChecksum(Context context, String asset) throws IOException {
+		InputStream in = context.getAssets().open(asset, AssetManager.ACCESS_STREAMING);
+		try {
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) crc.update(buffer, 0, read);
+			return crc.getValue();
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Get a setting value in SharedPreferences.
 	 *
@@ -162,6 +415,67 @@ public class DataAccess {
 		dbHelper.close();
 	}
 
+	/**
+	 * Maps an asset into memory. Assets stored uncompressed in the APK (see
+	 * aaptOptions in build.gradle) are mapped straight out of the APK file,
+	 * compressed ones are read once into a direct buffer.
+	 *
+	 * @param context the context of which to open the assets.
+	 * @param asset the name of the asset.
+	 * @return a read-only buffer containing the asset.
+	 * @throws IOException if the asset is missing or could not be read.
+	 * @see ByteBuffer
+	 * @see Context
+	 */
+	private static ByteBuffer mapAsset(Context context, String asset) throws IOException {
+		try {
+			AssetFileDescriptor fd = context.getAssets().openFd(asset);
+			FileInputStream in = fd.createInputStream();
+			try {
+				return in.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+			} finally {
+				in.close();
+			}
+		} catch (FileNotFoundException e) {
+			/**
+			 * Compressed assets can not be opened as file descriptor, so they
+			 * are read into a direct buffer instead.
+			 */
+			InputStream in = context.getAssets().open(asset);
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) bytes.write(buffer, 0, read);
+				ByteBuffer catalog = ByteBuffer.allocateDirect(bytes.size());
+				catalog.put(bytes.toByteArray()).flip();
+				return catalog.asReadOnlyBuffer();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Maps a file into memory.
+	 *
+	 * @param file the file to map.
+	 * @return a read-only buffer containing the file.
+	 * @throws IOException if the file is missing or could not be read.
+	 * @see ByteBuffer
+	 * @see File
+	 */
+	private static ByteBuffer mapFile(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Updates a setting value in SharedPreferences.
 	 *
@@ -289,4 +603,50 @@ public class DataAccess {
 				context.getSharedPreferences(PREFERENCES_GAME_DATA, Context.MODE_PRIVATE);
 		return sp.getLong(GameDataManager.getGameDataAttributeString(gameData), defValue);
 	}
+
+	/**
+	 * Writes a quest snapshot into a temporary file and renames it, so a
+	 * snapshot is either complete or missing. Older snapshots of the same
+	 * language are deleted.
+	 *
+	 * @param snapshot the snapshot file to write.
+	 * @param prefix the prefix all snapshots of this language start with.
+	 * @param lang_code a xsd:language code.
+	 * @param quests the parsed quests.
+	 * @param rules the parsed rules.
+	 * @see File
+	 * @see Quest
+	 * @see RuleMap
+	 */
+	private static void writeQuestSnapshot(
+			File snapshot, String prefix, String lang_code, List<Quest> quests, RuleMap rules) {
+		File directory = snapshot.getParentFile();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				//noinspection ResultOfMethodCallIgnored
+				if (file.getName().startsWith(prefix)) file.delete();
+			}
+		}
+		File temporary = new File(directory, snapshot.getName() + ".tmp");
+		try {
+			QuestCatalogWriter writer = new QuestCatalogWriter();
+			writer.addLanguage(lang_code, quests, rules);
+			OutputStream out = new FileOutputStream(temporary);
+			try {
+				writer.write(out);
+			} finally {
+				out.close();
+			}
+			//noinspection ResultOfMethodCallIgnored
+			if (!temporary.renameTo(snapshot)) temporary.delete();
+		} catch (IOException e) {
+			/**
+			 * It is ok to ignore this exception. The resource is parsed again
+			 * next time.
+			 */
+			//noinspection ResultOfMethodCallIgnored
+			temporary.delete();
+		}
+	}
 }
@@ -0,0 +1,137 @@
+package at.coala.games.tts.dba.catalog;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of strings stored one after the other in a quest
+ * catalog or a TextArena. The strings are not kept on the heap but decoded out
+ * of the buffer when get() is called, so quests that are never shown do not
+ * cost more than this small view. The last CACHE_SIZE decoded strings of all
+ * lists are cached, enough for the card shown and the card prepared next, so
+ * redrawing a card does not decode its strings again.
+ *
+ * @author Klaus
+ * @see QuestCatalogAccess
+ */
+class CatalogStringList extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * A constant containing the number of decoded strings cached.
+     */
+    private static final int CACHE_SIZE = 16;
+
+    /**
+     * The position in the list of each cached string.
+     */
+    private static final int[] cache_indices = new int[CACHE_SIZE];
+
+    /**
+     * The list of each cached string, used as lock of the cache.
+     */
+    private static final CatalogStringList[] cache_lists = new CatalogStringList[CACHE_SIZE];
+
+    /**
+     * The index of the cache entry replaced next.
+     */
+    private static int cache_next;
+
+    /**
+     * The cached strings.
+     */
+    private static final String[] cache_strings = new String[CACHE_SIZE];
+
+    /**
+     * The buffer containing the catalog. Its position and limit are never
+     * changed by this list.
+     *
+     * @see ByteBuffer
+     */
+    private final ByteBuffer catalog;
+
+    /**
+     * The index of the length of the first string in the catalog.
+     */
+    private final int offset;
+
+    /**
+     * The number of strings in this list.
+     */
+    private final int size;
+
+    /**
+     * Creates a view on count strings stored at offset in the catalog.
+     *
+     * @param catalog the buffer containing the catalog.
+     * @param offset the index of the length of the first string.
+     * @param size the number of strings.
+     * @see ByteBuffer
+     */
+    CatalogStringList(ByteBuffer catalog, int offset, int size) {
+        this.catalog = catalog;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Decodes the string at the specified position in this list.
+     *
+     * @param index index of the string to decode.
+     * @return the string, or null if null was stored.
+     */
+    private String decode(int index) {
+        int position = offset;
+        for (int i = 0; i < index; i++) {
+            int length = QuestCatalogAccess.getUnsignedShort(catalog, position);
+            position += (length == QuestCatalogAccess.NULL_STRING) ? 2 : 2 + length;
+        }
+        int length = QuestCatalogAccess.getUnsignedShort(catalog, position);
+        if (length == QuestCatalogAccess.NULL_STRING) return null;
+        ByteBuffer string = catalog.duplicate();
+        string.position(position + 2);
+        byte[] bytes = new byte[length];
+        string.get(bytes);
+        try {
+            return new String(bytes, QuestCatalogAccess.STRING_CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported on every platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the string at the specified position in this list, decoded
+     * unless it is cached.
+     *
+     * @param index index of the string to return.
+     * @return the string, or null if null was stored.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        synchronized (cache_lists) {
+            for (int i = 0; i < CACHE_SIZE; i++) {
+                if (cache_lists[i] == this && cache_indices[i] == index) return cache_strings[i];
+            }
+        }
+        String string = decode(index);
+        synchronized (cache_lists) {
+            cache_lists[cache_next] = this;
+            cache_indices[cache_next] = index;
+            cache_strings[cache_next] = string;
+            cache_next = (cache_next + 1) % CACHE_SIZE;
+        }
+        return string;
+    }
+
+    /**
+     * Returns the number of strings in this list.
+     *
+     * @return the number of strings.
+     */
+    @Override
+    public int size() { return size; }
+}
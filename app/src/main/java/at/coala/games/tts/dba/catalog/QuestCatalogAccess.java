@@ -0,0 +1,461 @@
+package at.coala.games.tts.dba.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.quest.DedupPool;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.quest.QuestCreator;
+import at.coala.games.tts.data.quest.RuleMap;
+
+/**
+ * Provides methods to read a binary quest catalog and store its quests and
+ * rules into the data-sets. The catalog is compiled out of the XML quest file
+ * at build time (see QuestCatalogWriter), so every category, configuration,
+ * requirement and rule id is already resolved to its final flag and no XML
+ * has to be tokenized on start-up.
+ *
+ * A catalog is written big-endian and starts with the int MAGIC and the
+ * unsigned short VERSION. The language index follows with a count byte and,
+ * for every language, its language code and the int offset and int length of
+ * its section. Every language section is complete on its own, so a loader
+ * jumps straight to the section of the wanted language and never reads the
+ * bytes of other translations. A section starts with the rule table, an
+ * unsigned short count and the id and text of each rule. After that the
+ * shard table follows with a count byte and, for every level shard, its level
+ * byte, int quest count and the int offset and int length of its quest records
+ * within the section. A quest belongs to the shard of the lowest level other
+ * than 0 of all its configurations, so a shard is not needed before the game
+ * reaches its level. Shards are stored in ascending level order and can be
+ * read one by one with QuestCatalogShards. Each quest record contains:
+ * <ul>
+ *     <li>a count byte followed by one byte per Quest.CATEGORY_ flag</li>
+ *     <li>a count byte followed by one byte per Quest.REQUIREMENT_ flag</li>
+ *     <li>a count byte followed by an unsigned short per rule table index</li>
+ *     <li>a count byte followed by the quest texts</li>
+ *     <li>a count byte followed by the comments</li>
+ *     <li>the source, which may be null</li>
+ *     <li>a count byte followed by the private configurations</li>
+ *     <li>a count byte followed by the public configurations</li>
+ *     <li>the weight byte</li>
+ * </ul>
+ * A configuration is stored as six bytes: level, player, partner, friendship
+ * level, skip and allow_delete flag. Strings are stored as an unsigned short
+ * length followed by as many UTF-8 bytes, a length of NULL_STRING stores null.
+ *
+ * The catalog is kept in one ByteBuffer, ideally mapped straight out of the
+ * APK. Quest texts, comments, sources and rule texts are not decoded while
+ * reading: every Quest and rule gets CatalogStringList views pointing into
+ * the buffer, which decode a string only when a game state shows it. Views
+ * on equal bytes, like the sources many quests repeat, and equal
+ * configurations are shared between the quests by a DedupPool,
+ * getBytesSaved() returns the heap this saved.
+ *
+ * @author Klaus
+ * @see QuestCatalogWriter
+ */
+public class QuestCatalogAccess {
+
+    /**
+     * A constant containing the first four bytes of every catalog ("TTSC").
+     */
+    public static final int MAGIC = 0x54545343;
+
+    /**
+     * A constant containing the string length marking a null string.
+     */
+    static final int NULL_STRING = 0xFFFF;
+
+    /**
+     * A constant containing the name of the charset used for strings.
+     */
+    static final String STRING_CHARSET = "UTF-8";
+
+    /**
+     * A constant containing the version of the catalog format. A catalog with
+     * another version is rejected.
+     */
+    public static final int VERSION = 4;
+
+    /**
+     * A constant containing the estimated heap size of a CatalogStringList:
+     * object header, one reference and two int fields.
+     */
+    private static final int VIEW_SIZE = 8 + 4 + 2 * 4;
+
+    /**
+     * The estimated number of heap bytes saved by sharing equal views and
+     * configurations in the last read section.
+     */
+    private long bytes_saved;
+
+    /**
+     * Returns the estimated number of heap bytes saved by sharing equal views
+     * and configurations while the last language section was read.
+     *
+     * @return the saved bytes, or 0 if nothing was read yet.
+     */
+    public long getBytesSaved() { return bytes_saved; }
+
+    /**
+     * Reads the section of a language out of a binary catalog and stores the
+     * quests of all shards and the rules into the data-sets. Sections of other
+     * languages are skipped by the language index without being read. Nothing
+     * is stored unless the whole section could be read. The buffer is not
+     * modified, but the quests keep referencing it, so it must not be changed
+     * afterwards.
+     *
+     * @param quests collection needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code, the catalog has to contain.
+     * @param catalog a buffer containing the catalog from its position to its
+     *                limit.
+     * @throws IOException if the buffer contains no catalog of this version,
+     * the language is missing or its section is not complete.
+     * @see ByteBuffer
+     * @see QuestCollection
+     * @see RuleMap
+     */
+    public void getQuests(
+            QuestCollection quests, RuleMap rules, String lang_code, ByteBuffer catalog)
+            throws IOException {
+        List<Quest> read = new ArrayList<>();
+        getQuests(read, rules, lang_code, catalog);
+        //noinspection Convert2streamapi
+        for (Quest q : read) quests.addQuest(q);
+    }
+
+    /**
+     * Reads the section of a language out of a binary catalog and stores the
+     * quests of all shards into a list in shard order and the rules into a
+     * map. Nothing is stored unless the whole section could be read. The
+     * buffer is not modified, but the quests keep referencing it, so it must
+     * not be changed afterwards.
+     *
+     * @param quests list needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code, the catalog has to contain.
+     * @param catalog a buffer containing the catalog from its position to its
+     *                limit.
+     * @throws IOException if the buffer contains no catalog of this version,
+     * the language is missing or its section is not complete.
+     * @see ByteBuffer
+     * @see List
+     * @see RuleMap
+     */
+    public void getQuests(
+            List<Quest> quests, RuleMap rules, String lang_code, ByteBuffer catalog)
+            throws IOException {
+        RuleMap section_rules = new RuleMap();
+        QuestCatalogShards shards = getShards(section_rules, lang_code, catalog);
+        List<Quest> read = shards.readShards(Integer.MAX_VALUE);
+        bytes_saved = shards.getBytesSaved();
+
+        rules.addRules(section_rules);
+        quests.addAll(read);
+    }
+
+    /**
+     * Reads a binary catalog out of a stream into a buffer and stores the
+     * quests and rules into the data-sets. Nothing is stored unless the whole
+     * catalog could be read.
+     *
+     * @param quests collection needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code, the catalog has to contain.
+     * @param catalogStream a stream with the catalog to read.
+     * @throws IOException if the stream is no catalog of this version and
+     * language, or could not be read.
+     * @see InputStream
+     * @see QuestCollection
+     * @see RuleMap
+     */
+    public void getQuests(
+            QuestCollection quests, RuleMap rules, String lang_code, InputStream catalogStream)
+            throws IOException {
+        getQuests(quests, rules, lang_code, readCatalog(catalogStream));
+    }
+
+    /**
+     * Reads a binary catalog out of a stream into a buffer and stores the
+     * quests into a list and the rules into a map. Nothing is stored unless
+     * the whole catalog could be read.
+     *
+     * @param quests list needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code, the catalog has to contain.
+     * @param catalogStream a stream with the catalog to read.
+     * @throws IOException if the stream is no catalog of this version and
+     * language, or could not be read.
+     * @see InputStream
+     * @see List
+     * @see RuleMap
+     */
+    public void getQuests(
+            List<Quest> quests, RuleMap rules, String lang_code, InputStream catalogStream)
+            throws IOException {
+        getQuests(quests, rules, lang_code, readCatalog(catalogStream));
+    }
+
+    /**
+     * Opens the section of a language out of a binary catalog, stores its
+     * rules into the map and returns the shards of its quests, so they can be
+     * read level by level. The buffer is not modified, but the quests keep
+     * referencing it, so it must not be changed afterwards.
+     *
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code, the catalog has to contain.
+     * @param catalog a buffer containing the catalog from its position to its
+     *                limit.
+     * @return the shards of the section, none of them read yet.
+     * @throws IOException if the buffer contains no catalog of this version,
+     * the language is missing or its rule or shard table is not complete.
+     * @see ByteBuffer
+     * @see QuestCatalogShards
+     * @see RuleMap
+     */
+    public QuestCatalogShards getShards(RuleMap rules, String lang_code, ByteBuffer catalog)
+            throws IOException {
+        ByteBuffer in = catalog.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not a quest catalog.");
+            if (getUnsignedShort(in) != VERSION) throw new IOException("Unknown catalog version.");
+            int language_count = in.get() & 0xFF;
+            for (int i = 0; i < language_count; i++) {
+                String code = readString(in);
+                int offset = in.getInt();
+                int length = in.getInt();
+                if (lang_code.equals(code)) {
+                    if (offset < 0 || length < 0 || offset > in.limit() - length)
+                        throw new IOException("Incomplete catalog.");
+                    ByteBuffer section = in.duplicate();
+                    section.limit(offset + length).position(offset);
+                    return readSection(rules, section.slice());
+                }
+            }
+            throw new IOException("Language not in catalog.");
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Incomplete catalog.");
+        }
+    }
+
+    /**
+     * Reads an unsigned short at the position of the buffer.
+     *
+     * @param in the catalog.
+     * @return the value between 0 and 0xFFFF.
+     */
+    static int getUnsignedShort(ByteBuffer in) { return in.getShort() & 0xFFFF; }
+
+    /**
+     * Reads an unsigned short at an index of the buffer without changing its
+     * position.
+     *
+     * @param in the catalog.
+     * @param index the index of the first byte.
+     * @return the value between 0 and 0xFFFF.
+     */
+    static int getUnsignedShort(ByteBuffer in, int index) { return in.getShort(index) & 0xFFFF; }
+
+    /**
+     * Reads a whole stream into a buffer.
+     *
+     * @param catalogStream a stream with the catalog to read.
+     * @return a buffer containing the read bytes.
+     * @throws IOException if the stream could not be read.
+     * @see ByteBuffer
+     * @see InputStream
+     */
+    private static ByteBuffer readCatalog(InputStream catalogStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = catalogStream.read(buffer)) != -1) bytes.write(buffer, 0, read);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /**
+     * Reads the configurations of one location and adds them to the quest in
+     * preparation. If no quest is prepared yet, the first configuration
+     * starts a new one.
+     *
+     * @param in the catalog, positioned at the configuration count byte.
+     * @param qc the creator to prepare the quest with.
+     * @param location takes a final Game.LOCATION_ flag.
+     * @param categories the categories of the quest, used to start a new one.
+     * @see Game
+     * @see QuestCreator
+     */
+    private static void readConfigurations(
+            ByteBuffer in, QuestCreator qc, int location, int[] categories) {
+        int count = in.get() & 0xFF;
+        for (int i = 0; i < count; i++) {
+            int level = in.get() & 0xFF;
+            int player = in.get() & 0xFF;
+            int partner = in.get() & 0xFF;
+            int friendship_level = in.get() & 0xFF;
+            int skip = in.get() & 0xFF;
+            int allow_delete = in.get() & 0xFF;
+            if (qc.getInPreparation()) {
+                qc.addConfiguration(location,
+                        level, player, partner, friendship_level, skip, allow_delete);
+            } else {
+                qc.startNewQuest(categories[0], null,
+                        level, player, partner, friendship_level, skip, allow_delete);
+                for (int c = 1; c < categories.length; c++) qc.addCategory(categories[c]);
+            }
+        }
+    }
+
+    /**
+     * Reads one quest record and crafts the quest. The texts, comments and
+     * source are not decoded but passed as views into the catalog.
+     *
+     * @param in the catalog, positioned at the start of a quest record.
+     * @param qc the creator to prepare the quest with.
+     * @param pool the pool sharing equal views between quests.
+     * @param rule_ids the rule table of this catalog.
+     * @return the crafted quest.
+     * @throws IOException if the record is not complete.
+     * @see DedupPool
+     * @see Quest
+     * @see QuestCreator
+     */
+    static Quest readQuest(ByteBuffer in, QuestCreator qc, DedupPool pool, String[] rule_ids)
+            throws IOException {
+        qc.abort();
+        int[] categories = readFlags(in);
+        int[] requirements = readFlags(in);
+        int[] rules = new int[in.get() & 0xFF];
+        for (int i = 0; i < rules.length; i++) rules[i] = getUnsignedShort(in);
+        List<String> texts = skipStrings(in, in.get() & 0xFF, pool);
+        List<String> comments = skipStrings(in, in.get() & 0xFF, pool);
+        List<String> source = null;
+        if (getUnsignedShort(in, in.position()) == NULL_STRING) in.position(in.position() + 2);
+        else source = skipStrings(in, 1, pool);
+        if (categories.length == 0 || texts == null) throw new IOException("Incomplete quest.");
+
+        readConfigurations(in, qc, Game.LOCATION_PRIVATE, categories);
+        if (!qc.getInPreparation()) throw new IOException("Quest without configuration.");
+        readConfigurations(in, qc, Game.LOCATION_PUBLIC, categories);
+        int weight = in.get() & 0xFF;
+        if (weight == 0) throw new IOException("Invalid weight.");
+        qc.setWeight(weight);
+        for (int r : requirements) qc.addRequirement(r);
+        for (int r : rules) {
+            if (r >= rule_ids.length) throw new IOException("Unknown rule index.");
+            qc.addRuleId(rule_ids[r]);
+        }
+        qc.setTexts(texts, comments, source);
+        return qc.craftQuest();
+    }
+
+    /**
+     * Reads a count byte and as many flag bytes.
+     *
+     * @param in the catalog, positioned at the count byte.
+     * @return the flags.
+     */
+    private static int[] readFlags(ByteBuffer in) {
+        int[] flags = new int[in.get() & 0xFF];
+        for (int i = 0; i < flags.length; i++) flags[i] = in.get() & 0xFF;
+        return flags;
+    }
+
+    /**
+     * Reads the rule and shard table of a language section and stores the
+     * rules into the map.
+     *
+     * @param rules map to store the rules.
+     * @param in a buffer containing only the section.
+     * @return the shards of the section.
+     * @throws IOException if a table is not complete or a shard lies outside
+     * of the section.
+     * @throws BufferUnderflowException if the section ends too early.
+     * @see ByteBuffer
+     * @see QuestCatalogShards
+     * @see RuleMap
+     */
+    private static QuestCatalogShards readSection(RuleMap rules, ByteBuffer in)
+            throws IOException {
+        DedupPool pool = new DedupPool();
+        String[] rule_ids = new String[getUnsignedShort(in)];
+        List<List<String>> rule_texts = new ArrayList<>(rule_ids.length);
+        for (int i = 0; i < rule_ids.length; i++) {
+            rule_ids[i] = readString(in);
+            rule_texts.add(skipStrings(in, 1, pool));
+        }
+
+        int shard_count = in.get() & 0xFF;
+        int[] levels = new int[shard_count];
+        int[] quest_counts = new int[shard_count];
+        int[] offsets = new int[shard_count];
+        int[] lengths = new int[shard_count];
+        for (int i = 0; i < shard_count; i++) {
+            levels[i] = in.get() & 0xFF;
+            quest_counts[i] = in.getInt();
+            offsets[i] = in.getInt();
+            lengths[i] = in.getInt();
+            if (quest_counts[i] < 0 || offsets[i] < 0 || lengths[i] < 0
+                    || offsets[i] > in.limit() - lengths[i])
+                throw new IOException("Incomplete shard.");
+        }
+
+        for (int i = 0; i < rule_ids.length; i++) rules.addRule(rule_ids[i], rule_texts.get(i));
+        return new QuestCatalogShards(
+                in, pool, rule_ids, levels, quest_counts, offsets, lengths);
+    }
+
+    /**
+     * Reads a string written by QuestCatalogWriter.writeString().
+     *
+     * @param in the catalog, positioned at the length of the string.
+     * @return the string, or null if null was written.
+     * @throws IOException if the string is not complete.
+     */
+    static String readString(ByteBuffer in) throws IOException {
+        int length = getUnsignedShort(in);
+        if (length == NULL_STRING) return null;
+        if (length > in.remaining()) throw new IOException("Incomplete string.");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, STRING_CHARSET);
+    }
+
+    /**
+     * Skips strings without decoding them and returns a view on them. If the
+     * pool contains a view on the same bytes, that view is returned instead.
+     *
+     * @param in the catalog, positioned at the length of the first string.
+     * @param count the number of strings to skip.
+     * @param pool the pool sharing equal views.
+     * @return a view decoding the skipped strings on access, or null if count
+     * is 0.
+     * @throws IOException if a string is not complete.
+     * @see CatalogStringList
+     * @see DedupPool
+     */
+    private static List<String> skipStrings(ByteBuffer in, int count, DedupPool pool)
+            throws IOException {
+        if (count == 0) return null;
+        int offset = in.position();
+        for (int i = 0; i < count; i++) {
+            int length = getUnsignedShort(in);
+            if (length == NULL_STRING) continue;
+            if (length > in.remaining()) throw new IOException("Incomplete string.");
+            in.position(in.position() + length);
+        }
+        ByteBuffer bytes = in.duplicate();
+        bytes.limit(in.position()).position(offset);
+        return pool.canonicalize(
+                bytes.slice(), new CatalogStringList(in, offset, count), VIEW_SIZE);
+    }
+}
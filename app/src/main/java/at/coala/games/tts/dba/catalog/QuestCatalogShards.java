@@ -0,0 +1,154 @@
+package at.coala.games.tts.dba.catalog;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import at.coala.games.tts.data.quest.DedupPool;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCreator;
+
+/**
+ * Reads the level shards of one language section of a quest catalog. Shards
+ * are read in ascending level order and every shard only once, so a loader
+ * can read the shards of low levels on start-up and the others when the game
+ * gets close to their level. Every shard is read completely or not at all.
+ *
+ * A QuestCatalogShards is returned by QuestCatalogAccess.getShards(). It is
+ * not meant to be read by multiple threads at the same time, but the reading
+ * thread may change between calls.
+ *
+ * @author Klaus
+ * @see QuestCatalogAccess
+ */
+public class QuestCatalogShards {
+
+    /**
+     * The estimated number of heap bytes saved by now.
+     */
+    private long bytes_saved;
+
+    /**
+     * The length of each shard in bytes.
+     */
+    private final int[] lengths;
+
+    /**
+     * The level of each shard.
+     */
+    private final int[] levels;
+
+    /**
+     * The index of the first shard not read yet.
+     */
+    private int next = 0;
+
+    /**
+     * The offset of each shard within the section.
+     */
+    private final int[] offsets;
+
+    /**
+     * The pool sharing equal views and configurations between all shards.
+     *
+     * @see DedupPool
+     */
+    private final DedupPool pool;
+
+    /**
+     * The creator reused for every quest.
+     *
+     * @see QuestCreator
+     */
+    private final QuestCreator qc;
+
+    /**
+     * The number of quests of each shard.
+     */
+    private final int[] quest_counts;
+
+    /**
+     * The rule table of the section.
+     */
+    private final String[] rule_ids;
+
+    /**
+     * The buffer containing only the section.
+     *
+     * @see ByteBuffer
+     */
+    private final ByteBuffer section;
+
+    /**
+     * Creates a new QuestCatalogShards.
+     *
+     * @param section the buffer containing only the section.
+     * @param pool the pool sharing equal views and configurations.
+     * @param rule_ids the rule table of the section.
+     * @param levels the level of each shard, in ascending order.
+     * @param quest_counts the number of quests of each shard.
+     * @param offsets the offset of each shard within the section.
+     * @param lengths the length of each shard in bytes.
+     * @see ByteBuffer
+     * @see DedupPool
+     */
+    QuestCatalogShards(ByteBuffer section, DedupPool pool, String[] rule_ids,
+                       int[] levels, int[] quest_counts, int[] offsets, int[] lengths) {
+        this.section = section;
+        this.pool = pool;
+        this.rule_ids = rule_ids;
+        this.levels = levels;
+        this.quest_counts = quest_counts;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        qc = new QuestCreator(pool);
+    }
+
+    /**
+     * Returns the estimated number of heap bytes saved by sharing equal views
+     * and configurations in the shards read by now.
+     *
+     * @return the saved bytes.
+     */
+    public synchronized long getBytesSaved() { return bytes_saved; }
+
+    /**
+     * Returns the level of the next shard not read yet.
+     *
+     * @return the level, or Integer.MAX_VALUE if all shards were read.
+     */
+    public synchronized int getNextLevel() {
+        return (next < levels.length) ? levels[next] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads all shards not read yet up to a level. A shard that can not be
+     * read completely is skipped and not tried again.
+     *
+     * @param max_level the highest level of the shards to read.
+     * @return the quests of the read shards in catalog order, or an empty
+     * list if no shard is due.
+     * @throws IOException if a shard is not complete, the quests of the
+     * shards read before it are lost then.
+     * @see Quest
+     */
+    public synchronized List<Quest> readShards(int max_level) throws IOException {
+        List<Quest> read = new ArrayList<>();
+        while (next < levels.length && levels[next] <= max_level) {
+            int shard = next++;
+            ByteBuffer in = section.duplicate();
+            in.limit(offsets[shard] + lengths[shard]).position(offsets[shard]);
+            try {
+                for (int i = 0; i < quest_counts[shard]; i++)
+                    read.add(QuestCatalogAccess.readQuest(in, qc, pool, rule_ids));
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Incomplete shard.");
+            } finally {
+                bytes_saved = pool.getBytesSaved();
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,258 @@
+package at.coala.games.tts.dba.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestConfiguration;
+import at.coala.games.tts.data.quest.RuleMap;
+
+/**
+ * Writes quests and rules into a binary quest catalog that can be read with
+ * QuestCatalogAccess. Every language is added as its own section with
+ * addLanguage(), write() puts the language index in front of the sections.
+ * For a description of the format read the description of QuestCatalogAccess.
+ *
+ * @author Klaus
+ * @see QuestCatalogAccess
+ */
+public class QuestCatalogWriter {
+
+    /**
+     * A constant containing the maximum number of bytes a string can take.
+     */
+    private static final int MAX_STRING_LENGTH = QuestCatalogAccess.NULL_STRING - 1;
+
+    /**
+     * A map containing the serialized section of every added language in the
+     * order they were added.
+     *
+     * @see Map
+     */
+    private final Map<String, byte[]> sections = new LinkedHashMap<>();
+
+    /**
+     * Adds the section of a language with all rules and the quests split into
+     * level shards, keeping the given order within each shard. Rule ids
+     * applied to a quest but missing in the map are written with a null
+     * text, so the quest shows the same rules as before.
+     *
+     * @param lang_code the xsd:language code of all texts.
+     * @param quests the quests to write.
+     * @param rules the rules to write.
+     * @throws IOException if some data does not fit into the format or the
+     * language was added before.
+     * @see List
+     * @see Quest
+     * @see RuleMap
+     */
+    public void addLanguage(String lang_code, List<Quest> quests, RuleMap rules)
+            throws IOException {
+        if (sections.containsKey(lang_code)) throw new IOException("Language added twice.");
+        if (sections.size() == 0xFF) throw new IOException("Too many languages.");
+        List<String> rule_ids = new ArrayList<>(rules.getRuleIds());
+        Collections.sort(rule_ids);
+        for (Quest q : quests) {
+            if (q.rule_ids == null) continue;
+            for (String id : q.rule_ids) {
+                if (!rule_ids.contains(id)) rule_ids.add(id);
+            }
+        }
+        if (rule_ids.size() > 0xFFFF) throw new IOException("Too many rules.");
+        Map<String, Integer> rule_index = new HashMap<>();
+        for (int i = 0; i < rule_ids.size(); i++) rule_index.put(rule_ids.get(i), i);
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(section);
+        out.writeShort(rule_ids.size());
+        for (String id : rule_ids) {
+            writeString(out, id);
+            writeString(out, rules.getRule(id));
+        }
+        Map<Integer, List<Quest>> shards = new TreeMap<>();
+        for (Quest q : quests) {
+            int level = getShardLevel(q);
+            List<Quest> shard = shards.get(level);
+            if (shard == null) {
+                shard = new ArrayList<>();
+                shards.put(level, shard);
+            }
+            shard.add(q);
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream records_out = new DataOutputStream(records);
+        out.writeByte(shards.size());
+        int offset = out.size() + shards.size() * (1 + 4 + 4 + 4);
+        for (Map.Entry<Integer, List<Quest>> shard : shards.entrySet()) {
+            int start = records_out.size();
+            for (Quest q : shard.getValue()) writeQuest(records_out, q, rule_index);
+            out.writeByte(shard.getKey());
+            out.writeInt(shard.getValue().size());
+            out.writeInt(offset + start);
+            out.writeInt(records_out.size() - start);
+        }
+        records_out.flush();
+        records.writeTo(out);
+        out.flush();
+        sections.put(lang_code, section.toByteArray());
+    }
+
+    /**
+     * Returns the level of the shard a quest belongs to: the lowest level
+     * other than 0 of all its configurations, below that level the quest can
+     * never be linked. A quest with only level 0 configurations belongs to
+     * the shard of level 0.
+     *
+     * @param quest the quest.
+     * @return the shard level.
+     * @see Quest
+     */
+    private static int getShardLevel(Quest quest) {
+        int level = Integer.MAX_VALUE;
+        for (int location : new int[] { Game.LOCATION_PRIVATE, Game.LOCATION_PUBLIC }) {
+            List<QuestConfiguration> conf = quest.getConfigurations(location);
+            if (conf == null) continue;
+            for (QuestConfiguration c : conf) {
+                if (c.level != 0 && c.level < level) level = c.level;
+            }
+        }
+        return (level == Integer.MAX_VALUE) ? 0 : level;
+    }
+
+    /**
+     * Writes the catalog with the language index and all added sections.
+     *
+     * @param catalogStream the stream to write the catalog into, it will be
+     *                      flushed but not closed.
+     * @throws IOException if the catalog could not be written.
+     * @see OutputStream
+     */
+    public void write(OutputStream catalogStream) throws IOException {
+        int offset = 4 + 2 + 1;
+        for (String lang_code : sections.keySet()) {
+            offset += 2 + lang_code.getBytes(QuestCatalogAccess.STRING_CHARSET).length + 4 + 4;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(catalogStream));
+        out.writeInt(QuestCatalogAccess.MAGIC);
+        out.writeShort(QuestCatalogAccess.VERSION);
+        out.writeByte(sections.size());
+        for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+            writeString(out, section.getKey());
+            out.writeInt(offset);
+            out.writeInt(section.getValue().length);
+            offset += section.getValue().length;
+        }
+        //noinspection Convert2streamapi
+        for (byte[] section : sections.values()) out.write(section);
+        out.flush();
+    }
+
+    /**
+     * Writes a count byte and the configurations of one location.
+     *
+     * @param out the catalog.
+     * @param conf the configurations, or null if none exist.
+     * @throws IOException if the catalog could not be written.
+     * @see QuestConfiguration
+     */
+    private static void writeConfigurations(DataOutput out, List<QuestConfiguration> conf)
+            throws IOException {
+        writeCount(out, conf);
+        if (conf == null) return;
+        for (QuestConfiguration c : conf) {
+            out.writeByte(c.level);
+            out.writeByte(c.player);
+            out.writeByte(c.partner);
+            out.writeByte(c.friendship_level);
+            out.writeByte(c.skip);
+            out.writeByte(c.allow_delete);
+        }
+    }
+
+    /**
+     * Writes the size of a list as count byte.
+     *
+     * @param out the catalog.
+     * @param list the list, or null for a count of 0.
+     * @throws IOException if the catalog could not be written or the list is
+     * too long.
+     */
+    private static void writeCount(DataOutput out, List<?> list) throws IOException {
+        int count = (list == null) ? 0 : list.size();
+        if (count > 0xFF) throw new IOException("Too many elements in quest.");
+        out.writeByte(count);
+    }
+
+    /**
+     * Writes a quest record.
+     *
+     * @param out the catalog.
+     * @param quest the quest to write.
+     * @param rule_index a map containing the rule table index for each id.
+     * @throws IOException if the catalog could not be written.
+     * @see Quest
+     */
+    private static void writeQuest(DataOutput out, Quest quest, Map<String, Integer> rule_index)
+            throws IOException {
+        writeCount(out, quest.categories);
+        for (int c : quest.categories) out.writeByte(c);
+        writeCount(out, quest.requirements);
+        if (quest.requirements != null) {
+            for (int r : quest.requirements) out.writeByte(r);
+        }
+        writeCount(out, quest.rule_ids);
+        if (quest.rule_ids != null) {
+            for (String id : quest.rule_ids) out.writeShort(rule_index.get(id));
+        }
+        writeStrings(out, quest.quest_texts);
+        writeStrings(out, quest.comments);
+        writeString(out, quest.getSource());
+        writeConfigurations(out, quest.getConfigurations(Game.LOCATION_PRIVATE));
+        writeConfigurations(out, quest.getConfigurations(Game.LOCATION_PUBLIC));
+        out.writeByte(quest.weight);
+    }
+
+    /**
+     * Writes a string that can be read by QuestCatalogAccess.readString().
+     *
+     * @param out the catalog.
+     * @param string the string, or null.
+     * @throws IOException if the catalog could not be written or the string
+     * is too long.
+     */
+    static void writeString(DataOutput out, String string) throws IOException {
+        if (string == null) {
+            out.writeShort(QuestCatalogAccess.NULL_STRING);
+            return;
+        }
+        byte[] bytes = string.getBytes(QuestCatalogAccess.STRING_CHARSET);
+        if (bytes.length > MAX_STRING_LENGTH) throw new IOException("String too long.");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a count byte and the strings.
+     *
+     * @param out the catalog.
+     * @param strings the strings, or null for a count of 0.
+     * @throws IOException if the catalog could not be written.
+     */
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        writeCount(out, strings);
+        if (strings == null) return;
+        for (String s : strings) writeString(out, s);
+    }
+}
@@ -0,0 +1,117 @@
+package at.coala.games.tts.dba.catalog;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import at.coala.games.tts.data.quest.DedupPool;
+
+/**
+ * Stores strings parsed out of XML as UTF-8 in shared byte arrays instead of
+ * one String object each. Strings are written in the same way as in a quest
+ * catalog, so every added list is returned as CatalogStringList decoding its
+ * strings only when they are shown. The arrays are blocks of BLOCK_SIZE bytes
+ * that are never copied or grown, a list larger than a block gets a block on
+ * its own.
+ *
+ * An arena is not thread-safe, parsers running in parallel should use one
+ * arena each.
+ *
+ * @author Klaus
+ * @see CatalogStringList
+ */
+public class TextArena {
+
+    /**
+     * A constant containing the size of a block.
+     */
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * A constant containing the estimated heap size of a CatalogStringList.
+     */
+    private static final int VIEW_SIZE = 8 + 4 + 2 * 4;
+
+    /**
+     * The current block, or null if no block was allocated yet.
+     *
+     * @see ByteBuffer
+     */
+    private ByteBuffer block;
+
+    /**
+     * The pool sharing views on equal bytes.
+     *
+     * @see DedupPool
+     */
+    private final DedupPool pool;
+
+    /**
+     * Create a new TextArena.
+     *
+     * @param pool the pool sharing views on equal bytes, so repeated strings
+     *             are stored only once.
+     * @see DedupPool
+     */
+    public TextArena(DedupPool pool) { this.pool = pool; }
+
+    /**
+     * Encodes strings into the arena and returns a view on them. If the pool
+     * contains a view on the same bytes, that view is returned and the bytes
+     * are not kept.
+     *
+     * @param strings the strings to add, single strings may be null.
+     * @return a view decoding the strings on access, or null if strings is
+     * null or empty.
+     * @throws IllegalArgumentException if a string is too long to be stored.
+     * @see List
+     */
+    public List<String> add(List<String> strings) throws IllegalArgumentException {
+        if (strings == null || strings.isEmpty()) return null;
+        byte[][] encoded = new byte[strings.size()][];
+        int length = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encode(strings.get(i));
+            length += 2 + ((encoded[i] == null) ? 0 : encoded[i].length);
+        }
+        if (block == null || block.remaining() < length)
+            block = ByteBuffer.allocate(Math.max(BLOCK_SIZE, length));
+
+        int offset = block.position();
+        for (byte[] bytes : encoded) {
+            if (bytes == null) {
+                block.putShort((short) QuestCatalogAccess.NULL_STRING);
+            } else {
+                block.putShort((short) bytes.length);
+                block.put(bytes);
+            }
+        }
+        ByteBuffer key = block.duplicate();
+        key.limit(block.position()).position(offset);
+        List<String> view = new CatalogStringList(block, offset, encoded.length);
+        List<String> pooled = pool.canonicalize(key.slice(), view, VIEW_SIZE + length);
+        if (pooled != view) block.position(offset);
+        return pooled;
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param string the string, or null.
+     * @return the bytes, or null if string is null.
+     * @throws IllegalArgumentException if the string is too long to be
+     * stored.
+     */
+    private static byte[] encode(String string) throws IllegalArgumentException {
+        if (string == null) return null;
+        try {
+            byte[] bytes = string.getBytes(QuestCatalogAccess.STRING_CHARSET);
+            if (bytes.length >= QuestCatalogAccess.NULL_STRING)
+                throw new IllegalArgumentException("String too long.");
+            return bytes;
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported on every platform.
+            throw new IllegalStateException(e);
+        }
+    }
+}
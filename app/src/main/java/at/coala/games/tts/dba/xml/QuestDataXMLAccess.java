@@ -8,10 +8,14 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 
+import at.coala.games.tts.data.quest.DedupPool;
+import at.coala.games.tts.data.quest.Quest;
 import at.coala.games.tts.data.quest.QuestCollection;
 import at.coala.games.tts.data.quest.RuleMap;
 
@@ -97,6 +101,11 @@ public class QuestDataXMLAccess {
      */
     public static final String ATTRIBUTE_SKIP = "skip";
 
+    /**
+     * A constant containing the name of the XML quest's weight attribute.
+     */
+    public static final String ATTRIBUTE_WEIGHT = "weight";
+
     /**
      * A constant containing the name of the XML apply_rule element.
      */
@@ -168,6 +177,21 @@ public class QuestDataXMLAccess {
      */
     public static final String ELEMENT_SOURCE = "source";
 
+    /**
+     * The estimated number of heap bytes saved by the DedupPool of the last
+     * parsed file.
+     */
+    private long bytes_saved;
+
+    /**
+     * Returns the estimated number of heap bytes saved by sharing repeated
+     * strings and configurations while the last file was parsed.
+     *
+     * @return the saved bytes, or 0 if nothing was parsed yet.
+     * @see DedupPool
+     */
+    public long getBytesSaved() { return bytes_saved; }
+
     /**
      * Reads a XML file and stores the quests and rules into the data-sets.
      *
@@ -183,9 +207,35 @@ public class QuestDataXMLAccess {
     public void getQuests(
             QuestCollection quests, RuleMap rules, String lang_code, InputStream fileStream)
             throws IOException {
+        List<Quest> read = new ArrayList<>();
+        try {
+            getQuests(read, rules, lang_code, fileStream);
+        } finally {
+            //noinspection Convert2streamapi
+            for (Quest q : read) quests.addQuest(q);
+        }
+    }
+
+    /**
+     * Reads a XML file and stores the quests into a list in document order
+     * and the rules into a map.
+     *
+     * @param quests list needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code.
+     * @param fileStream a file stream with the XML to parse.
+     * @throws IOException
+     * @see InputStream
+     * @see List
+     * @see RuleMap
+     */
+    public void getQuests(
+            List<Quest> quests, RuleMap rules, String lang_code, InputStream fileStream)
+            throws IOException {
+        DedupPool pool = new DedupPool();
         try {
             XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-            xr.setContentHandler(new QuestDataXMLHandler(quests, rules, lang_code));
+            xr.setContentHandler(new QuestDataXMLHandler(quests, rules, lang_code, pool));
             xr.parse(new InputSource(fileStream));
         } catch (SAXException e) {
             // It is ok to ignore this exception. This app will not collapse
@@ -193,6 +243,8 @@ public class QuestDataXMLAccess {
         } catch (ParserConfigurationException e) {
             // It is ok to ignore this exception. This app will not collapse
             // without parsing this file.
+        } finally {
+            bytes_saved = pool.getBytesSaved();
         }
     }
 
@@ -211,12 +263,40 @@ public class QuestDataXMLAccess {
     public void getQuests(
             QuestCollection quests, RuleMap rules, String lang_code, XmlPullParser parser)
             throws IOException {
-        TwoWayHandler qdxHandler = new QuestDataXMLHandler(quests, rules, lang_code);
+        List<Quest> read = new ArrayList<>();
+        try {
+            getQuests(read, rules, lang_code, parser);
+        } finally {
+            //noinspection Convert2streamapi
+            for (Quest q : read) quests.addQuest(q);
+        }
+    }
+
+    /**
+     * Reads a XML file and stores the quests into a list in document order
+     * and the rules into a map.
+     *
+     * @param quests list needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code.
+     * @param parser a pull-parser with the XML to parse.
+     * @throws IOException
+     * @see List
+     * @see RuleMap
+     * @see XmlPullParser
+     */
+    public void getQuests(
+            List<Quest> quests, RuleMap rules, String lang_code, XmlPullParser parser)
+            throws IOException {
+        DedupPool pool = new DedupPool();
+        TwoWayHandler qdxHandler = new QuestDataXMLHandler(quests, rules, lang_code, pool);
         try {
             qdxHandler.read(parser);
         } catch (XmlPullParserException e) {
             // It is ok to ignore this exception. This app will not collapse
             // without parsing this file.
+        } finally {
+            bytes_saved = pool.getBytesSaved();
         }
     }
 }
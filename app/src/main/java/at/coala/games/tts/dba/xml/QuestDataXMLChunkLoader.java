@@ -0,0 +1,582 @@
+package at.coala.games.tts.dba.xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import at.coala.games.tts.data.quest.DedupPool;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.quest.RuleMap;
+
+/**
+ * Parses large XML quest files on a ForkJoinPool. The file is split at quest
+ * element boundaries into chunks of whole quests, every chunk is parsed on its
+ * own by a QuestDataXMLHandler and the results are merged into the data-sets
+ * in document order, so the quests are stored exactly as a single-threaded
+ * parse would store them. Everything outside of the quest elements, like the
+ * rules, is parsed as one more chunk.
+ *
+ * A chunk that can not be parsed does not abort the load. Its failure is
+ * reported with the line number in the original file, the quests of all other
+ * chunks are stored anyway. As with QuestDataXMLAccess, the quests of a broken
+ * chunk read before the error are kept.
+ *
+ * @author Klaus
+ * @see QuestDataXMLAccess
+ * @see QuestDataXMLHandler
+ */
+public class QuestDataXMLChunkLoader {
+
+    /**
+     * Describes a chunk that could not be parsed.
+     */
+    public static class ChunkFailure {
+
+        /**
+         * The document index of the first quest in the chunk, or -1 for the
+         * chunk containing everything outside of the quest elements.
+         */
+        public final int first_quest;
+
+        /**
+         * The line in the original file the error was found in, or -1 if
+         * unknown.
+         */
+        public final int line;
+
+        /**
+         * A description of the error.
+         */
+        public final String message;
+
+        /**
+         * Create a new ChunkFailure.
+         *
+         * @param first_quest the document index of the first quest in the
+         *                    chunk, or -1.
+         * @param line the line in the original file, or -1.
+         * @param message a description of the error.
+         */
+        ChunkFailure(int first_quest, int line, String message) {
+            this.first_quest = first_quest;
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Returns a description of the failure in one line.
+         *
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            return ((first_quest < 0) ? "Document" : "Chunk at quest " + first_quest)
+                    + ((line < 0) ? "" : ", line " + line) + ": " + message;
+        }
+    }
+
+    /**
+     * Reads a part of a string surrounded by two other strings without
+     * copying it.
+     *
+     * @see Reader
+     */
+    private static class ChunkReader extends Reader {
+
+        /**
+         * The index after the last character of the part.
+         */
+        private final int end;
+
+        /**
+         * The string read before the part.
+         */
+        private final String prefix;
+
+        /**
+         * The position in prefix, the part and suffix, counted from the start
+         * of prefix.
+         */
+        private int position;
+
+        /**
+         * The index of the first character of the part.
+         */
+        private final int start;
+
+        /**
+         * The string read after the part.
+         */
+        private final String suffix;
+
+        /**
+         * The string containing the part.
+         */
+        private final String xml;
+
+        /**
+         * Create a new ChunkReader.
+         *
+         * @param prefix the string read before the part.
+         * @param xml the string containing the part.
+         * @param start the index of the first character of the part.
+         * @param end the index after the last character of the part.
+         * @param suffix the string read after the part.
+         */
+        ChunkReader(String prefix, String xml, int start, int end, String suffix) {
+            this.prefix = prefix;
+            this.xml = xml;
+            this.start = start;
+            this.end = end;
+            this.suffix = suffix;
+        }
+
+        /**
+         * Nothing to close.
+         */
+        @Override
+        public void close() {}
+
+        /**
+         * Reads characters into a part of an array.
+         *
+         * @param buffer the destination buffer.
+         * @param offset the offset at which to start storing characters.
+         * @param length the maximum number of characters to read.
+         * @return the number of characters read, or -1 at the end.
+         */
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int part = end - start;
+            int read = 0;
+            if (position < prefix.length() && read < length) {
+                int n = Math.min(length - read, prefix.length() - position);
+                prefix.getChars(position, position + n, buffer, offset + read);
+                position += n;
+                read += n;
+            }
+            int p = position - prefix.length();
+            if (p >= 0 && p < part && read < length) {
+                int n = Math.min(length - read, part - p);
+                xml.getChars(start + p, start + p + n, buffer, offset + read);
+                position += n;
+                read += n;
+            }
+            p = position - prefix.length() - part;
+            if (p >= 0 && p < suffix.length() && read < length) {
+                int n = Math.min(length - read, suffix.length() - p);
+                suffix.getChars(p, p + n, buffer, offset + read);
+                position += n;
+                read += n;
+            }
+            return (read == 0 && length > 0) ? -1 : read;
+        }
+    }
+
+    /**
+     * Parses one chunk into local data-sets.
+     *
+     * @see RecursiveAction
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        /**
+         * The version of this serializable class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The index after the last character of the chunk.
+         */
+        private final int end;
+
+        /**
+         * The failure of this chunk, or null if it was parsed completely.
+         *
+         * @see ChunkFailure
+         */
+        private ChunkFailure failure;
+
+        /**
+         * The factory creating the pull-parser.
+         *
+         * @see XmlPullParserFactory
+         */
+        private final XmlPullParserFactory factory;
+
+        /**
+         * The line of the original file this chunk starts in.
+         */
+        private final int first_line;
+
+        /**
+         * The document index of the first quest in this chunk, or -1 if the
+         * chunk is a complete document.
+         */
+        private final int first_quest;
+
+        /**
+         * A xsd:language code.
+         */
+        private final String lang_code;
+
+        /**
+         * The pool shared by all chunks of the file.
+         *
+         * @see DedupPool
+         */
+        private final DedupPool pool;
+
+        /**
+         * The quests of this chunk in document order.
+         *
+         * @see List
+         */
+        private final List<Quest> quests = new ArrayList<>();
+
+        /**
+         * The rules of this chunk.
+         *
+         * @see RuleMap
+         */
+        private final RuleMap rules = new RuleMap();
+
+        /**
+         * The index of the first character of the chunk.
+         */
+        private final int start;
+
+        /**
+         * The string containing the chunk.
+         */
+        private final String xml;
+
+        /**
+         * Create a new ChunkTask. Unless it is a complete document, the chunk
+         * is wrapped into a CHUNK_ELEMENT while parsing.
+         *
+         * @param xml the string containing the chunk.
+         * @param start the index of the first character of the chunk.
+         * @param end the index after the last character of the chunk.
+         * @param first_quest the document index of the first quest, or -1 if
+         *                    the chunk is a complete document.
+         * @param first_line the line of the original file the chunk starts in.
+         * @param factory the factory creating the pull-parser.
+         * @param lang_code a xsd:language code.
+         * @param pool the pool shared by all chunks of the file.
+         * @see DedupPool
+         */
+        ChunkTask(String xml, int start, int end, int first_quest, int first_line,
+                  XmlPullParserFactory factory, String lang_code, DedupPool pool) {
+            this.xml = xml;
+            this.start = start;
+            this.end = end;
+            this.first_quest = first_quest;
+            this.first_line = first_line;
+            this.factory = factory;
+            this.lang_code = lang_code;
+            this.pool = pool;
+        }
+
+        /**
+         * Parses the chunk.
+         */
+        @Override
+        protected void compute() {
+            try {
+                XmlPullParser parser = factory.newPullParser();
+                parser.setInput((first_quest < 0)
+                        ? new ChunkReader("", xml, start, end, "")
+                        : new ChunkReader("<" + CHUNK_ELEMENT + ">", xml, start, end,
+                        "</" + CHUNK_ELEMENT + ">"));
+                new QuestDataXMLHandler(quests, rules, lang_code, pool).read(parser);
+            } catch (XmlPullParserException e) {
+                int line = e.getLineNumber();
+                failure = new ChunkFailure(first_quest,
+                        (line < 0) ? -1 : first_line + line - 1, e.getMessage());
+            } catch (IOException e) {
+                failure = new ChunkFailure(first_quest, -1, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A constant containing the name of the element wrapping every chunk.
+     */
+    private static final String CHUNK_ELEMENT = "chunk";
+
+    /**
+     * A constant containing the number of chunks per thread of the pool, so
+     * threads finishing early can take over work.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * A constant containing the minimum number of quests per chunk, below
+     * that parsing a chunk costs less than scheduling it.
+     */
+    private static final int MIN_QUESTS_PER_CHUNK = 64;
+
+    /**
+     * The pool shared by all loaders created without own pool, or null if not
+     * created yet.
+     *
+     * @see ForkJoinPool
+     */
+    private static ForkJoinPool default_pool;
+
+    /**
+     * The estimated number of heap bytes saved by the DedupPool of the last
+     * parsed file.
+     */
+    private long bytes_saved;
+
+    /**
+     * The pool parsing the chunks.
+     *
+     * @see ForkJoinPool
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a new QuestDataXMLChunkLoader using a pool with one thread per
+     * available processor.
+     */
+    public QuestDataXMLChunkLoader() { this(getDefaultPool()); }
+
+    /**
+     * Create a new QuestDataXMLChunkLoader.
+     *
+     * @param pool the pool parsing the chunks.
+     * @see ForkJoinPool
+     */
+    public QuestDataXMLChunkLoader(ForkJoinPool pool) { this.pool = pool; }
+
+    /**
+     * Counts the line breaks in a part of a string.
+     *
+     * @param s the string.
+     * @param start the first index.
+     * @param end the index after the last one.
+     * @return the number of '\n' characters.
+     */
+    private static int countLines(String s, int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++) if (s.charAt(i) == '\n') lines++;
+        return lines;
+    }
+
+    /**
+     * Returns the index after the end of a markup construct, or the length of
+     * the string if it does not end.
+     *
+     * @param s the string.
+     * @param start the index to search from.
+     * @param end the string ending the construct.
+     * @return the index after the construct.
+     */
+    private static int findEnd(String s, int start, String end) {
+        int i = s.indexOf(end, start);
+        return (i < 0) ? s.length() : i + end.length();
+    }
+
+    /**
+     * Finds the start and end index of every quest element in a XML document.
+     * Comments, CDATA sections and processing instructions are skipped. An
+     * unclosed quest reaches until the end of the document.
+     *
+     * @param xml the XML document.
+     * @param starts a list to add the index of every quest start-tag to.
+     * @param ends a list to add the index after every quest end-tag to.
+     */
+    private static void findQuests(String xml, List<Integer> starts, List<Integer> ends) {
+        String start_tag = "<" + QuestDataXMLAccess.ELEMENT_QUEST;
+        String end_tag = "</" + QuestDataXMLAccess.ELEMENT_QUEST;
+        boolean in_quest = false;
+        int i = xml.indexOf('<');
+        while (i >= 0) {
+            if (xml.startsWith("<!--", i)) {
+                i = findEnd(xml, i, "-->");
+            } else if (xml.startsWith("<![CDATA[", i)) {
+                i = findEnd(xml, i, "]]>");
+            } else if (xml.startsWith("<?", i)) {
+                i = findEnd(xml, i, "?>");
+            } else if (!in_quest && isTag(xml, i, start_tag)) {
+                starts.add(i);
+                i = findEnd(xml, i, ">");
+                if (xml.charAt(i - 2) == '/') ends.add(i);
+                else in_quest = true;
+            } else if (in_quest && isTag(xml, i, end_tag)) {
+                i = findEnd(xml, i, ">");
+                ends.add(i);
+                in_quest = false;
+            } else {
+                i++;
+            }
+            i = xml.indexOf('<', i);
+        }
+        if (in_quest) ends.add(xml.length());
+    }
+
+    /**
+     * Returns the estimated number of heap bytes saved by sharing repeated
+     * strings and configurations between all chunks of the last file.
+     *
+     * @return the saved bytes, or 0 if nothing was parsed yet.
+     * @see DedupPool
+     */
+    public long getBytesSaved() { return bytes_saved; }
+
+    /**
+     * Returns the pool shared by all loaders created without own pool.
+     *
+     * @return the pool.
+     * @see ForkJoinPool
+     */
+    private static synchronized ForkJoinPool getDefaultPool() {
+        if (default_pool == null) default_pool = new ForkJoinPool();
+        return default_pool;
+    }
+
+    /**
+     * Reads a XML file in parallel chunks and stores the quests and rules into
+     * the data-sets in document order. The data-sets are only accessed by the
+     * calling thread.
+     *
+     * @param quests collection needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code.
+     * @param fileStream a file stream with the UTF-8 encoded XML to parse.
+     * @return the failures of all chunks that could not be parsed completely,
+     * in document order. The list is empty if the whole file was parsed.
+     * @throws IOException if the stream could not be read.
+     * @see ChunkFailure
+     * @see InputStream
+     * @see QuestCollection
+     * @see RuleMap
+     */
+    public List<ChunkFailure> getQuests(
+            QuestCollection quests, RuleMap rules, String lang_code, InputStream fileStream)
+            throws IOException {
+        List<Quest> read = new ArrayList<>();
+        List<ChunkFailure> failures = getQuests(read, rules, lang_code, fileStream);
+        //noinspection Convert2streamapi
+        for (Quest q : read) quests.addQuest(q);
+        return failures;
+    }
+
+    /**
+     * Reads a XML file in parallel chunks and stores the quests into a list
+     * and the rules into a map, both in document order. The list and the
+     * map are only accessed by the calling thread.
+     *
+     * @param quests list needed to store quests.
+     * @param rules map to store the rules.
+     * @param lang_code a xsd:language code.
+     * @param fileStream a file stream with the UTF-8 encoded XML to parse.
+     * @return the failures of all chunks that could not be parsed completely,
+     * in document order. The list is empty if the whole file was parsed.
+     * @throws IOException if the stream could not be read.
+     * @see ChunkFailure
+     * @see InputStream
+     * @see List
+     * @see RuleMap
+     */
+    public List<ChunkFailure> getQuests(
+            List<Quest> quests, RuleMap rules, String lang_code, InputStream fileStream)
+            throws IOException {
+        String xml = readString(fileStream);
+        XmlPullParserFactory factory;
+        try {
+            factory = XmlPullParserFactory.newInstance();
+        } catch (XmlPullParserException e) {
+            return Collections.singletonList(new ChunkFailure(-1, -1, e.getMessage()));
+        }
+
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        findQuests(xml, starts, ends);
+        DedupPool dedup_pool = new DedupPool();
+        int chunk_count = Math.max(1, Math.min(pool.getParallelism() * CHUNKS_PER_THREAD,
+                starts.size() / MIN_QUESTS_PER_CHUNK));
+
+        final List<ChunkTask> tasks = new ArrayList<>(chunk_count + 1);
+        StringBuilder document = new StringBuilder(xml.length() / 8);
+        int document_end = 0;
+        int line = 1;
+        for (int c = 0; c < chunk_count && !starts.isEmpty(); c++) {
+            int first = c * starts.size() / chunk_count;
+            int last = (c + 1) * starts.size() / chunk_count - 1;
+            int start = starts.get(first);
+            int end = ends.get(last);
+            document.append(xml, document_end, start);
+            line += countLines(xml, document_end, start);
+            tasks.add(new ChunkTask(xml, start, end, first, line, factory, lang_code, dedup_pool));
+            int chunk_lines = countLines(xml, start, end);
+            for (int i = 0; i < chunk_lines; i++) document.append('\n');
+            line += chunk_lines;
+            document_end = end;
+        }
+        document.append(xml, document_end, xml.length());
+        String rest = document.toString();
+        tasks.add(0, new ChunkTask(rest, 0, rest.length(), -1, 1, factory, lang_code, dedup_pool));
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() { invokeAll(tasks); }
+        });
+
+        List<ChunkFailure> failures = new ArrayList<>();
+        for (ChunkTask task : tasks) {
+            rules.addRules(task.rules);
+            quests.addAll(task.quests);
+            if (task.failure != null) failures.add(task.failure);
+        }
+        bytes_saved = dedup_pool.getBytesSaved();
+        return failures;
+    }
+
+    /**
+     * Returns whether a tag with the given name starts at an index.
+     *
+     * @param s the string.
+     * @param i the index.
+     * @param tag the start of the tag including '&lt;' or '&lt;/'.
+     * @return true if the tag name is followed by '&gt;', '/' or whitespace.
+     */
+    private static boolean isTag(String s, int i, String tag) {
+        if (!s.startsWith(tag, i)) return false;
+        int next = i + tag.length();
+        if (next == s.length()) return true;
+        char c = s.charAt(next);
+        return c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Reads the whole stream as UTF-8 text.
+     *
+     * @param in the stream.
+     * @return the text.
+     * @throws IOException if the stream could not be read.
+     * @see InputStream
+     */
+    private static String readString(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) text.append(buffer, 0, read);
+        return text.toString();
+    }
+}
@@ -6,11 +6,18 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.Settings;
+import at.coala.games.tts.data.quest.DedupPool;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCreator;
 import at.coala.games.tts.data.quest.RuleMap;
-import at.coala.games.tts.dba.xml.helper.ElementXMLHelper;
-import at.coala.games.tts.dba.xml.helper.QuestElementXMLHelper;
+import at.coala.games.tts.dba.catalog.TextArena;
 
 /**
  * This class implements the TwoWayHandler interface and extends the
@@ -24,6 +31,17 @@ import at.coala.games.tts.dba.xml.helper.QuestElementXMLHelper;
  * practise is to implement both ways to parse XML and combine further
  * functionality like creating data and objects out of the XML.
  *
+ * Both ways feed the same iterative state machine. Every start-tag looks up
+ * the next state in the table TRANSITIONS, every end-tag returns to the state
+ * stored in PARENTS. Elements that are not expected in a state, and languages
+ * other than the wanted one, are skipped by counting their depth. Nothing is
+ * called recursively and one QuestCreator is reused for all quests. It passes
+ * every string and configuration through a DedupPool, so repeated sources,
+ * comments and rule ids share one instance. Quest texts, comments, sources and
+ * rule texts are stored as UTF-8 in a TextArena and decoded when shown. A quest
+ * with an unknown category or requirement, an invalid level or weight, or
+ * without text is dropped and parsing continues with the next quest.
+ *
  * @author Klaus
  * @see org.xml.sax.ContentHandler
  * @see DefaultHandler
@@ -34,21 +52,369 @@ import at.coala.games.tts.dba.xml.helper.QuestElementXMLHelper;
 class QuestDataXMLHandler extends DefaultHandler implements TwoWayHandler {
 
     /**
-     * A Helper that is called for all relevant actions.
+     * Element code of elements without own state.
+     */
+    private static final int ELEMENT_OTHER = 0;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_APPLY_RULE.
+     */
+    private static final int ELEMENT_APPLY_RULE = 1;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_CATEGORY.
+     */
+    private static final int ELEMENT_CATEGORY = 2;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_COMMENT.
+     */
+    private static final int ELEMENT_COMMENT = 3;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_CONFIGURATION.
+     */
+    private static final int ELEMENT_CONFIGURATION = 4;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_LANGUAGE.
+     */
+    private static final int ELEMENT_LANGUAGE = 5;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_PUBLIC_CONFIGURATION.
+     */
+    private static final int ELEMENT_PUBLIC_CONFIGURATION = 6;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_QUEST.
+     */
+    private static final int ELEMENT_QUEST = 7;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_QUEST_TEXT.
+     */
+    private static final int ELEMENT_QUEST_TEXT = 8;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_REQUIREMENT.
+     */
+    private static final int ELEMENT_REQUIREMENT = 9;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_RULE.
+     */
+    private static final int ELEMENT_RULE = 10;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_RULES.
+     */
+    private static final int ELEMENT_RULES = 11;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_RULE_TEXT.
+     */
+    private static final int ELEMENT_RULE_TEXT = 12;
+
+    /**
+     * Element code of QuestDataXMLAccess.ELEMENT_SOURCE.
+     */
+    private static final int ELEMENT_SOURCE = 13;
+
+    /**
+     * The number of element codes.
+     */
+    private static final int ELEMENT_SUM = 14;
+
+    /**
+     * State outside of quests and rules. Unknown elements are passed through.
+     */
+    private static final int STATE_DOCUMENT = 0;
+
+    /**
+     * State inside a quest element.
+     */
+    private static final int STATE_QUEST = 1;
+
+    /**
+     * State inside the language element with the wanted language code.
+     */
+    private static final int STATE_LANGUAGE = 2;
+
+    /**
+     * State inside a quest_text element.
+     */
+    private static final int STATE_QUEST_TEXT = 3;
+
+    /**
+     * State inside a comment element.
+     */
+    private static final int STATE_COMMENT = 4;
+
+    /**
+     * State inside a category, requirement, apply_rule, conf or public_conf
+     * element. They are handled completely by their start-tag.
+     */
+    private static final int STATE_ATTRIBUTES = 5;
+
+    /**
+     * State inside a source element.
+     */
+    private static final int STATE_SOURCE = 6;
+
+    /**
+     * State inside the rules element.
+     */
+    private static final int STATE_RULES = 7;
+
+    /**
+     * State inside a rule element.
+     */
+    private static final int STATE_RULE = 8;
+
+    /**
+     * State inside the rule_text element with the wanted language code.
+     */
+    private static final int STATE_RULE_TEXT = 9;
+
+    /**
+     * State inside an element that is skipped with all nested elements.
+     */
+    private static final int STATE_SKIP = 10;
+
+    /**
+     * The state to return to after an end-tag, indexed by the current state.
+     */
+    private static final int[] PARENTS = {
+            STATE_DOCUMENT,     // STATE_DOCUMENT
+            STATE_DOCUMENT,     // STATE_QUEST
+            STATE_QUEST,        // STATE_LANGUAGE
+            STATE_LANGUAGE,     // STATE_QUEST_TEXT
+            STATE_LANGUAGE,     // STATE_COMMENT
+            STATE_QUEST,        // STATE_ATTRIBUTES
+            STATE_QUEST,        // STATE_SOURCE
+            STATE_DOCUMENT,     // STATE_RULES
+            STATE_RULES,        // STATE_RULE
+            STATE_RULE,         // STATE_RULE_TEXT
+            STATE_SKIP          // STATE_SKIP, handled by skip_depth
+    };
+
+    /**
+     * The state to go to after a start-tag, indexed by the current state and
+     * the element code of the start-tag.
+     */
+    private static final int[][] TRANSITIONS = new int[PARENTS.length][ELEMENT_SUM];
+
+    static {
+        for (int[] row : TRANSITIONS) Arrays.fill(row, STATE_SKIP);
+        Arrays.fill(TRANSITIONS[STATE_DOCUMENT], STATE_DOCUMENT);
+        TRANSITIONS[STATE_DOCUMENT][ELEMENT_QUEST] = STATE_QUEST;
+        TRANSITIONS[STATE_DOCUMENT][ELEMENT_RULES] = STATE_RULES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_LANGUAGE] = STATE_LANGUAGE;
+        TRANSITIONS[STATE_QUEST][ELEMENT_CATEGORY] = STATE_ATTRIBUTES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_REQUIREMENT] = STATE_ATTRIBUTES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_APPLY_RULE] = STATE_ATTRIBUTES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_CONFIGURATION] = STATE_ATTRIBUTES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_PUBLIC_CONFIGURATION] = STATE_ATTRIBUTES;
+        TRANSITIONS[STATE_QUEST][ELEMENT_SOURCE] = STATE_SOURCE;
+        TRANSITIONS[STATE_LANGUAGE][ELEMENT_QUEST_TEXT] = STATE_QUEST_TEXT;
+        TRANSITIONS[STATE_LANGUAGE][ELEMENT_COMMENT] = STATE_COMMENT;
+        TRANSITIONS[STATE_RULES][ELEMENT_RULE] = STATE_RULE;
+        TRANSITIONS[STATE_RULE][ELEMENT_RULE_TEXT] = STATE_RULE_TEXT;
+    }
+
+    /**
+     * The arena storing all texts of this parse.
+     *
+     * @see TextArena
+     */
+    private final TextArena arena;
+
+    /**
+     * SAX attributes of the current start-tag, or null if parsing with a
+     * XmlPullParser.
+     *
+     * @see Attributes
+     */
+    private Attributes attributes;
+
+    /**
+     * A local list of final Quest.CATEGORY_ flags read before the first
+     * configuration of the current quest.
+     *
+     * @see List
+     */
+    private final List<Integer> categories = new ArrayList<>(2);
+
+    /**
+     * A local list of comments of the current quest.
+     *
+     * @see List
+     */
+    private final List<String> comments = new ArrayList<>(1);
+
+    /**
+     * A xsd:language code.
+     */
+    private final String lang_code;
+
+    /**
+     * The pull-parser positioned at the current start-tag, or null if parsing
+     * with SAX.
+     *
+     * @see XmlPullParser
+     */
+    private XmlPullParser parser;
+
+    /**
+     * The pool canonicalizing strings and configurations.
+     *
+     * @see DedupPool
+     */
+    private final DedupPool pool;
+
+    /**
+     * The creator reused for all quests.
+     *
+     * @see QuestCreator
+     */
+    private final QuestCreator qc;
+
+    /**
+     * Flag set true if the current quest can not be crafted and is dropped.
+     */
+    private boolean quest_broken;
+
+    /**
+     * List needed to store quests in document order.
+     *
+     * @see List
+     */
+    private final List<Quest> quests;
+
+    /**
+     * A local list of final Quest.REQUIREMENT_ flags read before the first
+     * configuration of the current quest.
+     *
+     * @see List
+     */
+    private final List<Integer> requirements = new ArrayList<>(1);
+
+    /**
+     * The id of the current rule.
+     */
+    private String rule_id;
+
+    /**
+     * A local list of rule ids read before the first configuration of the
+     * current quest.
+     *
+     * @see List
+     */
+    private final List<String> rule_ids = new ArrayList<>(2);
+
+    /**
+     * Map to store the rules.
+     *
+     * @see RuleMap
+     */
+    private final RuleMap rules;
+
+    /**
+     * The depth of nested elements inside the skipped element.
+     */
+    private int skip_depth;
+
+    /**
+     * The state to return to after the skipped element.
+     */
+    private int skip_parent;
+
+    /**
+     * A local list with the source of the current quest as only element.
+     *
+     * @see List
+     */
+    private final List<String> source = new ArrayList<>(1);
+
+    /**
+     * The current state.
+     */
+    private int state = STATE_DOCUMENT;
+
+    /**
+     * A local list of quest texts of the current quest.
+     *
+     * @see List
+     */
+    private final List<String> text = new ArrayList<>(2);
+
+    /**
+     * Collects the characters of the current text element.
+     *
+     * @see StringBuilder
+     */
+    private final StringBuilder text_buffer = new StringBuilder();
+
+    /**
+     * The weight of the current quest.
      */
-    private ElementXMLHelper xmlHelper;
+    private int weight;
 
     /**
      * Create a new QuestDataXMLHandler.
      *
-     * @param quests collection needed to store quests.
+     * @param quests list needed to store quests in document order.
      * @param rules map to store the rules.
      * @param lang_code a xsd:language code.
+     * @param pool the pool canonicalizing strings and configurations.
+     * @see DedupPool
+     * @see List
      * @see RuleMap
-     * @see QuestCollection
      */
-    QuestDataXMLHandler(QuestCollection quests, RuleMap rules, String lang_code) {
-        xmlHelper = new QuestElementXMLHelper(quests, rules, lang_code);
+    QuestDataXMLHandler(
+            List<Quest> quests, RuleMap rules, String lang_code, DedupPool pool) {
+        this.quests = quests;
+        this.rules = rules;
+        this.lang_code = lang_code;
+        this.pool = pool;
+        this.qc = new QuestCreator(pool);
+        this.arena = new TextArena(pool);
+    }
+
+    /**
+     * Adds a configuration to the quest in preparation. The first private
+     * configuration starts the quest with all data collected before.
+     *
+     * @param location takes a final Game.LOCATION_ flag.
+     * @throws IllegalArgumentException if the level is no number, a public
+     * configuration comes first or the quest has no category or text.
+     * @see Game
+     */
+    private void addConfiguration(int location) throws IllegalArgumentException {
+        int level = Integer.parseInt(getAttribute(QuestDataXMLAccess.ATTRIBUTE_QUEST_LEVEL));
+        Integer player = Quest.getPlayerField(getAttribute(QuestDataXMLAccess.ATTRIBUTE_PLAYER));
+        Integer partner = Quest.getPartnerField(
+                getAttribute(QuestDataXMLAccess.ATTRIBUTE_PARTNER));
+        Integer friends = Game.getFriendsField(
+                getAttribute(QuestDataXMLAccess.ATTRIBUTE_FRIENDSHIP_LEVEL));
+        Integer skip = Quest.getSkipField(getAttribute(QuestDataXMLAccess.ATTRIBUTE_SKIP));
+        Integer allow_delete = Quest.getDeleteField(
+                getAttribute(QuestDataXMLAccess.ATTRIBUTE_ALLOW_DELETE));
+        if (qc.getInPreparation()) {
+            qc.addConfiguration(location, level, player, partner, friends, skip, allow_delete);
+            return;
+        }
+        if (location != Game.LOCATION_PRIVATE || categories.isEmpty() || text.isEmpty())
+            throw new IllegalArgumentException();
+        qc.startNewQuest(categories.get(0), null,
+                level, player, partner, friends, skip, allow_delete);
+        for (int i = 1; i < categories.size(); i++) qc.addCategory(categories.get(i));
+        qc.setWeight(weight);
+        //noinspection Convert2streamapi
+        for (int r : requirements) qc.addRequirement(r);
+        //noinspection Convert2streamapi
+        for (String r : rule_ids) qc.addRuleId(r);
     }
 
     /**
@@ -64,7 +430,51 @@ class QuestDataXMLHandler extends DefaultHandler implements TwoWayHandler {
      */
     @Override
     public void characters(char[] ch, int start, int length) {
-        xmlHelper.characters(ch, start, length);
+        if (isTextState()) text_buffer.append(ch, start, length);
+    }
+
+    /**
+     * Handles an end-tag and returns to the parent state.
+     */
+    private void endElement() {
+        switch (state) {
+            case STATE_SKIP:
+                if (skip_depth-- > 0) return;
+                state = skip_parent;
+                return;
+            case STATE_QUEST:
+                if (!quest_broken && qc.getInPreparation()) {
+                    try {
+                        qc.setTexts(arena.add(text), arena.add(comments), arena.add(source));
+                        quests.add(qc.craftQuest());
+                    } catch (IllegalArgumentException e) {
+                        // It is ok to ignore this exception. This app will
+                        // not collapse without this quest.
+                    }
+                }
+                qc.abort();
+                break;
+            case STATE_QUEST_TEXT:
+                text.add(text_buffer.toString());
+                break;
+            case STATE_COMMENT:
+                comments.add(text_buffer.toString());
+                break;
+            case STATE_SOURCE:
+                source.clear();
+                source.add(text_buffer.toString());
+                break;
+            case STATE_RULE_TEXT:
+                try {
+                    rules.addRule(rule_id,
+                            arena.add(Collections.singletonList(text_buffer.toString())));
+                } catch (IllegalArgumentException e) {
+                    // It is ok to ignore this exception. This app will not
+                    // collapse without this rule.
+                }
+                break;
+        }
+        state = PARENTS[state];
     }
 
     /**
@@ -82,8 +492,67 @@ class QuestDataXMLHandler extends DefaultHandler implements TwoWayHandler {
      * @see TwoWayHandler
      */
     @Override
-    public void endElement(String uri, String localName, String qName) {
-        xmlHelper = xmlHelper.endElement(uri, localName, qName);
+    public void endElement(String uri, String localName, String qName) { endElement(); }
+
+    /**
+     * Returns the value of an attribute of the current start-tag, no matter
+     * which parser is used.
+     *
+     * @param name the name of the attribute.
+     * @return the value, or null if the attribute does not exist.
+     */
+    private String getAttribute(String name) {
+        if (attributes != null) return attributes.getValue(name);
+        return parser.getAttributeValue(null, name);
+    }
+
+    /**
+     * Maps an element name to its element code.
+     *
+     * @param name the element name.
+     * @return one of the ELEMENT_ codes defined in this class.
+     */
+    private static int getElementCode(String name) {
+        switch (name) {
+            case QuestDataXMLAccess.ELEMENT_APPLY_RULE:
+                return ELEMENT_APPLY_RULE;
+            case QuestDataXMLAccess.ELEMENT_CATEGORY:
+                return ELEMENT_CATEGORY;
+            case QuestDataXMLAccess.ELEMENT_COMMENT:
+                return ELEMENT_COMMENT;
+            case QuestDataXMLAccess.ELEMENT_CONFIGURATION:
+                return ELEMENT_CONFIGURATION;
+            case QuestDataXMLAccess.ELEMENT_LANGUAGE:
+                return ELEMENT_LANGUAGE;
+            case QuestDataXMLAccess.ELEMENT_PUBLIC_CONFIGURATION:
+                return ELEMENT_PUBLIC_CONFIGURATION;
+            case QuestDataXMLAccess.ELEMENT_QUEST:
+                return ELEMENT_QUEST;
+            case QuestDataXMLAccess.ELEMENT_QUEST_TEXT:
+                return ELEMENT_QUEST_TEXT;
+            case QuestDataXMLAccess.ELEMENT_REQUIREMENT:
+                return ELEMENT_REQUIREMENT;
+            case QuestDataXMLAccess.ELEMENT_RULE:
+                return ELEMENT_RULE;
+            case QuestDataXMLAccess.ELEMENT_RULES:
+                return ELEMENT_RULES;
+            case QuestDataXMLAccess.ELEMENT_RULE_TEXT:
+                return ELEMENT_RULE_TEXT;
+            case QuestDataXMLAccess.ELEMENT_SOURCE:
+                return ELEMENT_SOURCE;
+            default:
+                return ELEMENT_OTHER;
+        }
+    }
+
+    /**
+     * Returns if the characters of the current state are collected.
+     *
+     * @return true for quest_text, comment, source and rule_text states.
+     */
+    private boolean isTextState() {
+        return state == STATE_QUEST_TEXT || state == STATE_COMMENT
+                || state == STATE_SOURCE || state == STATE_RULE_TEXT;
     }
 
     /**
@@ -99,7 +568,105 @@ class QuestDataXMLHandler extends DefaultHandler implements TwoWayHandler {
      */
     @Override
     public void read(XmlPullParser parser) throws IOException, XmlPullParserException {
-        xmlHelper.read(parser);
+        this.parser = parser;
+        this.attributes = null;
+        for (int event = parser.getEventType();
+             event != XmlPullParser.END_DOCUMENT;
+             event = parser.next()) {
+            switch (event) {
+                case XmlPullParser.START_TAG:
+                    startElement(parser.getName());
+                    break;
+                case XmlPullParser.END_TAG:
+                    endElement();
+                    break;
+                case XmlPullParser.TEXT:
+                    if (isTextState()) text_buffer.append(parser.getText());
+                    break;
+            }
+        }
+        this.parser = null;
+    }
+
+    /**
+     * Handles a start-tag: looks up the next state and handles the attributes.
+     *
+     * @param name the element name.
+     */
+    private void startElement(String name) {
+        if (state == STATE_SKIP) {
+            skip_depth++;
+            return;
+        }
+        int element = getElementCode(name);
+        int next = TRANSITIONS[state][element];
+        try {
+            switch (element) {
+                case ELEMENT_QUEST:
+                    quest_broken = false;
+                    qc.abort();
+                    categories.clear();
+                    comments.clear();
+                    requirements.clear();
+                    rule_ids.clear();
+                    source.clear();
+                    text.clear();
+                    String quest_weight = getAttribute(QuestDataXMLAccess.ATTRIBUTE_WEIGHT);
+                    weight = (quest_weight == null)
+                            ? Settings.DEFAULT_WEIGHT : Integer.parseInt(quest_weight.trim());
+                    break;
+                case ELEMENT_LANGUAGE:
+                    if (!lang_code.equals(getAttribute(
+                            QuestDataXMLAccess.ATTRIBUTE_QUEST_LANGUAGE))) next = STATE_SKIP;
+                    break;
+                case ELEMENT_RULE:
+                    rule_id = pool.canonicalize(getAttribute(QuestDataXMLAccess.ATTRIBUTE_RULE_ID));
+                    break;
+                case ELEMENT_RULE_TEXT:
+                    if (!lang_code.equals(getAttribute(
+                            QuestDataXMLAccess.ATTRIBUTE_RULE_LANGUAGE))) next = STATE_SKIP;
+                    break;
+            }
+            if (next == STATE_ATTRIBUTES && !quest_broken) {
+                switch (element) {
+                    case ELEMENT_CATEGORY:
+                        Integer category = Quest.getCategoryField(
+                                getAttribute(QuestDataXMLAccess.ATTRIBUTE_CATEGORY_NAME));
+                        if (category == null) throw new IllegalArgumentException();
+                        if (qc.getInPreparation()) qc.addCategory(category);
+                        else categories.add(category);
+                        break;
+                    case ELEMENT_REQUIREMENT:
+                        Integer requirement = Quest.getRequirementField(
+                                getAttribute(QuestDataXMLAccess.ATTRIBUTE_REQUIRES));
+                        if (requirement == null) throw new IllegalArgumentException();
+                        if (qc.getInPreparation()) qc.addRequirement(requirement);
+                        else requirements.add(requirement);
+                        break;
+                    case ELEMENT_APPLY_RULE:
+                        String id = getAttribute(QuestDataXMLAccess.ATTRIBUTE_APPLY_RULE_ID);
+                        if (qc.getInPreparation()) qc.addRuleId(id);
+                        else rule_ids.add(id);
+                        break;
+                    case ELEMENT_CONFIGURATION:
+                        addConfiguration(Game.LOCATION_PRIVATE);
+                        break;
+                    case ELEMENT_PUBLIC_CONFIGURATION:
+                        addConfiguration(Game.LOCATION_PUBLIC);
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // It is ok to ignore this exception. This app will not collapse
+            // without this quest.
+            quest_broken = true;
+        }
+        if (next == STATE_SKIP) {
+            skip_parent = state;
+            skip_depth = 0;
+        }
+        text_buffer.setLength(0);
+        state = next;
     }
 
     /**
@@ -123,6 +690,8 @@ class QuestDataXMLHandler extends DefaultHandler implements TwoWayHandler {
      */
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) {
-        xmlHelper = xmlHelper.startElement(uri, localName, qName, attributes);
+        this.attributes = attributes;
+        startElement(localName.length() > 0 ? localName : qName);
+        this.attributes = null;
     }
 }
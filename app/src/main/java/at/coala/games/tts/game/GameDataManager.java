@@ -1,17 +1,35 @@
 package at.coala.games.tts.game;
 
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
-import at.coala.games.tts.R;
 import at.coala.games.tts.data.Game;
 import at.coala.games.tts.data.Settings;
 import at.coala.games.tts.data.quest.Quest;
 import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.quest.QuestPack;
 import at.coala.games.tts.data.quest.RuleMap;
 import at.coala.games.tts.data.User;
 import at.coala.games.tts.dba.DataAccess;
+import at.coala.games.tts.dba.catalog.QuestCatalogShards;
 
 /**
  * This class manages and controls all game data for this app. All fields and
@@ -32,6 +50,31 @@ public class GameDataManager {
 	private static final String ATTRIBUTE_GAME_DATA_LAST_GAME_ACTION_TIMESTAMP_STRING =
 			"last_game_action_timestamp";
 
+	/**
+	 * A constant containing the highest level of the quest catalog shards
+	 * read on start-up.
+	 */
+	private static final int EAGER_SHARD_LEVEL = 2;
+
+	/**
+	 * A constant containing the tag of log messages.
+	 */
+	private static final String LOG_TAG = "GameDataManager";
+
+	/**
+	 * A constant containing how many levels ahead of the average level of
+	 * the game the quest catalog shards are read.
+	 */
+	private static final int SHARD_LOOKAHEAD = 1;
+
+	/**
+	 * The thread loading the quests in the background. Tasks waiting for the
+	 * quests are queued behind the loading task.
+	 *
+	 * @see ExecutorService
+	 */
+	private static final ExecutorService QUEST_LOADER = Executors.newSingleThreadExecutor();
+
 	/**
 	 * A field storing the current game state.
 	 *
@@ -46,6 +89,26 @@ public class GameDataManager {
 	 */
 	static Game game;
 
+	/**
+	 * The modification time and length of each quest pack file loaded into
+	 * the current collection, accessible by file name. It is cleared when a
+	 * new collection starts loading and is only accessed by the QUEST_LOADER
+	 * thread.
+	 *
+	 * @see Map
+	 */
+	private static final Map<String, String> loadedQuestPackVersions = new HashMap<>();
+
+	/**
+	 * The last version of each quest pack loaded into the current collection,
+	 * accessible by file name. It is cleared when a new collection starts
+	 * loading and is only accessed by the QUEST_LOADER thread.
+	 *
+	 * @see Map
+	 * @see QuestPack
+	 */
+	private static final Map<String, QuestPack> loadedQuestPacks = new HashMap<>();
+
 	/**
 	 * A field containing the current quest.
 	 *
@@ -53,6 +116,29 @@ public class GameDataManager {
 	 */
 	static Quest quest;
 
+	/**
+	 * The result of the quest loading task started in onCreate(). It is done
+	 * as soon as quests and rules are complete.
+	 *
+	 * @see Future
+	 */
+	private static Future<?> questLoading;
+
+	/**
+	 * Watches the quest pack directory and reloads packs as soon as they are
+	 * written, moved or deleted. It is kept here, so it is not collected.
+	 *
+	 * @see FileObserver
+	 */
+	private static FileObserver questPackObserver;
+
+	/**
+	 * The quests shown in the last rounds whose dynamic weight is still
+	 * recovering, the quest shown last first. It is only accessed by the
+	 * main thread.
+	 */
+	private static final LinkedList<Quest> recoveringQuests = new LinkedList<>();
+
 	/**
 	 * A private collection storing all quests.
 	 *
@@ -61,18 +147,20 @@ public class GameDataManager {
 	private static QuestCollection quests;
 
 	/**
-	 * The state during quests.
+	 * The shards of the quest catalog, read level by level as the game
+	 * proceeds. It is null if the quests were not read out of the catalog
+	 * and is only accessed by the QUEST_LOADER thread.
 	 *
-	 * @see GameState
+	 * @see QuestCatalogShards
 	 */
-	static GameState questState;
+	private static QuestCatalogShards questShards;
 
 	/**
-	 * A private number generator.
+	 * The state during quests.
 	 *
-	 * @see Random
+	 * @see GameState
 	 */
-	private static Random r = new Random();
+	static GameState questState;
 
 	/**
 	 * The state between quests, providing new quests.
@@ -81,6 +169,12 @@ public class GameDataManager {
 	 */
 	static GameState readyState;
 
+	/**
+	 * The highest level of the quest catalog shards requested so far. It is
+	 * only accessed by the main thread.
+	 */
+	private static int requestedShardLevel;
+
 	/**
 	 * A map with rules accessible by identifiers.
 	 *
@@ -99,7 +193,10 @@ public class GameDataManager {
 	 * @param player user to add.
 	 * @see User
 	 */
-	public static void addPlayer(User player) { game.addPlayer(player); }
+	public static void addPlayer(User player) {
+		game.addPlayer(player);
+		settings.setPlayerCount(game.getPlayerCount());
+	}
 
 	/**
 	 * Adds a requirement and marks the settings as changed.
@@ -112,6 +209,25 @@ public class GameDataManager {
 		validateQuestCollection();
 	}
 
+	/**
+	 * Blocks until the quests and rules are loaded. Returns immediately if
+	 * loading finished already, what is the case unless the user reaches the
+	 * settings very fast.
+	 */
+	public static void awaitQuests() {
+		if (questLoading == null) return;
+		try {
+			questLoading.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			/**
+			 * It is ok to ignore this exception. This app will not collapse
+			 * without quests.
+			 */
+		}
+	}
+
 	/**
 	 * Should be called if go_button or no_button is called. Calls the current
 	 * GameState object and changes the state.
@@ -169,6 +285,13 @@ public class GameDataManager {
 	 */
 	static int getLinkedQuestTextCount() { return quests.getLinkedQuestTextCount(); }
 
+	/**
+	 * Returns if the quests and rules are loaded completely.
+	 *
+	 * @return true if loading finished; false otherwise.
+	 */
+	public static boolean isQuestsReady() { return questLoading == null || questLoading.isDone(); }
+
 	/**
 	 * Returns the text that should be shown in the main text field.
 	 *
@@ -201,11 +324,12 @@ public class GameDataManager {
 	public static String getPreTitle(Context context) { return currentState.getPreTitle(context); }
 
 	/**
-	 * Calls nextDouble() with internal number generator.
+	 * Calls nextDouble() with the number generator shared by all game data.
 	 *
 	 * @return a double between 0 and 1.
+	 * @see Game
 	 */
-	public static double getRandom() { return r.nextDouble(); }
+	public static double getRandom() { return Game.getRandom(); }
 
 	/**
 	 * Returns the text that should be shown in the comment field beyond the
@@ -234,9 +358,89 @@ public class GameDataManager {
 	 */
 	public static int getValidQuestTextCount() { return quests.getValidQuestTextCount(); }
 
+	/**
+	 * Reloads quest packs added, changed or deleted in the app storage since
+	 * the last call in the background. Only the delta of each changed pack is
+	 * applied to the running game: quests not changed keep their delete flags
+	 * and only new quests are validated and linked, so this takes a few
+	 * milliseconds on the main thread after parsing. Does nothing if no pack
+	 * has changed.
+	 *
+	 * @param context to access application data.
+	 */
+	public static void loadQuestPacks(Context context) {
+		if (quests == null) return;
+		final QuestCollection quests = GameDataManager.quests;
+		final RuleMap rules = GameDataManager.rules;
+		final Context appContext = context.getApplicationContext();
+		final Handler mainHandler = new Handler(Looper.getMainLooper());
+		QUEST_LOADER.execute(new Runnable() {
+
+			/**
+			 * Parses the changed quest packs and applies them on the main
+			 * thread.
+			 */
+			@Override
+			public void run() {
+				final List<QuestPack> packs = readChangedQuestPacks(appContext);
+				if (packs.isEmpty()) return;
+				mainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						//noinspection Convert2streamapi
+						for (QuestPack pack : packs) pack.apply(quests, rules);
+						resolveRules(quests, rules);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Reads the quest catalog shards up to a level in the background and
+	 * adds their quests to the running game on the main thread. Until then
+	 * the game keeps drawing out of the quests of lower levels, so drawing a
+	 * quest never waits for a shard.
+	 *
+	 * @param level the highest level of the shards to read.
+	 */
+	private static void loadQuestShards(final int level) {
+		final QuestCollection quests = GameDataManager.quests;
+		final RuleMap rules = GameDataManager.rules;
+		final Handler mainHandler = new Handler(Looper.getMainLooper());
+		QUEST_LOADER.execute(new Runnable() {
+
+			/**
+			 * Reads the due shards and adds their quests on the main thread.
+			 */
+			@Override
+			public void run() {
+				if (questShards == null || questShards.getNextLevel() > level) return;
+				final List<Quest> read;
+				try {
+					read = questShards.readShards(level);
+				} catch (IOException e) {
+					/**
+					 * It is ok to ignore this exception. The quests of the
+					 * incomplete shard are not available in this game.
+					 */
+					return;
+				}
+				mainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						quests.addQuests(read);
+						resolveRules(quests, rules);
+					}
+				});
+			}
+		});
+	}
+
 	/**
 	 * This method should be called on creation. It sets static available game
-	 * and quest data.
+	 * data and starts loading the quest data in the background. Use
+	 * awaitQuests() or whenQuestsReady() before accessing quests.
 	 *
 	 * @param context to access application data.
 	 */
@@ -245,26 +449,82 @@ public class GameDataManager {
 		 * TODO
 		 * define default reqs somewhere else
 		 */
-		quests = new QuestCollection();
-		rules = new RuleMap();
+		final QuestCollection quests = new QuestCollection();
+		quests.setWeighting(QuestCollection.WEIGHTING_DYNAMIC);
+		recoveringQuests.clear();
+		final RuleMap rules = new RuleMap();
+		final Context appContext = context.getApplicationContext();
+		GameDataManager.quests = quests;
+		GameDataManager.rules = rules;
+		requestedShardLevel = EAGER_SHARD_LEVEL;
 		settings = new Settings();
+		settings.setDeckMode(DataAccess.getSetting(context, Settings.ATTRIBUTE_DECK_MODE, false));
+		quests.setDeckMode(settings.isDeckMode());
+		game = new Game(settings.getCategoryProbability());
 
-		/**
-		 * TODO
-		 * if slowing down: fetch data asynchron in thread
-		 */
-
-		//uncomment for testing the time.
-		//long startTime1 = System.currentTimeMillis();
-		DataAccess.getQuests(quests, rules, "DE", context.getResources().getXml(R.xml.tts_data));
-		//long stopTime1 = System.currentTimeMillis();
-		//long startTime2 = System.currentTimeMillis();
-		//DataAccess.getQuests(quests, rules, "DE", context.getResources().openRawResource(R.raw.tts_data));
-		//long stopTime2 = System.currentTimeMillis();
-		//System.out.println(stopTime1 - startTime1); //last test: 167, 202, 301, 286, 164, 221 ~ 224
-		//System.out.println(stopTime2 - startTime2); //last test: 447, 478, 451, 465, 486, 481 ~ 468
+		if (questPackObserver != null) questPackObserver.stopWatching();
+		questPackObserver = new FileObserver(
+				DataAccess.getQuestPackDirectory(appContext).getPath(),
+				FileObserver.CLOSE_WRITE | FileObserver.DELETE
+						| FileObserver.MOVED_FROM | FileObserver.MOVED_TO) {
+
+			/**
+			 * Reloads the quest packs if a pack file has changed.
+			 */
+			@Override
+			public void onEvent(int event, String path) {
+				if (path != null && path.endsWith(DataAccess.SUFFIX_QUEST_PACK))
+					loadQuestPacks(appContext);
+			}
+		};
+		questPackObserver.startWatching();
+
+		questLoading = QUEST_LOADER.submit(new Runnable() {
+
+			/**
+			 * Loads the low level shards of the quest catalog, or the
+			 * snapshot of the XML file if the catalog can not be read, and
+			 * all quest packs. The packs loaded into a previous collection
+			 * are forgotten, so every pack is read into this one.
+			 */
+			@Override
+			public void run() {
+				loadedQuestPacks.clear();
+				loadedQuestPackVersions.clear();
+				//uncomment for testing the time.
+				//long startTime1 = System.currentTimeMillis();
+				questShards = DataAccess.getQuestCatalog(
+						appContext, quests, rules, "DE", EAGER_SHARD_LEVEL);
+				if (questShards == null)
+					DataAccess.getQuestSnapshot(appContext, quests, rules, "DE");
+				//noinspection Convert2streamapi
+				for (QuestPack pack : readChangedQuestPacks(appContext)) pack.apply(quests, rules);
+				resolveRules(quests, rules);
+				//long stopTime1 = System.currentTimeMillis();
+				//System.out.println(stopTime1 - startTime1);
+			}
+		});
+	}
 
-		game = new Game(settings.getCategoryProbability());
+	/**
+	 * Lowers the dynamic weight of the quest shown this round to its weight,
+	 * so it is unlikely to come up again soon. Every quest shown before
+	 * recovers by its weight per round, until it reaches its full weight of
+	 * QuestCollection.DYNAMIC_WEIGHT_SCALE times its weight again.
+	 *
+	 * @param shown the quest shown this round.
+	 * @see Quest
+	 * @see QuestCollection
+	 */
+	private static void updateQuestWeights(Quest shown) {
+		recoveringQuests.remove(shown);
+		recoveringQuests.addFirst(shown);
+		int rounds = 1;
+		for (Iterator<Quest> it = recoveringQuests.iterator(); it.hasNext(); rounds++) {
+			Quest recovering = it.next();
+			quests.setDynamicWeight(recovering, (long) recovering.weight * rounds);
+			if (rounds == QuestCollection.DYNAMIC_WEIGHT_SCALE) it.remove();
+		}
 	}
 
 	private static void validateQuestCollection() {
@@ -276,16 +536,61 @@ public class GameDataManager {
 	}
 
 	/**
-	 * Chooses the next Quest and matches it with compatible Users.
+	 * Chooses the next Quest and matches it with compatible Users. Requests
+	 * the quest catalog shards of the coming levels, as soon as the game
+	 * gets close to them.
 	 */
 	static void prepareNextQuest() {
+		int level = game.getAvgLevel() + SHARD_LOOKAHEAD;
+		if (level > requestedShardLevel) {
+			requestedShardLevel = level;
+			loadQuestShards(level);
+		}
 		do {
 			quest = quests.getRandomQuest(
 					game.getAvgLevel(), game.returnCategory(settings.getCategoryProbability()));
 		} while (quest == null);
 		boolean success = game.findPlayer(quest.categories, quest.getConfiguration(
 				settings.getLocation(), game.getAvgLevel()));
-		if (!success) prepareNextQuest();
+		if (success) updateQuestWeights(quest);
+		else prepareNextQuest();
+	}
+
+	/**
+	 * Reads all quest packs that were added or changed since the last call for
+	 * the current collection and computes their delta to the loaded version.
+	 * Packs deleted since then are returned as empty packs, so applying them
+	 * removes their quests. A pack counts as changed if its modification time
+	 * or length has changed. Must only be called by the QUEST_LOADER thread.
+	 *
+	 * @param context to access application data.
+	 * @return the changed packs, ready to be applied.
+	 * @see QuestPack
+	 */
+	private static List<QuestPack> readChangedQuestPacks(Context context) {
+		List<QuestPack> packs = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for (File file : DataAccess.getQuestPackFiles(context)) {
+			String name = file.getName();
+			String version = file.lastModified() + ":" + file.length();
+			names.add(name);
+			if (version.equals(loadedQuestPackVersions.get(name))) continue;
+			RuleMap packRules = new RuleMap();
+			QuestPack pack = new QuestPack(name,
+					DataAccess.getQuestPack(file, packRules, "DE"), packRules);
+			pack.diff(loadedQuestPacks.get(name));
+			loadedQuestPacks.put(name, pack);
+			loadedQuestPackVersions.put(name, version);
+			if (pack.hasDelta()) packs.add(pack);
+		}
+		for (String name : new ArrayList<>(loadedQuestPacks.keySet())) {
+			if (names.contains(name)) continue;
+			QuestPack pack = new QuestPack(name, new ArrayList<Quest>(), new RuleMap());
+			pack.diff(loadedQuestPacks.remove(name));
+			loadedQuestPackVersions.remove(name);
+			packs.add(pack);
+		}
+		return packs;
 	}
 
 	/**
@@ -294,7 +599,10 @@ public class GameDataManager {
 	 * @param player to remove.
 	 * @see User
 	 */
-	public static void removePlayer(User player) { game.removePlayer(player); }
+	public static void removePlayer(User player) {
+		game.removePlayer(player);
+		settings.setPlayerCount(game.getPlayerCount());
+	}
 
 	/**
 	 * Removes a requirement and marks the settings as changed.
@@ -307,15 +615,33 @@ public class GameDataManager {
 		validateQuestCollection();
 	}
 
+	/**
+	 * Resolves the rule ids of all quests to the indices of the rule map, so
+	 * showing a quest does not look up its rules again. Rule ids without a
+	 * rule are reported to the log.
+	 *
+	 * @param quests the quests to resolve.
+	 * @param rules the rules to resolve the quests with.
+	 * @see QuestCollection
+	 * @see RuleMap
+	 */
+	private static void resolveRules(QuestCollection quests, RuleMap rules) {
+		Set<String> dangling = quests.resolveRules(rules);
+		if (!dangling.isEmpty()) Log.w(LOG_TAG, "Quests refer to undefined rules " + dangling);
+	}
+
 	/**
 	 * Prepares all data for a new game.
 	 */
 	static void setGame(boolean reset) {
-		r = new Random();
+		Game.resetRandom();
 		readyState = new GameStateReady();
 		questState = new GameStateQuest();
 
 		quest = null;
+		for (Quest recovering : recoveringQuests) quests.setDynamicWeight(
+				recovering, (long) recovering.weight * QuestCollection.DYNAMIC_WEIGHT_SCALE);
+		recoveringQuests.clear();
 
 		game.setGame(reset);
 	}
@@ -325,6 +651,20 @@ public class GameDataManager {
 	 */
 	static void setDeleteFlag() { quests.setDeleteFlag(); }
 
+	/**
+	 * Sets if quests are drawn out of decks, so no quest comes up twice
+	 * before all quests of its category came up. Turning it on deals new
+	 * decks.
+	 *
+	 * @param deck_mode true if quests are drawn without replacement; false
+	 *                  if they are drawn by their dynamic weights.
+	 * @see QuestCollection
+	 */
+	public static void setDeckMode(boolean deck_mode) {
+		settings.setDeckMode(deck_mode);
+		quests.setDeckMode(deck_mode);
+	}
+
 	/**
 	 * Set a new friendship level and marks the settings as changed.
 	 *
@@ -362,4 +702,28 @@ public class GameDataManager {
 	public static void startDrunk() {
 		game.startDrunk();
 	}
+
+	/**
+	 * Runs the callback on the main thread as soon as the quests and rules are
+	 * loaded. If loading finished already, the callback is run immediately.
+	 *
+	 * @param callback the callback to run.
+	 * @see Runnable
+	 */
+	public static void whenQuestsReady(final Runnable callback) {
+		if (isQuestsReady()) {
+			callback.run();
+			return;
+		}
+		final Handler mainHandler = new Handler(Looper.getMainLooper());
+		QUEST_LOADER.execute(new Runnable() {
+
+			/**
+			 * Runs after the loading task, so it only passes the callback to
+			 * the main thread.
+			 */
+			@Override
+			public void run() { mainHandler.post(callback); }
+		});
+	}
 }
@@ -125,9 +125,9 @@ class GameStateQuest extends GameState {
             sub_text = addTextLn(null, GameDataManager.quest.comments, context);
         List<String> rules = GameDataManager.quest.getRules(GameDataManager.rules);
         if (rules != null) sub_text = addTextLn(sub_text, rules, context);
-        if (GameDataManager.quest.source != null)
-            sub_text = addTextLn(
-                    sub_text, Collections.singletonList(GameDataManager.quest.source), context);
+        String source = GameDataManager.quest.getSource();
+        if (source != null)
+            sub_text = addTextLn(sub_text, Collections.singletonList(source), context);
         if (sub_text != null) return sub_text;
         return super.getSubText(context);
     }
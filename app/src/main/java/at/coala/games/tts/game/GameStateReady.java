@@ -154,6 +154,7 @@ class GameStateReady extends GameState {
     GameState onState() {
         level = new_level;
         GameDataManager.prepareNextQuest();
+        GameDataManager.quest.prefetchTexts();
         return super.onState();
     }
 
@@ -0,0 +1,163 @@
+package at.coala.games.tts.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.RuleMap;
+import at.coala.games.tts.dba.catalog.QuestCatalogWriter;
+import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+
+/**
+ * Provides the XML quest file, its gzip compressed version and the compiled
+ * catalog to the benchmarks. The file is scaled by repeating its quests, so
+ * loaders can be compared on catalogs larger than the built-in one. All are
+ * kept in memory, so the benchmarks do not measure the disk. Their sizes are
+ * printed on set-up, as they are shipped in the APK.
+ *
+ * The path of the XML file is read from the system property tts.questXml.
+ *
+ * @author Klaus
+ * @see QuestParsingBenchmark
+ */
+@State(Scope.Benchmark)
+public class QuestData {
+
+    /**
+     * A constant containing the charset of the XML file.
+     */
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * A constant containing the size of the buffer decompressing the XML
+     * file, as used by the app.
+     */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /**
+     * A constant containing the language code of the built-in quests.
+     */
+    static final String LANG_CODE = "DE";
+
+    /**
+     * A constant containing the system property naming the XML file.
+     */
+    private static final String PROPERTY_QUEST_XML = "tts.questXml";
+
+    /**
+     * The compiled catalog of the scaled XML file.
+     *
+     * @see ByteBuffer
+     */
+    ByteBuffer catalog;
+
+    /**
+     * The scaled XML file compressed with gzip.
+     */
+    byte[] gzip_bytes;
+
+    /**
+     * The number of times the quests of the XML file are repeated.
+     */
+    @Param({ "1", "10", "100" })
+    public int scale;
+
+    /**
+     * The scaled XML file encoded as UTF-8.
+     */
+    byte[] xml_bytes;
+
+    /**
+     * Returns the compressed XML file as stream, decompressing it while it is
+     * read.
+     *
+     * @return a new stream.
+     * @throws IOException if the gzip header could not be read.
+     * @see GZIPInputStream
+     */
+    GZIPInputStream openCompressedXml() throws IOException {
+        return new GZIPInputStream(new ByteArrayInputStream(gzip_bytes), GZIP_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the scaled XML file as stream.
+     *
+     * @return a new stream.
+     * @see ByteArrayInputStream
+     */
+    ByteArrayInputStream openXml() { return new ByteArrayInputStream(xml_bytes); }
+
+    /**
+     * Repeats the quests of a XML file.
+     *
+     * @param xml the XML file.
+     * @param scale the number of times the quests are contained afterwards.
+     * @return the scaled XML file.
+     * @throws IOException if the XML file contains no quests.
+     */
+    private static String scale(String xml, int scale) throws IOException {
+        int start = xml.indexOf("<" + QuestDataXMLAccess.ELEMENT_QUEST + ">");
+        String end_tag = "</" + QuestDataXMLAccess.ELEMENT_QUEST + ">";
+        int end = xml.lastIndexOf(end_tag);
+        if (start < 0 || end < 0) throw new IOException("No quests found.");
+        end += end_tag.length();
+        String quests = xml.substring(start, end);
+        StringBuilder scaled = new StringBuilder(xml.length() + (scale - 1) * quests.length());
+        scaled.append(xml, 0, end);
+        for (int i = 1; i < scale; i++) scaled.append(quests);
+        scaled.append(xml, end, xml.length());
+        return scaled.toString();
+    }
+
+    /**
+     * Reads and scales the XML file, compresses it and compiles it into a
+     * catalog.
+     *
+     * @throws IOException if the XML file could not be read or contains no
+     * quests.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String path = System.getProperty(PROPERTY_QUEST_XML);
+        if (path == null) throw new IOException("System property " + PROPERTY_QUEST_XML + " not set.");
+        String xml = scale(new String(Files.readAllBytes(new File(path).toPath()), CHARSET), scale);
+        try {
+            xml_bytes = xml.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported on every platform.
+            throw new IllegalStateException(e);
+        }
+
+        List<Quest> quests = new ArrayList<>();
+        RuleMap rules = new RuleMap();
+        new QuestDataXMLAccess().getQuests(quests, rules, LANG_CODE, openXml());
+        if (quests.isEmpty()) throw new IOException("No quests found for " + LANG_CODE + ".");
+
+        QuestCatalogWriter writer = new QuestCatalogWriter();
+        writer.addLanguage(LANG_CODE, quests, rules);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        catalog = ByteBuffer.wrap(out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(xml_bytes);
+        gzip.close();
+        gzip_bytes = out.toByteArray();
+    }
+}
@@ -0,0 +1,167 @@
+package at.coala.games.tts.benchmark;
+
+import org.kxml2.io.KXmlParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.quest.RuleMap;
+import at.coala.games.tts.dba.catalog.QuestCatalogAccess;
+import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+import at.coala.games.tts.dba.xml.QuestDataXMLChunkLoader;
+
+/**
+ * Measures the quest loaders of the app: both paths of the TwoWayHandler, the
+ * chunked pull-parser, the binary catalog and the compressed XML asset. Every
+ * benchmark loads all quests of QuestData into a new QuestCollection, as done
+ * on start-up. The compressed asset trades parse time for APK size, compare
+ * compressedSax with sax and the sizes printed by QuestData.
+ *
+ * Next to the loads per time, the quests counter reports quests per time in
+ * throughput mode and the time per quest in average time mode. The gc
+ * profiler adds the allocation rate.
+ *
+ * @author Klaus
+ * @see QuestData
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+public class QuestParsingBenchmark {
+
+    /**
+     * Reads the compiled catalog of the quests.
+     *
+     * @param data the quests to load.
+     * @param counter the counter of loaded quests.
+     * @return the loaded quests.
+     * @throws IOException if the catalog could not be read.
+     */
+    @Benchmark
+    public QuestCollection catalog(QuestData data, QuestCounter counter) throws IOException {
+        QuestCollection quests = counter.newCollection();
+        new QuestCatalogAccess().getQuests(quests, new RuleMap(), QuestData.LANG_CODE, data.catalog);
+        return quests;
+    }
+
+    /**
+     * Reads the XML file in parallel chunks.
+     *
+     * @param data the quests to load.
+     * @param counter the counter of loaded quests.
+     * @return the loaded quests.
+     * @throws IOException if the file could not be read.
+     */
+    @Benchmark
+    public QuestCollection chunks(QuestData data, QuestCounter counter) throws IOException {
+        QuestCollection quests = counter.newCollection();
+        new QuestDataXMLChunkLoader().getQuests(
+                quests, new RuleMap(), QuestData.LANG_CODE, data.openXml());
+        return quests;
+    }
+
+    /**
+     * Reads the compressed XML file with the ContentHandler path of the
+     * TwoWayHandler, decompressing it while parsing.
+     *
+     * @param data the quests to load.
+     * @param counter the counter of loaded quests.
+     * @return the loaded quests.
+     * @throws IOException if the file could not be read.
+     */
+    @Benchmark
+    public QuestCollection compressedSax(QuestData data, QuestCounter counter) throws IOException {
+        QuestCollection quests = counter.newCollection();
+        new QuestDataXMLAccess().getQuests(
+                quests, new RuleMap(), QuestData.LANG_CODE, data.openCompressedXml());
+        return quests;
+    }
+
+    /**
+     * Reads the XML file with the XmlPullParser path of the TwoWayHandler.
+     *
+     * @param data the quests to load.
+     * @param counter the counter of loaded quests.
+     * @return the loaded quests.
+     * @throws IOException if the file could not be read.
+     * @throws XmlPullParserException if the parser could not be created.
+     */
+    @Benchmark
+    public QuestCollection pullParser(QuestData data, QuestCounter counter)
+            throws IOException, XmlPullParserException {
+        QuestCollection quests = counter.newCollection();
+        XmlPullParser parser = new KXmlParser();
+        parser.setInput(data.openXml(), "UTF-8");
+        new QuestDataXMLAccess().getQuests(quests, new RuleMap(), QuestData.LANG_CODE, parser);
+        return quests;
+    }
+
+    /**
+     * Reads the XML file with the ContentHandler path of the TwoWayHandler.
+     *
+     * @param data the quests to load.
+     * @param counter the counter of loaded quests.
+     * @return the loaded quests.
+     * @throws IOException if the file could not be read.
+     */
+    @Benchmark
+    public QuestCollection sax(QuestData data, QuestCounter counter) throws IOException {
+        QuestCollection quests = counter.newCollection();
+        new QuestDataXMLAccess().getQuests(quests, new RuleMap(), QuestData.LANG_CODE, data.openXml());
+        return quests;
+    }
+
+    /**
+     * Counts the quests loaded per iteration. Its public fields are reported
+     * by JMH as secondary results.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class QuestCounter {
+
+        /**
+         * The number of quests loaded in this iteration.
+         */
+        public long quests;
+
+        /**
+         * Returns a collection counting every added quest.
+         *
+         * @return a new collection.
+         * @see QuestCollection
+         */
+        QuestCollection newCollection() {
+            return new QuestCollection() {
+                @Override
+                public void addQuest(Quest quest) {
+                    super.addQuest(quest);
+                    quests++;
+                }
+            };
+        }
+
+        /**
+         * Resets the counter before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() { quests = 0; }
+    }
+}
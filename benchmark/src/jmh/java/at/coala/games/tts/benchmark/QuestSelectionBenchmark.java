@@ -0,0 +1,347 @@
+package at.coala.games.tts.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestCollection;
+import at.coala.games.tts.data.quest.RuleMap;
+import at.coala.games.tts.dba.catalog.QuestCatalogAccess;
+
+/**
+ * Measures drawing random quests out of a validated and linked collection, as
+ * done for every card of a game. The draw cost should not grow with the scale
+ * of QuestData, neither if the level stays the same nor if it changes with
+ * every draw, nor if the quests are drawn by their weights. Drawing by
+ * dynamic weights and updating the weight of the drawn quest, as done by the
+ * game loop every round, grows with the logarithm of the scale. Drawing out
+ * of decks should not grow with the scale either. Validating the collection for new settings scans bitsets of
+ * all quests and refills the pools, so it grows with the scale. Switching
+ * back to recently used settings only swaps a snapshot in and should not.
+ *
+ * @author Klaus
+ * @see QuestData
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+public class QuestSelectionBenchmark {
+
+    /**
+     * Draws a random quest of the next category at the highest level.
+     *
+     * @param collection the collection to draw of.
+     * @return the drawn quest, or null if the category has no quest.
+     */
+    @Benchmark
+    public Quest draw(LinkedCollection collection) {
+        return collection.quests.getRandomQuest(LinkedCollection.LEVEL, collection.nextCategory());
+    }
+
+    /**
+     * Draws a random quest of the next category at the next level out of
+     * the decks of the linked levels, so decks are exhausted and reshuffled
+     * and levels join and leave the remaining cards.
+     *
+     * @param collection the collection to draw of.
+     * @return the drawn quest, or null if the category has no quest.
+     */
+    @Benchmark
+    public Quest drawDeck(DeckCollection collection) {
+        return collection.quests.getRandomQuest(collection.nextLevel(), collection.nextCategory());
+    }
+
+    /**
+     * Draws a random quest of the next category at the next level by the
+     * dynamic weights of the quests and sets a new dynamic weight for the
+     * drawn quest, as done by the game loop every round.
+     *
+     * @param collection the collection to draw of.
+     * @return the drawn quest, or null if the category has no quest.
+     */
+    @Benchmark
+    public Quest drawDynamic(DynamicCollection collection) {
+        Quest quest = collection.quests.getRandomQuest(collection.nextLevel(), collection.nextCategory());
+        if (quest != null) collection.quests.setDynamicWeight(quest, collection.nextWeight());
+        return quest;
+    }
+
+    /**
+     * Draws a random quest of the next category at the next level, as if the
+     * average level of the game changed with every card.
+     *
+     * @param collection the collection to draw of.
+     * @return the drawn quest, or null if the category has no quest.
+     */
+    @Benchmark
+    public Quest drawLevelChange(LinkedCollection collection) {
+        return collection.quests.getRandomQuest(collection.nextLevel(), collection.nextCategory());
+    }
+
+    /**
+     * Draws a random quest of the next category at the next level by the
+     * weights of the quests, so both the prefix sums of the levels and the
+     * alias tables are used.
+     *
+     * @param collection the collection to draw of.
+     * @return the drawn quest, or null if the category has no quest.
+     */
+    @Benchmark
+    public Quest drawWeighted(WeightedCollection collection) {
+        return collection.quests.getRandomQuest(collection.nextLevel(), collection.nextCategory());
+    }
+
+    /**
+     * Toggles one requirement back and forth, as done by a user playing with
+     * a checkbox in the settings, so every validation is served by a
+     * snapshot.
+     *
+     * @param collection the collection to validate.
+     * @return the number of valid quest texts.
+     */
+    @Benchmark
+    public int toggleRequirement(LinkedCollection collection) {
+        collection.quests.validateCollection(
+                Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, null, collection.nextToggle());
+        return collection.quests.getValidQuestTextCount();
+    }
+
+    /**
+     * Validates the collection for the next set of requirements, as if a
+     * requirement was toggled in the settings. All sets are validated in
+     * turn, more than snapshots are kept, so every validation is done in
+     * full.
+     *
+     * @param collection the collection to validate.
+     * @return the number of valid quest texts.
+     */
+    @Benchmark
+    public int validate(LinkedCollection collection) {
+        collection.quests.validateCollection(
+                Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, null, collection.nextRequirements());
+        return collection.quests.getValidQuestTextCount();
+    }
+
+    /**
+     * Provides the quests of QuestData in a collection like LinkedCollection,
+     * drawing quests out of decks.
+     */
+    @State(Scope.Thread)
+    public static class DeckCollection extends LinkedCollection {
+
+        /**
+         * Returns if the collection draws its quests out of decks.
+         *
+         * @return true.
+         */
+        @Override
+        boolean isDeckMode() {
+            return true;
+        }
+    }
+
+    /**
+     * Provides the quests of QuestData in a collection like LinkedCollection,
+     * drawing quests by their dynamic weights.
+     */
+    @State(Scope.Thread)
+    public static class DynamicCollection extends LinkedCollection {
+
+        /**
+         * The dynamic weight set last.
+         */
+        private long weight;
+
+        /**
+         * Returns the dynamic weight to set next, so all weights from 1 to
+         * QuestCollection.DYNAMIC_WEIGHT_SCALE are set in turn.
+         *
+         * @return the weight.
+         * @see QuestCollection
+         */
+        long nextWeight() {
+            weight = weight % QuestCollection.DYNAMIC_WEIGHT_SCALE + 1;
+            return weight;
+        }
+
+        /**
+         * Returns the weighting the collection draws its quests with.
+         *
+         * @return QuestCollection.WEIGHTING_DYNAMIC.
+         * @see QuestCollection
+         */
+        @Override
+        int getWeighting() {
+            return QuestCollection.WEIGHTING_DYNAMIC;
+        }
+    }
+
+    /**
+     * Provides the quests of QuestData in a collection validated for a
+     * private game and linked for the highest level.
+     */
+    @State(Scope.Thread)
+    public static class LinkedCollection {
+
+        /**
+         * A constant containing the level the quests are drawn for.
+         */
+        static final int LEVEL = 10;
+
+        /**
+         * The category of the last draw.
+         */
+        private int category;
+
+        /**
+         * The level of the last draw with level change.
+         */
+        private int level;
+
+        /**
+         * The validated and linked collection.
+         *
+         * @see QuestCollection
+         */
+        QuestCollection quests;
+
+        /**
+         * The requirements of the last validation, each bit of the number
+         * standing for one Quest.REQUIREMENT_ flag.
+         */
+        private int requirements;
+
+        /**
+         * Flag set true if the toggled requirement is set by the last
+         * toggle, false otherwise.
+         */
+        private boolean toggled;
+
+        /**
+         * Returns the weighting the collection draws its quests with.
+         *
+         * @return a final QuestCollection.WEIGHTING_ flag.
+         * @see QuestCollection
+         */
+        int getWeighting() {
+            return QuestCollection.WEIGHTING_NONE;
+        }
+
+        /**
+         * Returns if the collection draws its quests out of decks.
+         *
+         * @return false.
+         */
+        boolean isDeckMode() {
+            return false;
+        }
+
+        /**
+         * Returns the category to draw next, so all categories are drawn in
+         * turn.
+         *
+         * @return a final Quest.CATEGORY_ flag.
+         * @see Quest
+         */
+        int nextCategory() {
+            category = (category + 1) % Quest.CATEGORY_SUM;
+            return category;
+        }
+
+        /**
+         * Returns the level to draw next, so all levels up to LEVEL are
+         * drawn in turn.
+         *
+         * @return a level between 1 and LEVEL.
+         */
+        int nextLevel() {
+            level = level % LEVEL + 1;
+            return level;
+        }
+
+        /**
+         * Returns the requirements to validate with next, so all
+         * combinations of requirements are validated in turn.
+         *
+         * @return a new list of final Quest.REQUIREMENT_ flags.
+         * @see Quest
+         */
+        List<Integer> nextRequirements() {
+            requirements = (requirements + 1) % (1 << (Quest.REQUIREMENT_POOL + 1));
+            List<Integer> list = new ArrayList<>();
+            for (int r = Quest.REQUIREMENT_CREAM; r <= Quest.REQUIREMENT_POOL; r++) {
+                if ((requirements & 1 << r) != 0) list.add(r);
+            }
+            return list;
+        }
+
+        /**
+         * Returns the requirements to validate with next, so the pool
+         * requirement is toggled with every call.
+         *
+         * @return a new list of final Quest.REQUIREMENT_ flags.
+         * @see Quest
+         */
+        List<Integer> nextToggle() {
+            List<Integer> list = new ArrayList<>();
+            list.add(Quest.REQUIREMENT_CREAM);
+            toggled = !toggled;
+            if (toggled) list.add(Quest.REQUIREMENT_POOL);
+            return list;
+        }
+
+        /**
+         * Reads the catalog of QuestData into a new collection, validates and
+         * links it.
+         *
+         * @param data the quests to draw of.
+         * @throws IOException if the catalog could not be read.
+         */
+        @Setup(Level.Trial)
+        public void setUp(QuestData data) throws IOException {
+            quests = new QuestCollection();
+            quests.setWeighting(getWeighting());
+            quests.setDeckMode(isDeckMode());
+            new QuestCatalogAccess().getQuests(
+                    quests, new RuleMap(), QuestData.LANG_CODE, data.catalog.duplicate());
+            quests.validateCollection(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null, null);
+            quests.getRandomQuest(LEVEL, 0);
+        }
+    }
+
+    /**
+     * Provides the quests of QuestData in a collection like LinkedCollection,
+     * drawing quests by the weights of their quest texts.
+     */
+    @State(Scope.Thread)
+    public static class WeightedCollection extends LinkedCollection {
+
+        /**
+         * Returns the weighting the collection draws its quests with.
+         *
+         * @return QuestCollection.WEIGHTING_TEXTS.
+         * @see QuestCollection
+         */
+        @Override
+        int getWeighting() {
+            return QuestCollection.WEIGHTING_TEXTS;
+        }
+    }
+}
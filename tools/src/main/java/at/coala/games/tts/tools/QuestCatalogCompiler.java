@@ -0,0 +1,113 @@
+package at.coala.games.tts.tools;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.RuleMap;
+import at.coala.games.tts.dba.catalog.QuestCatalogWriter;
+import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+import at.coala.games.tts.dba.xml.QuestDataXMLChunkLoader;
+
+/**
+ * Compiles the XML quest file into a binary quest catalog with one section per
+ * language. It is run by the compileQuestCatalog task of the app at build
+ * time, so the app does not need to parse XML on start-up.
+ *
+ * Usage: QuestCatalogCompiler &lt;quest xml&gt; &lt;catalog&gt; [lang_code...]
+ *
+ * Without language codes every language found in the XML file is compiled.
+ *
+ * @author Klaus
+ * @see QuestCatalogWriter
+ */
+public class QuestCatalogCompiler {
+
+    /**
+     * Collects the language codes of all language and rule_text elements in
+     * the XML file in document order.
+     *
+     * @param xml the path of the XML quest file.
+     * @return the language codes.
+     * @throws IOException if the file could not be read.
+     * @throws XmlPullParserException if the XML file could not be parsed.
+     */
+    private static Set<String> findLanguages(String xml) throws IOException, XmlPullParserException {
+        Set<String> lang_codes = new LinkedHashSet<>();
+        InputStream in = new FileInputStream(xml);
+        try {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(in, null);
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                if (parser.getEventType() != XmlPullParser.START_TAG) continue;
+                String lang_code = parser.getAttributeValue(
+                        null, QuestDataXMLAccess.ATTRIBUTE_QUEST_LANGUAGE);
+                if (lang_code != null) lang_codes.add(lang_code);
+            }
+        } finally {
+            in.close();
+        }
+        return lang_codes;
+    }
+
+    /**
+     * Parses the XML quest file once per language and writes the catalog.
+     * Chunks of the XML file that could not be parsed are reported, the build
+     * fails only if the XML file contains no quests for a language.
+     *
+     * @param args the path of the XML quest file, the path of the catalog to
+     *             write and optionally the xsd:language codes to compile.
+     * @throws IOException if a file could not be read or written.
+     * @throws XmlPullParserException if the XML file could not be parsed.
+     */
+    public static void main(String[] args) throws IOException, XmlPullParserException {
+        if (args.length < 2) {
+            System.err.println("Usage: QuestCatalogCompiler <quest xml> <catalog> [lang_code...]");
+            System.exit(2);
+        }
+        Collection<String> lang_codes = (args.length > 2)
+                ? Arrays.asList(args).subList(2, args.length)
+                : findLanguages(args[0]);
+
+        QuestCatalogWriter writer = new QuestCatalogWriter();
+        QuestDataXMLChunkLoader loader = new QuestDataXMLChunkLoader();
+        for (String lang_code : lang_codes) {
+            List<Quest> quests = new ArrayList<>();
+            RuleMap rules = new RuleMap();
+            InputStream in = new FileInputStream(args[0]);
+            try {
+                for (QuestDataXMLChunkLoader.ChunkFailure failure
+                        : loader.getQuests(quests, rules, lang_code, in)) {
+                    System.err.println(args[0] + ": " + failure);
+                }
+            } finally {
+                in.close();
+            }
+            if (quests.isEmpty()) throw new IOException("No quests found for " + lang_code + ".");
+            writer.addLanguage(lang_code, quests, rules);
+            System.out.println("Compiled " + quests.size() + " quests and "
+                    + rules.getRuleIds().size() + " rules for " + lang_code + ", "
+                    + loader.getBytesSaved() + " bytes deduplicated while parsing.");
+        }
+
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,598 @@
+package at.coala.games.tts.tools;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+
+/**
+ * Generates synthetic XML quest files of any size for scale tests. The
+ * distributions of a real quest file are measured first and every generated
+ * quest is drawn from them:
+ *
+ * - the set of categories, so categories occur together as often as in the
+ *   real file,
+ * - every requirement with its own frequency,
+ * - the set of applied rules,
+ * - the number of confs and public_confs and their level histograms,
+ * - the other attributes of confs and public_confs,
+ * - the number of quest texts and comments, and the number of words of each
+ *   text drawn from the vocabulary of the real file,
+ * - the source,
+ * - the weight, if any real quest has one.
+ *
+ * Levels are sorted ascending inside a quest like in the real file. The rules
+ * of the real file are copied, so every applied rule is defined. The output
+ * validates against the quest schema and is the same for the same input,
+ * count and seed.
+ *
+ * Usage: QuestDataGenerator &lt;quest xml&gt; &lt;output xml&gt; &lt;quest count&gt; [seed]
+ *
+ * @author Klaus
+ * @see QuestDataValidator
+ */
+public class QuestDataGenerator {
+
+    /**
+     * A constant containing the default seed.
+     */
+    private static final long DEFAULT_SEED = 1;
+
+    /**
+     * A constant containing the name of the XML quests element.
+     */
+    private static final String ELEMENT_QUESTIONS = "questions";
+
+    /**
+     * A constant containing the name of the XML root element.
+     */
+    private static final String ELEMENT_ROOT = "tts_data";
+
+    /**
+     * A constant containing the xmlpull feature indenting the output.
+     */
+    private static final String FEATURE_INDENT =
+            "http://xmlpull.org/v1/doc/features.html#indent-output";
+
+    /**
+     * A constant containing the language code of the generated quests.
+     */
+    private static final String LANG_CODE = "DE";
+
+    /**
+     * A constant containing the schema location written to the root element.
+     */
+    private static final String SCHEMA_LOCATION = "quest_schema.xsd";
+
+    /**
+     * A constant containing the namespace of XML schema instances.
+     */
+    private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * The sets of categories of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<List<String>> categories = new Histogram<>();
+
+    /**
+     * The number of comments of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> comment_counts = new Histogram<>();
+
+    /**
+     * The attributes other than level of the real confs.
+     *
+     * @see Histogram
+     */
+    private final Histogram<List<String>> conf_attributes = new Histogram<>();
+
+    /**
+     * The number of confs of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> conf_counts = new Histogram<>();
+
+    /**
+     * The levels of the real confs.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> conf_levels = new Histogram<>();
+
+    /**
+     * The attributes other than level of the real public_confs.
+     *
+     * @see Histogram
+     */
+    private final Histogram<List<String>> public_conf_attributes = new Histogram<>();
+
+    /**
+     * The number of public_confs of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> public_conf_counts = new Histogram<>();
+
+    /**
+     * The levels of the real public_confs.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> public_conf_levels = new Histogram<>();
+
+    /**
+     * The number of real quests.
+     */
+    private int quest_count = 0;
+
+    /**
+     * The number of quest texts of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> quest_text_counts = new Histogram<>();
+
+    /**
+     * The number of real quests containing each requirement.
+     *
+     * @see Map
+     */
+    private final Map<String, Integer> requirements = new LinkedHashMap<>();
+
+    /**
+     * The texts of the rules of the real file, accessible by id.
+     *
+     * @see Map
+     */
+    private final Map<String, String> rules = new LinkedHashMap<>();
+
+    /**
+     * The sets of applied rules of the real quests.
+     *
+     * @see Histogram
+     */
+    private final Histogram<List<String>> rule_sets = new Histogram<>();
+
+    /**
+     * The sources of the real quests, null for quests without a source.
+     *
+     * @see Histogram
+     */
+    private final Histogram<String> sources = new Histogram<>();
+
+    /**
+     * The number of real quests with a weight attribute.
+     */
+    private int weighted_quest_count = 0;
+
+    /**
+     * The weights of the real quests, null for quests without a weight.
+     *
+     * @see Histogram
+     */
+    private final Histogram<String> weights = new Histogram<>();
+
+    /**
+     * The number of words of the real quest texts and comments.
+     *
+     * @see Histogram
+     */
+    private final Histogram<Integer> word_counts = new Histogram<>();
+
+    /**
+     * The words of the real quest texts and comments.
+     *
+     * @see Histogram
+     */
+    private final Histogram<String> words = new Histogram<>();
+
+    /**
+     * Adds the level and the other attributes of a configuration to the
+     * histograms.
+     *
+     * @param parser the parser positioned at the configuration.
+     * @param levels the histogram of levels.
+     * @param attributes the histogram of other attributes, stored as list of
+     *                   names and values.
+     * @see Histogram
+     * @see XmlPullParser
+     */
+    private static void addConfiguration(
+            XmlPullParser parser, Histogram<Integer> levels, Histogram<List<String>> attributes) {
+        List<String> other = new ArrayList<>();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String name = parser.getAttributeName(i);
+            if (QuestDataXMLAccess.ATTRIBUTE_QUEST_LEVEL.equals(name)) {
+                levels.add(Integer.parseInt(parser.getAttributeValue(i).trim()));
+            } else {
+                other.add(name);
+                other.add(parser.getAttributeValue(i));
+            }
+        }
+        attributes.add(other);
+    }
+
+    /**
+     * Adds the number of words and the words of a text to the histograms.
+     *
+     * @param text a quest text or comment.
+     */
+    private void addText(String text) {
+        String[] text_words = text.trim().split("\\s+");
+        word_counts.add(text_words.length);
+        for (String word : text_words) words.add(word);
+    }
+
+    /**
+     * Measures the distributions of a real quest file.
+     *
+     * @param in the real quest file.
+     * @throws IOException if the file could not be read.
+     * @throws XmlPullParserException if the file could not be parsed.
+     * @see InputStream
+     */
+    public void analyze(InputStream in) throws IOException, XmlPullParserException {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(in, null);
+        List<String> quest_categories = null;
+        List<String> quest_rules = null;
+        String source = null;
+        String weight = null;
+        String rule_id = null;
+        int texts = 0, comments = 0, confs = 0, public_confs = 0;
+        while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            if (parser.getEventType() == XmlPullParser.END_TAG
+                    && QuestDataXMLAccess.ELEMENT_QUEST.equals(parser.getName())) {
+                Collections.sort(quest_categories);
+                categories.add(quest_categories);
+                rule_sets.add(quest_rules);
+                sources.add(source);
+                weights.add(weight);
+                quest_text_counts.add(texts);
+                comment_counts.add(comments);
+                conf_counts.add(confs);
+                public_conf_counts.add(public_confs);
+                quest_count++;
+                continue;
+            }
+            if (parser.getEventType() != XmlPullParser.START_TAG) continue;
+            switch (parser.getName()) {
+                case QuestDataXMLAccess.ELEMENT_QUEST:
+                    quest_categories = new ArrayList<>();
+                    quest_rules = new ArrayList<>();
+                    source = null;
+                    weight = parser.getAttributeValue(null, QuestDataXMLAccess.ATTRIBUTE_WEIGHT);
+                    if (weight != null) weighted_quest_count++;
+                    texts = comments = confs = public_confs = 0;
+                    break;
+                case QuestDataXMLAccess.ELEMENT_QUEST_TEXT:
+                    texts++;
+                    addText(parser.nextText());
+                    break;
+                case QuestDataXMLAccess.ELEMENT_COMMENT:
+                    comments++;
+                    addText(parser.nextText());
+                    break;
+                case QuestDataXMLAccess.ELEMENT_CATEGORY:
+                    quest_categories.add(parser.getAttributeValue(
+                            null, QuestDataXMLAccess.ATTRIBUTE_CATEGORY_NAME));
+                    break;
+                case QuestDataXMLAccess.ELEMENT_REQUIREMENT:
+                    String requirement = parser.getAttributeValue(
+                            null, QuestDataXMLAccess.ATTRIBUTE_REQUIRES);
+                    Integer count = requirements.get(requirement);
+                    requirements.put(requirement, (count == null) ? 1 : count + 1);
+                    break;
+                case QuestDataXMLAccess.ELEMENT_APPLY_RULE:
+                    quest_rules.add(parser.getAttributeValue(
+                            null, QuestDataXMLAccess.ATTRIBUTE_APPLY_RULE_ID));
+                    break;
+                case QuestDataXMLAccess.ELEMENT_CONFIGURATION:
+                    confs++;
+                    addConfiguration(parser, conf_levels, conf_attributes);
+                    break;
+                case QuestDataXMLAccess.ELEMENT_PUBLIC_CONFIGURATION:
+                    public_confs++;
+                    addConfiguration(parser, public_conf_levels, public_conf_attributes);
+                    break;
+                case QuestDataXMLAccess.ELEMENT_SOURCE:
+                    source = parser.nextText();
+                    break;
+                case QuestDataXMLAccess.ELEMENT_RULE:
+                    rule_id = parser.getAttributeValue(null, QuestDataXMLAccess.ATTRIBUTE_RULE_ID);
+                    break;
+                case QuestDataXMLAccess.ELEMENT_RULE_TEXT:
+                    String lang_code = parser.getAttributeValue(
+                            null, QuestDataXMLAccess.ATTRIBUTE_RULE_LANGUAGE);
+                    String text = parser.nextText();
+                    if (LANG_CODE.equals(lang_code)) rules.put(rule_id, text);
+                    break;
+            }
+        }
+        if (quest_count == 0) throw new IOException("No quests found.");
+    }
+
+    /**
+     * Writes synthetic quests drawn from the measured distributions.
+     *
+     * @param out the stream to write the XML file to.
+     * @param count the number of quests to generate.
+     * @param seed the seed of the random generator.
+     * @throws IOException if the file could not be written.
+     * @throws XmlPullParserException if no serializer is available.
+     * @see OutputStream
+     */
+    public void generate(OutputStream out, int count, long seed)
+            throws IOException, XmlPullParserException {
+        Random random = new Random(seed);
+        XmlSerializer serializer = XmlPullParserFactory.newInstance().newSerializer();
+        serializer.setOutput(out, "UTF-8");
+        try {
+            serializer.setFeature(FEATURE_INDENT, true);
+        } catch (IllegalStateException e) {
+            // It is ok to ignore this exception. The file is only harder to
+            // read without indentation.
+        }
+        serializer.startDocument("UTF-8", null);
+        serializer.setPrefix("xsi", XSI_NAMESPACE);
+        serializer.startTag(null, ELEMENT_ROOT);
+        serializer.attribute(XSI_NAMESPACE, "noNamespaceSchemaLocation", SCHEMA_LOCATION);
+        serializer.startTag(null, ELEMENT_QUESTIONS);
+        for (int i = 0; i < count; i++) generateQuest(serializer, random, i);
+        serializer.endTag(null, ELEMENT_QUESTIONS);
+        if (!rules.isEmpty()) {
+            serializer.startTag(null, QuestDataXMLAccess.ELEMENT_RULES);
+            for (Map.Entry<String, String> rule : rules.entrySet()) {
+                serializer.startTag(null, QuestDataXMLAccess.ELEMENT_RULE);
+                serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_RULE_ID, rule.getKey());
+                writeText(serializer, QuestDataXMLAccess.ELEMENT_RULE_TEXT, rule.getValue(), true);
+                serializer.endTag(null, QuestDataXMLAccess.ELEMENT_RULE);
+            }
+            serializer.endTag(null, QuestDataXMLAccess.ELEMENT_RULES);
+        }
+        serializer.endTag(null, ELEMENT_ROOT);
+        serializer.endDocument();
+    }
+
+    /**
+     * Writes the configurations of a synthetic quest.
+     *
+     * @param serializer the serializer to write to.
+     * @param random the random generator.
+     * @param element the name of the configuration elements.
+     * @param count the number of configurations.
+     * @param levels the histogram of levels.
+     * @param attributes the histogram of other attributes.
+     * @throws IOException if the file could not be written.
+     * @see Histogram
+     * @see Random
+     * @see XmlSerializer
+     */
+    private static void generateConfigurations(
+            XmlSerializer serializer,
+            Random random,
+            String element,
+            int count,
+            Histogram<Integer> levels,
+            Histogram<List<String>> attributes) throws IOException {
+        int[] quest_levels = new int[count];
+        for (int i = 0; i < count; i++) quest_levels[i] = levels.sample(random);
+        Arrays.sort(quest_levels);
+        for (int level : quest_levels) {
+            serializer.startTag(null, element);
+            serializer.attribute(
+                    null, QuestDataXMLAccess.ATTRIBUTE_QUEST_LEVEL, String.valueOf(level));
+            List<String> other = attributes.sample(random);
+            for (int i = 0; i < other.size(); i += 2)
+                serializer.attribute(null, other.get(i), other.get(i + 1));
+            serializer.endTag(null, element);
+        }
+    }
+
+    /**
+     * Writes one synthetic quest.
+     *
+     * @param serializer the serializer to write to.
+     * @param random the random generator.
+     * @param number the number of the quest, written into its first text.
+     * @throws IOException if the file could not be written.
+     * @see Random
+     * @see XmlSerializer
+     */
+    private void generateQuest(XmlSerializer serializer, Random random, int number)
+            throws IOException {
+        serializer.startTag(null, QuestDataXMLAccess.ELEMENT_QUEST);
+        String weight = (weighted_quest_count == 0) ? null : weights.sample(random);
+        if (weight != null) serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_WEIGHT, weight);
+        serializer.startTag(null, QuestDataXMLAccess.ELEMENT_LANGUAGE);
+        serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_QUEST_LANGUAGE, LANG_CODE);
+        int texts = Math.max(1, quest_text_counts.sample(random));
+        for (int i = 0; i < texts; i++) {
+            writeText(serializer, QuestDataXMLAccess.ELEMENT_QUEST_TEXT,
+                    ((i == 0) ? "#" + number + " " : "") + generateText(random), false);
+        }
+        int comments = comment_counts.sample(random);
+        for (int i = 0; i < comments; i++)
+            writeText(serializer, QuestDataXMLAccess.ELEMENT_COMMENT, generateText(random), false);
+        serializer.endTag(null, QuestDataXMLAccess.ELEMENT_LANGUAGE);
+
+        for (String category : categories.sample(random)) {
+            serializer.startTag(null, QuestDataXMLAccess.ELEMENT_CATEGORY);
+            serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_CATEGORY_NAME, category);
+            serializer.endTag(null, QuestDataXMLAccess.ELEMENT_CATEGORY);
+        }
+        for (Map.Entry<String, Integer> requirement : requirements.entrySet()) {
+            if (random.nextInt(quest_count) >= requirement.getValue()) continue;
+            serializer.startTag(null, QuestDataXMLAccess.ELEMENT_REQUIREMENT);
+            serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_REQUIRES, requirement.getKey());
+            serializer.endTag(null, QuestDataXMLAccess.ELEMENT_REQUIREMENT);
+        }
+        for (String rule : rule_sets.sample(random)) {
+            if (!rules.containsKey(rule)) continue;
+            serializer.startTag(null, QuestDataXMLAccess.ELEMENT_APPLY_RULE);
+            serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_APPLY_RULE_ID, rule);
+            serializer.endTag(null, QuestDataXMLAccess.ELEMENT_APPLY_RULE);
+        }
+        generateConfigurations(serializer, random, QuestDataXMLAccess.ELEMENT_CONFIGURATION,
+                Math.max(1, conf_counts.sample(random)), conf_levels, conf_attributes);
+        generateConfigurations(serializer, random, QuestDataXMLAccess.ELEMENT_PUBLIC_CONFIGURATION,
+                public_conf_counts.sample(random), public_conf_levels, public_conf_attributes);
+        String source = sources.sample(random);
+        if (source != null) writeText(serializer, QuestDataXMLAccess.ELEMENT_SOURCE, source, false);
+        serializer.endTag(null, QuestDataXMLAccess.ELEMENT_QUEST);
+    }
+
+    /**
+     * Generates a text out of words of the real file.
+     *
+     * @param random the random generator.
+     * @return the text.
+     * @see Random
+     */
+    private String generateText(Random random) {
+        int count = Math.max(1, word_counts.sample(random));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(' ');
+            text.append(words.sample(random));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Measures the real quest file and writes a synthetic one.
+     *
+     * @param args the path of the real XML quest file, the path of the file
+     *             to write, the number of quests and optionally the seed.
+     * @throws IOException if a file could not be read or written.
+     * @throws XmlPullParserException if the real file could not be parsed.
+     */
+    public static void main(String[] args) throws IOException, XmlPullParserException {
+        if (args.length < 3) {
+            System.err.println("Usage: QuestDataGenerator <quest xml> <output xml> <quest count> [seed]");
+            System.exit(2);
+        }
+        QuestDataGenerator generator = new QuestDataGenerator();
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            generator.analyze(in);
+        } finally {
+            in.close();
+        }
+        int count = Integer.parseInt(args[2]);
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+        try {
+            generator.generate(out, count, seed);
+        } finally {
+            out.close();
+        }
+        System.out.println("Generated " + count + " quests with seed " + seed + " from "
+                + generator.quest_count + " quests.");
+    }
+
+    /**
+     * Writes an element containing only text.
+     *
+     * @param serializer the serializer to write to.
+     * @param element the name of the element.
+     * @param text the text.
+     * @param language true to add the language code as attribute.
+     * @throws IOException if the file could not be written.
+     * @see XmlSerializer
+     */
+    private static void writeText(XmlSerializer serializer, String element, String text,
+                                  boolean language) throws IOException {
+        serializer.startTag(null, element);
+        if (language)
+            serializer.attribute(null, QuestDataXMLAccess.ATTRIBUTE_RULE_LANGUAGE, LANG_CODE);
+        serializer.text(text);
+        serializer.endTag(null, element);
+    }
+
+    /**
+     * Counts values and draws them with their measured frequency. Values are
+     * kept in the order they were added first, so draws only depend on the
+     * input and the random generator.
+     *
+     * @param <T> the type of the values.
+     */
+    private static class Histogram<T> {
+
+        /**
+         * The count of each value.
+         *
+         * @see Map
+         */
+        private final Map<T, Integer> counts = new HashMap<>();
+
+        /**
+         * The running total of counts up to each value, built on the first
+         * draw.
+         */
+        private int[] cumulative;
+
+        /**
+         * The values in the order they were added first.
+         *
+         * @see List
+         */
+        private final List<T> values = new ArrayList<>();
+
+        /**
+         * Counts a value.
+         *
+         * @param value the value, may be null.
+         */
+        void add(T value) {
+            Integer count = counts.get(value);
+            if (count == null) values.add(value);
+            counts.put(value, (count == null) ? 1 : count + 1);
+            cumulative = null;
+        }
+
+        /**
+         * Draws a value with its measured frequency.
+         *
+         * @param random the random generator.
+         * @return the value, or null if no value was counted.
+         * @see Random
+         */
+        T sample(Random random) {
+            if (values.isEmpty()) return null;
+            if (cumulative == null) {
+                cumulative = new int[values.size()];
+                int total = 0;
+                for (int i = 0; i < cumulative.length; i++) {
+                    total += counts.get(values.get(i));
+                    cumulative[i] = total;
+                }
+            }
+            int index = Arrays.binarySearch(
+                    cumulative, random.nextInt(cumulative[cumulative.length - 1]) + 1);
+            return values.get((index < 0) ? -index - 1 : index);
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package at.coala.games.tts.tools;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.dba.xml.QuestDataXMLAccess;
+
+/**
+ * Validates XML quest files, the built-in one as well as quest packs, in one
+ * streaming pass. Every file is checked against the schema and for semantic
+ * errors the schema can not express or the app would silently skip:
+ *
+ * - categories unknown to Quest,
+ * - apply_rule ids not defined in the rules section,
+ * - public_conf elements without a preceding conf element,
+ * - quests that can never be asked because every configuration has level 0,
+ * - public configurations never chosen because the quest has only one conf.
+ *
+ * Memory does not grow with the number of quests: only the state of the
+ * current quest, the rule ids and the distinct ids referenced by quests are
+ * kept. For that the identity constraints of the schema are not checked by
+ * the schema validator, but by this class.
+ *
+ * Usage: QuestDataValidator &lt;schema&gt; &lt;quest xml...&gt;
+ *
+ * Problems are printed as "file:line: error: message". The exit code is 1 if
+ * any file contains an error.
+ *
+ * @author Klaus
+ * @see Quest
+ */
+public class QuestDataValidator extends DefaultHandler {
+
+    /**
+     * A constant containing the Xerces feature toggling identity constraints.
+     */
+    private static final String FEATURE_IDENTITY_CONSTRAINTS =
+            "http://apache.org/xml/features/validation/identity-constraint-checking";
+
+    /**
+     * The number of configurations of the current quest.
+     */
+    private int conf_count;
+
+    /**
+     * The number of errors found by now.
+     */
+    private int errors = 0;
+
+    /**
+     * The name of the file printed with every problem.
+     */
+    private final String file_name;
+
+    /**
+     * The locator of the parser, or null if the parser does not provide one.
+     *
+     * @see Locator
+     */
+    private Locator locator;
+
+    /**
+     * The stream to print problems to.
+     *
+     * @see PrintStream
+     */
+    private final PrintStream out;
+
+    /**
+     * The number of public configurations of the current quest.
+     */
+    private int public_conf_count;
+
+    /**
+     * The line of the second public configuration of the current quest, or 0
+     * if it has less.
+     */
+    private int public_conf_line;
+
+    /**
+     * The number of quests read by now.
+     */
+    private int quest_count = 0;
+
+    /**
+     * The language codes of the current quest.
+     *
+     * @see Set
+     */
+    private final Set<String> quest_languages = new HashSet<>();
+
+    /**
+     * The line of the current quest.
+     */
+    private int quest_line;
+
+    /**
+     * Flag set true if the current quest has a configuration with a level
+     * other than 0, false otherwise.
+     */
+    private boolean reachable;
+
+    /**
+     * The ids of all defined rules.
+     *
+     * @see Set
+     */
+    private final Set<String> rule_ids = new HashSet<>();
+
+    /**
+     * The language codes of the current rule.
+     *
+     * @see Set
+     */
+    private final Set<String> rule_languages = new HashSet<>();
+
+    /**
+     * The line of the first reference of each rule id used by a quest.
+     *
+     * @see Map
+     */
+    private final Map<String, Integer> rule_references = new LinkedHashMap<>();
+
+    /**
+     * The number of warnings found by now.
+     */
+    private int warnings = 0;
+
+    /**
+     * Creates a new QuestDataValidator for one file.
+     *
+     * @param file_name the name of the file printed with every problem.
+     * @param out the stream to print problems to.
+     * @see PrintStream
+     */
+    public QuestDataValidator(String file_name, PrintStream out) {
+        this.file_name = file_name;
+        this.out = out;
+    }
+
+    /**
+     * Checks the rule references of all quests after the document is read.
+     */
+    @Override
+    public void endDocument() {
+        for (Map.Entry<String, Integer> reference : rule_references.entrySet()) {
+            if (!rule_ids.contains(reference.getKey())) report(reference.getValue(), true,
+                    "apply_rule references the undefined rule \"" + reference.getKey() + "\".");
+        }
+    }
+
+    /**
+     * Checks the configurations of a quest at its end tag.
+     *
+     * @param uri the namespace URI.
+     * @param localName the local name.
+     * @param qName the qualified name.
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (!QuestDataXMLAccess.ELEMENT_QUEST.equals(getName(localName, qName))) return;
+        if (conf_count > 0 && !reachable) report(quest_line, false,
+                "The quest is never asked, every configuration has level 0.");
+        if (conf_count == 1 && public_conf_line != 0) report(public_conf_line, false,
+                "The public_conf is never chosen, the quest has only one conf.");
+    }
+
+    /**
+     * Reports a schema error.
+     *
+     * @param e the error.
+     * @see SAXParseException
+     */
+    @Override
+    public void error(SAXParseException e) { report(e.getLineNumber(), true, e.getMessage()); }
+
+    /**
+     * Reports a fatal error, the file can not be read any further.
+     *
+     * @param e the error.
+     * @throws SAXParseException always.
+     * @see SAXParseException
+     */
+    @Override
+    public void fatalError(SAXParseException e) throws SAXParseException {
+        report(e.getLineNumber(), true, e.getMessage());
+        throw e;
+    }
+
+    /**
+     * Returns the number of errors found by now.
+     *
+     * @return the error count.
+     */
+    public int getErrors() { return errors; }
+
+    /**
+     * Returns the level of a configuration.
+     *
+     * @param attributes the attributes of the configuration.
+     * @return the level, or -1 if it is missing or no number.
+     * @see Attributes
+     */
+    private static int getLevel(Attributes attributes) {
+        String level = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_QUEST_LEVEL);
+        if (level == null) return -1;
+        try {
+            return Integer.parseInt(level.trim());
+        } catch (NumberFormatException e) {
+            // The schema validator reports this.
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the current line of the parser.
+     *
+     * @return the line, or 0 if unknown.
+     */
+    private int getLine() { return (locator == null) ? 0 : locator.getLineNumber(); }
+
+    /**
+     * Returns the name of an element, whether the parser reports namespaces
+     * or not.
+     *
+     * @param localName the local name, may be empty.
+     * @param qName the qualified name.
+     * @return the element name.
+     */
+    private static String getName(String localName, String qName) {
+        return (localName == null || localName.isEmpty()) ? qName : localName;
+    }
+
+    /**
+     * Returns the number of quests read by now.
+     *
+     * @return the quest count.
+     */
+    public int getQuestCount() { return quest_count; }
+
+    /**
+     * Returns the number of rules read by now.
+     *
+     * @return the rule count.
+     */
+    public int getRuleCount() { return rule_ids.size(); }
+
+    /**
+     * Returns the number of warnings found by now.
+     *
+     * @return the warning count.
+     */
+    public int getWarnings() { return warnings; }
+
+    /**
+     * Validates the XML quest files.
+     *
+     * @param args the path of the schema followed by the paths of the XML
+     *             quest files.
+     * @throws ParserConfigurationException if no SAX parser is available.
+     * @throws SAXException if the schema could not be read.
+     */
+    public static void main(String[] args) throws ParserConfigurationException, SAXException {
+        if (args.length < 2) {
+            System.err.println("Usage: QuestDataValidator <schema> <quest xml...>");
+            System.exit(2);
+        }
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File(args[0]));
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+
+        boolean valid = true;
+        for (int i = 1; i < args.length; i++) {
+            long start = System.currentTimeMillis();
+            QuestDataValidator validator = new QuestDataValidator(args[i], System.err);
+            try {
+                validator.validate(schema, factory, new File(args[i]));
+            } catch (SAXParseException e) {
+                // Reported by fatalError().
+            } catch (IOException | SAXException e) {
+                validator.report(0, true, e.getMessage());
+            }
+            System.out.println(args[i] + ": " + validator.getQuestCount() + " quests, "
+                    + validator.getRuleCount() + " rules, " + validator.getErrors()
+                    + " errors, " + validator.getWarnings() + " warnings in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            if (validator.getErrors() > 0) valid = false;
+        }
+        if (!valid) System.exit(1);
+    }
+
+    /**
+     * Prints a problem.
+     *
+     * @param line the line of the problem, or 0 if unknown.
+     * @param error true for an error, false for a warning.
+     * @param message the message.
+     */
+    private void report(int line, boolean error, String message) {
+        if (error) errors++;
+        else warnings++;
+        out.println(file_name + ":" + line + ": " + (error ? "error: " : "warning: ") + message);
+    }
+
+    /**
+     * Stores the locator of the parser to report line numbers.
+     *
+     * @param locator the locator.
+     * @see Locator
+     */
+    @Override
+    public void setDocumentLocator(Locator locator) { this.locator = locator; }
+
+    /**
+     * Checks an element at its start tag.
+     *
+     * @param uri the namespace URI.
+     * @param localName the local name.
+     * @param qName the qualified name.
+     * @param attributes the attributes.
+     * @see Attributes
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        String lang_code;
+        switch (getName(localName, qName)) {
+            case QuestDataXMLAccess.ELEMENT_QUEST:
+                quest_count++;
+                quest_line = getLine();
+                conf_count = 0;
+                public_conf_count = 0;
+                public_conf_line = 0;
+                reachable = false;
+                quest_languages.clear();
+                break;
+            case QuestDataXMLAccess.ELEMENT_LANGUAGE:
+                lang_code = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_QUEST_LANGUAGE);
+                if (lang_code != null && !quest_languages.add(lang_code)) report(getLine(), true,
+                        "The quest contains the language \"" + lang_code + "\" twice.");
+                break;
+            case QuestDataXMLAccess.ELEMENT_CATEGORY:
+                String category = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_CATEGORY_NAME);
+                if (category != null && Quest.getCategoryField(category) == null)
+                    report(getLine(), true, "Unknown category_name \"" + category + "\".");
+                break;
+            case QuestDataXMLAccess.ELEMENT_APPLY_RULE:
+                String id = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_APPLY_RULE_ID);
+                if (id != null && !rule_references.containsKey(id))
+                    rule_references.put(id, getLine());
+                break;
+            case QuestDataXMLAccess.ELEMENT_CONFIGURATION:
+                conf_count++;
+                if (getLevel(attributes) != 0) reachable = true;
+                break;
+            case QuestDataXMLAccess.ELEMENT_PUBLIC_CONFIGURATION:
+                if (conf_count == 0) report(getLine(), true,
+                        "The public_conf is not preceded by a conf of the same quest.");
+                if (++public_conf_count == 2) public_conf_line = getLine();
+                if (getLevel(attributes) != 0) reachable = true;
+                break;
+            case QuestDataXMLAccess.ELEMENT_RULE:
+                String rule_id = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_RULE_ID);
+                if (rule_id != null && !rule_ids.add(rule_id))
+                    report(getLine(), true, "The rule \"" + rule_id + "\" is defined twice.");
+                rule_languages.clear();
+                break;
+            case QuestDataXMLAccess.ELEMENT_RULE_TEXT:
+                lang_code = attributes.getValue(QuestDataXMLAccess.ATTRIBUTE_RULE_LANGUAGE);
+                if (lang_code != null && !rule_languages.add(lang_code)) report(getLine(), true,
+                        "The rule contains the language \"" + lang_code + "\" twice.");
+                break;
+        }
+    }
+
+    /**
+     * Streams a file once through the schema validator into this handler.
+     *
+     * @param schema the quest schema.
+     * @param factory the factory creating the SAX parser.
+     * @param file the XML quest file.
+     * @throws IOException if the file could not be read.
+     * @throws ParserConfigurationException if no SAX parser is available.
+     * @throws SAXException if the file is not well-formed.
+     * @see File
+     * @see Schema
+     * @see SAXParserFactory
+     */
+    public void validate(Schema schema, SAXParserFactory factory, File file)
+            throws IOException, ParserConfigurationException, SAXException {
+        ValidatorHandler handler = schema.newValidatorHandler();
+        try {
+            handler.setFeature(FEATURE_IDENTITY_CONSTRAINTS, false);
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            // It is ok to ignore this exception. The schema validator checks
+            // the identity constraints then, which costs memory, but does
+            // not change the result.
+        }
+        handler.setErrorHandler(this);
+        handler.setContentHandler(this);
+        factory.newSAXParser().parse(file, new ValidatorAdapter(handler, this));
+    }
+
+    /**
+     * Forwards the events of a SAX parser to a ValidatorHandler, and the
+     * parse errors to the validator.
+     */
+    private static class ValidatorAdapter extends DefaultHandler {
+
+        /**
+         * The schema validator receiving the events.
+         *
+         * @see ValidatorHandler
+         */
+        private final ValidatorHandler handler;
+
+        /**
+         * The validator receiving parse errors.
+         */
+        private final QuestDataValidator validator;
+
+        /**
+         * Creates a new ValidatorAdapter.
+         *
+         * @param handler the schema validator receiving the events.
+         * @param validator the validator receiving parse errors.
+         * @see ValidatorHandler
+         */
+        ValidatorAdapter(ValidatorHandler handler, QuestDataValidator validator) {
+            this.handler = handler;
+            this.validator = validator;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            handler.characters(ch, start, length);
+        }
+
+        @Override
+        public void endDocument() throws SAXException { handler.endDocument(); }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            handler.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) throws SAXException {
+            handler.endPrefixMapping(prefix);
+        }
+
+        @Override
+        public void error(SAXParseException e) { validator.error(e); }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXParseException {
+            validator.fatalError(e);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            handler.processingInstruction(target, data);
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) { handler.setDocumentLocator(locator); }
+
+        @Override
+        public void startDocument() throws SAXException { handler.startDocument(); }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            handler.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) throws SAXException {
+            handler.startPrefixMapping(prefix, uri);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package at.coala.games.tts.data.quest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+import at.coala.games.tts.data.Game;
+
+/**
+ * Checks that QuestCollection in deck mode draws every linked quest once per
+ * cycle, against the model of the linked quests.
+ *
+ * @author Klaus
+ * @see QuestCollection
+ * @see QuestCollectionModel
+ */
+public class QuestCollectionDeckTest {
+
+    /**
+     * Draws out of decks cover all linked quests after adding, deleting,
+     * pack updates and validations.
+     */
+    @Test
+    public void deckDrawsCoverLinkedQuests() {
+        QuestCollectionModel model =
+                new QuestCollectionModel(QuestCollection.WEIGHTING_DYNAMIC, true);
+        model.assertCoverage();
+        int count = QuestCollectionModel.QUEST_COUNT;
+        model.addQuests(new ArrayList<>(model.generated.subList(count / 2, 3 * count / 4)));
+        model.assertCoverage();
+        model.deleteQuests(15);
+        model.changeDynamicWeights();
+        model.assertCoverage();
+        model.updateQuests();
+        model.assertCoverage();
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+        model.assertCoverage();
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        model.assertCoverage();
+    }
+
+    /**
+     * Decks draw every linked quest once before any is drawn again, and the
+     * quests of levels unlocked during a cycle join the remaining cards.
+     */
+    @Test
+    public void deckDrawsEveryQuestOncePerCycle() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_NONE, true);
+        int low_level = QuestCollectionModel.MAX_LEVEL / 2;
+        for (int c = 0; c < Quest.CATEGORY_SUM; c++) {
+            Set<Quest> low = model.getLinked(c, low_level);
+            int low_draws = low.size() / 2;
+            Set<Quest> drawn = QuestCollectionModel.newSet();
+            for (int i = 0; i < low_draws; i++) {
+                Quest quest = model.quests.getRandomQuest(low_level, c);
+                assertTrue("Repeated before the deck was exhausted.", drawn.add(quest));
+                assertTrue("Drawn above its level.", low.contains(quest));
+            }
+            assertCycle(model, c, low_draws, drawn);
+            for (int cycle = 0; cycle < 3; cycle++)
+                assertCycle(model, c, 0, QuestCollectionModel.newSet());
+        }
+    }
+
+    /**
+     * Deleting a card during a cycle never draws it again, and quests added
+     * during a cycle are drawn within the same cycle.
+     */
+    @Test
+    public void deckSkipsDeletedAndDrawsAddedQuests() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_NONE, true);
+        int level = QuestCollectionModel.MAX_LEVEL;
+        int category = model.getLargestCategory();
+        Set<Quest> drawn = QuestCollectionModel.newSet();
+        for (int i = 0; i < 6; i++) drawn.add(model.quests.getRandomQuest(level, category));
+        Quest last = model.quests.getRandomQuest(level, category);
+        drawn.add(last);
+        model.quests.setDeleteFlag();
+        model.deleted.add(last);
+        int count = QuestCollectionModel.QUEST_COUNT;
+        model.addQuests(new ArrayList<>(model.generated.subList(count / 2, count)));
+
+        Set<Quest> linked = model.getLinked(category, level);
+        int left = 0;
+        for (Quest quest : linked) {
+            if (!drawn.contains(quest)) left++;
+        }
+        for (int i = 0; i < left; i++) {
+            Quest quest = model.quests.getRandomQuest(level, category);
+            assertTrue("Drawn a quest that is not linked.", linked.contains(quest));
+            assertTrue("Repeated before the deck was exhausted.", drawn.add(quest));
+        }
+        assertCycle(model, category, 0, QuestCollectionModel.newSet());
+    }
+
+    /**
+     * Deleting cards drawn at random levels keeps the linked decks in step
+     * with the pools: every draw is linked and every category covers its
+     * linked quests until all of them are deleted.
+     */
+    @Test
+    public void deckFollowsDeletesAtEveryLevel() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_NONE, true);
+        for (int c = 0; c < Quest.CATEGORY_SUM; c++) {
+            for (int draws = 0; ; draws++) {
+                int level = 1 + model.random.nextInt(QuestCollectionModel.MAX_LEVEL);
+                Set<Quest> linked = model.getLinked(c, level);
+                Quest quest = model.quests.getRandomQuest(level, c);
+                if (linked.isEmpty()) {
+                    if (model.getLinked(c, QuestCollectionModel.MAX_LEVEL).isEmpty()) break;
+                    continue;
+                }
+                assertTrue("Drawn a quest that is not linked.", linked.contains(quest));
+                if (draws % 3 != 0) continue;
+                model.quests.setDeleteFlag();
+                model.deleted.add(quest);
+                if (draws % 30 == 0) model.assertCoverage();
+            }
+        }
+        model.assertCoverage();
+    }
+
+    /**
+     * A started cycle goes on where it stopped after switching to other
+     * settings and back, and after the deck mode was set again unchanged.
+     */
+    @Test
+    public void deckCycleGoesOnAfterSwitchingBack() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_NONE, true);
+        int level = QuestCollectionModel.MAX_LEVEL;
+        int category = model.getLargestCategory();
+        Set<Quest> drawn = QuestCollectionModel.newSet();
+        int draws = model.getLinked(category, level).size() / 2;
+        for (int i = 0; i < draws; i++) drawn.add(model.quests.getRandomQuest(level, category));
+
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+        for (int i = 0; i < 5; i++) model.quests.getRandomQuest(level, category);
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        model.quests.setDeckMode(true);
+        assertCycle(model, category, draws, drawn);
+    }
+
+    /**
+     * Draws the rest of a deck cycle at the highest level and checks that
+     * every linked quest was drawn exactly once.
+     *
+     * @param model the collection and its model.
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param draws the number of draws of the cycle done before.
+     * @param drawn the quests drawn before in this cycle.
+     */
+    private static void assertCycle(
+            QuestCollectionModel model, int category, int draws, Set<Quest> drawn) {
+        int level = QuestCollectionModel.MAX_LEVEL;
+        Set<Quest> linked = model.getLinked(category, level);
+        for (int i = draws; i < linked.size(); i++) {
+            Quest quest = model.quests.getRandomQuest(level, category);
+            assertTrue("Drawn a quest that is not linked.", linked.contains(quest));
+            assertTrue("Repeated before the deck was exhausted.", drawn.add(quest));
+        }
+        assertEquals(linked, drawn);
+    }
+}
@@ -0,0 +1,403 @@
+package at.coala.games.tts.data.quest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import at.coala.games.tts.data.Game;
+
+/**
+ * A collection under test together with a plain model of its linked quests:
+ * a quest is linked for a category and level if it is in the collection, not
+ * flagged as deleted, valid for the settings and its min level is not higher
+ * than the level, just like the old walk along the category chains. Every
+ * change is applied to both, the collection and the model. The quests are
+ * generated with a fixed seed, the draws use the random numbers of Game.
+ *
+ * @author Klaus
+ * @see QuestCollection
+ */
+class QuestCollectionModel {
+
+    /**
+     * A constant containing the number of draws per linked quest and weight
+     * ratio for checking that every linked quest is drawn.
+     */
+    private static final int COVERAGE_DRAWS = 40;
+
+    /**
+     * A constant containing the highest level of the generated quests.
+     */
+    static final int MAX_LEVEL = 10;
+
+    /**
+     * A constant containing the number of generated quests.
+     */
+    static final int QUEST_COUNT = 240;
+
+    /**
+     * The sex restriction of the last validation, or null.
+     */
+    private Integer all_players_are;
+
+    /**
+     * True if the collection draws out of decks.
+     */
+    private final boolean deck_mode;
+
+    /**
+     * The quests of the model that were flagged as deleted.
+     *
+     * @see Set
+     */
+    final Set<Quest> deleted = newSet();
+
+    /**
+     * The dynamic weight of each quest of the model it was changed for.
+     *
+     * @see Map
+     */
+    private final Map<Quest, Long> dynamic_weights = new IdentityHashMap<>();
+
+    /**
+     * The friendship level of the last validation.
+     */
+    private int friendship_level;
+
+    /**
+     * The generated quests, the first half is added at the start, the rest
+     * is left for adding and updating.
+     *
+     * @see List
+     */
+    final List<Quest> generated;
+
+    /**
+     * The location of the last validation.
+     */
+    private int location;
+
+    /**
+     * The quests of the model in the collection.
+     *
+     * @see List
+     */
+    final List<Quest> present = new ArrayList<>();
+
+    /**
+     * The collection under test.
+     *
+     * @see QuestCollection
+     */
+    final QuestCollection quests = new QuestCollection();
+
+    /**
+     * The random numbers choosing what the scenarios do.
+     *
+     * @see Random
+     */
+    final Random random = new Random(20);
+
+    /**
+     * The requirements of the last validation.
+     *
+     * @see List
+     */
+    private List<Integer> requirements;
+
+    /**
+     * The weighting the collection draws with.
+     */
+    final int weighting;
+
+    /**
+     * Creates a collection drawing with equal chances out of the first half
+     * of the generated quests validated for a private game.
+     */
+    QuestCollectionModel() { this(QuestCollection.WEIGHTING_NONE, false); }
+
+    /**
+     * Creates a collection drawing with replacement out of the first half of
+     * the generated quests validated for a private game.
+     *
+     * @param weighting takes a final QuestCollection.WEIGHTING_ flag.
+     */
+    QuestCollectionModel(int weighting) { this(weighting, false); }
+
+    /**
+     * Creates a collection out of the first half of the generated quests
+     * validated for a private game.
+     *
+     * @param weighting takes a final QuestCollection.WEIGHTING_ flag.
+     * @param deck_mode true if the collection should draw out of decks.
+     */
+    QuestCollectionModel(int weighting, boolean deck_mode) {
+        this.weighting = weighting;
+        this.deck_mode = deck_mode;
+        quests.setWeighting(weighting);
+        quests.setDeckMode(deck_mode);
+        generated = createQuests(new Random(7), QUEST_COUNT);
+        for (Quest quest : generated.subList(0, QUEST_COUNT / 2)) {
+            quests.addQuest(quest);
+            present.add(quest);
+        }
+        validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+    }
+
+    /**
+     * Adds quests to the collection and the model.
+     *
+     * @param added the quests to add.
+     * @see List
+     */
+    void addQuests(List<Quest> added) {
+        quests.addQuests(added);
+        present.addAll(added);
+    }
+
+    /**
+     * Checks that every category draws all of its linked quests and only
+     * them for every level, and that the linked quest text count matches
+     * the model. Out of decks, a started cycle is drawn to its end before
+     * the next one covers all quests.
+     */
+    void assertCoverage() {
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int text_count = 0;
+            for (int c = 0; c < Quest.CATEGORY_SUM; c++) {
+                Set<Quest> linked = getLinked(c, level);
+                if (linked.isEmpty()) {
+                    assertNull(quests.getRandomQuest(level, c));
+                    continue;
+                }
+                long total_weight = 0;
+                long min_weight = Long.MAX_VALUE;
+                for (Quest quest : linked) {
+                    long weight = getWeight(quest);
+                    total_weight += weight;
+                    min_weight = Math.min(min_weight, weight);
+                    text_count += quest.quest_texts.size();
+                }
+                long draws = deck_mode ? 2 * linked.size()
+                        : COVERAGE_DRAWS * (total_weight / min_weight + 1);
+                Set<Quest> drawn = newSet();
+                for (long i = 0; i < draws; i++) {
+                    Quest quest = quests.getRandomQuest(level, c);
+                    assertNotNull(quest);
+                    if (!linked.contains(quest))
+                        fail("Drawn a quest that is not linked for level " + level + ".");
+                    drawn.add(quest);
+                }
+                assertEquals("Linked quests not drawn for level " + level + ".",
+                        linked.size(), drawn.size());
+            }
+            quests.getRandomQuest(level, 0);
+            assertEquals("Linked quest texts for level " + level + ".",
+                    text_count, quests.getLinkedQuestTextCount());
+        }
+    }
+
+    /**
+     * Sets random dynamic weights for a part of the quests.
+     */
+    void changeDynamicWeights() {
+        for (Quest quest : present) {
+            if (random.nextInt(3) != 0) continue;
+            long weight = 1 + random.nextInt(3 * QuestCollection.DYNAMIC_WEIGHT_SCALE);
+            quests.setDynamicWeight(quest, weight);
+            dynamic_weights.put(quest, weight);
+        }
+    }
+
+    /**
+     * Generates quests of random categories, levels, players, partners,
+     * friendship levels, requirements, weights and texts.
+     *
+     * @param random the random numbers to generate the quests with.
+     * @param count the number of quests.
+     * @return the quests.
+     */
+    private static List<Quest> createQuests(Random random, int count) {
+        int[] friendship_levels = {Game.FRIENDS_BENEFITS, Game.FRIENDS_GOOD, Game.FRIENDS_LOOSE};
+        QuestCreator creator = new QuestCreator();
+        List<Quest> quests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int category = random.nextInt(Quest.CATEGORY_SUM);
+            int level = 1 + random.nextInt(MAX_LEVEL);
+            Integer player = (random.nextInt(3) == 0)
+                    ? random.nextInt(Quest.PLAYER_ONE + 1) : null;
+            Integer partner = (random.nextInt(3) == 0)
+                    ? random.nextInt(Quest.PARTNER_YES + 1) : null;
+            creator.startNewQuest(category, "quest " + i, level, player, partner,
+                    friendship_levels[random.nextInt(friendship_levels.length)], null, null);
+            if (random.nextInt(4) == 0) {
+                creator.addCategory((category + 1 + random.nextInt(Quest.CATEGORY_SUM - 1))
+                        % Quest.CATEGORY_SUM);
+            }
+            for (int t = random.nextInt(3); t > 0; t--)
+                creator.addText("quest " + i + " text " + t);
+            if (level < MAX_LEVEL && random.nextInt(3) == 0) {
+                creator.addConfiguration(Game.LOCATION_PRIVATE,
+                        level + 1 + random.nextInt(MAX_LEVEL - level), null, null,
+                        friendship_levels[random.nextInt(friendship_levels.length)], null, null);
+            }
+            if (random.nextInt(3) == 0) {
+                creator.addConfiguration(Game.LOCATION_PUBLIC, 1 + random.nextInt(MAX_LEVEL),
+                        null, null, null, null, null);
+            }
+            if (random.nextInt(5) == 0)
+                creator.addRequirement(random.nextInt(Quest.REQUIREMENT_POOL + 1));
+            creator.setWeight(1 + random.nextInt(5));
+            quests.add(creator.craftQuest());
+        }
+        return quests;
+    }
+
+    /**
+     * Draws random quests and flags some of them as deleted.
+     *
+     * @param count the number of quests to delete.
+     */
+    void deleteQuests(int count) {
+        for (int i = 0; i < count; i++) {
+            Quest quest = quests.getRandomQuest(MAX_LEVEL, random.nextInt(Quest.CATEGORY_SUM));
+            if (quest == null) continue;
+            quests.setDeleteFlag();
+            deleted.add(quest);
+        }
+    }
+
+    /**
+     * Returns the category with the most quests linked for the highest
+     * level.
+     *
+     * @return a final Quest.CATEGORY_ flag.
+     */
+    int getLargestCategory() {
+        int largest = 0;
+        for (int c = 1; c < Quest.CATEGORY_SUM; c++) {
+            if (getLinked(c, MAX_LEVEL).size() > getLinked(largest, MAX_LEVEL).size())
+                largest = c;
+        }
+        return largest;
+    }
+
+    /**
+     * Returns the quests of the model linked for a category and level.
+     *
+     * @param category takes a final Quest.CATEGORY_ flag.
+     * @param level the level.
+     * @return a new set of quests.
+     */
+    Set<Quest> getLinked(int category, int level) {
+        Set<Quest> linked = newSet();
+        for (Quest quest : present) {
+            if (deleted.contains(quest) || !quest.categories.contains(category)) continue;
+            if (quest.isValid(location, friendship_level, all_players_are, requirements)
+                    && quest.getMinLevel() <= level)
+                linked.add(quest);
+        }
+        return linked;
+    }
+
+    /**
+     * Returns the weight a quest is drawn with by the model.
+     *
+     * @param quest the quest.
+     * @return the weight.
+     */
+    long getWeight(Quest quest) {
+        switch (weighting) {
+            case QuestCollection.WEIGHTING_QUEST:
+                return quest.weight;
+            case QuestCollection.WEIGHTING_TEXTS:
+                return (long) quest.weight * quest.quest_texts.size();
+            case QuestCollection.WEIGHTING_DYNAMIC:
+                Long weight = dynamic_weights.get(quest);
+                return (weight == null)
+                        ? (long) quest.weight * QuestCollection.DYNAMIC_WEIGHT_SCALE : weight;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns a new set comparing quests by identity.
+     *
+     * @return the set.
+     */
+    static Set<Quest> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Quest, Boolean>());
+    }
+
+    /**
+     * Applies a pack update to the collection and the model: some quests are
+     * removed, some are replaced by a changed version taking over their
+     * delete flag, and half of the unused generated quests is added.
+     */
+    void updateQuests() {
+        List<Quest> removed = new ArrayList<>();
+        Map<Quest, Quest> changed = new IdentityHashMap<>();
+        List<Quest> unused = new ArrayList<>(generated);
+        unused.removeAll(present);
+        for (Quest quest : present) {
+            if (unused.size() < 2) break;
+            int action = random.nextInt(8);
+            if (action == 0) removed.add(quest);
+            else if (action == 1 || (action == 2 && deleted.contains(quest)))
+                changed.put(quest, unused.remove(unused.size() - 1));
+        }
+        List<Quest> added = new ArrayList<>(unused.subList(0, unused.size() / 2));
+        quests.updateQuests(removed, added, changed);
+
+        present.removeAll(removed);
+        deleted.removeAll(removed);
+        for (Map.Entry<Quest, Quest> entry : changed.entrySet()) {
+            present.remove(entry.getKey());
+            present.add(entry.getValue());
+            if (deleted.remove(entry.getKey())) deleted.add(entry.getValue());
+            dynamic_weights.remove(entry.getKey());
+        }
+        for (Quest quest : removed) dynamic_weights.remove(quest);
+        present.addAll(added);
+    }
+
+    /**
+     * Validates the collection and the model for new settings without a sex
+     * restriction.
+     *
+     * @param location takes a final Game.LOCATION_ flag.
+     * @param friendship_level takes a final Game.FRIENDS_ flag.
+     * @param requirements the requirements, or null if they are not checked.
+     * @see List
+     */
+    void validate(int location, int friendship_level, List<Integer> requirements) {
+        validate(location, friendship_level, null, requirements);
+    }
+
+    /**
+     * Validates the collection and the model for new settings.
+     *
+     * @param location takes a final Game.LOCATION_ flag.
+     * @param friendship_level takes a final Game.FRIENDS_ flag.
+     * @param all_players_are null, or a final User.SEX_ flag.
+     * @param requirements the requirements, or null if they are not checked.
+     * @see List
+     */
+    void validate(int location, int friendship_level, Integer all_players_are,
+                  List<Integer> requirements) {
+        this.location = location;
+        this.friendship_level = friendship_level;
+        this.all_players_are = all_players_are;
+        this.requirements = requirements;
+        quests.validateCollection(location, friendship_level, all_players_are, requirements);
+    }
+}
@@ -0,0 +1,208 @@
+package at.coala.games.tts.data.quest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.User;
+
+/**
+ * Checks the quests QuestCollection draws against a plain model of the
+ * linked quests after adding, deleting, pack updates and validations.
+ *
+ * @author Klaus
+ * @see QuestCollection
+ * @see QuestCollectionModel
+ */
+public class QuestCollectionTest {
+
+    /**
+     * The collection under test and its model.
+     *
+     * @see QuestCollectionModel
+     */
+    private QuestCollectionModel model;
+
+    /**
+     * Creates the collection and its model.
+     */
+    @Before
+    public void setUp() { model = new QuestCollectionModel(); }
+
+    /**
+     * Every linked quest and only linked quests are drawn for every category
+     * and level after every kind of change.
+     */
+    @Test
+    public void drawsCoverLinkedQuests() {
+        model.assertCoverage();
+
+        int count = QuestCollectionModel.QUEST_COUNT;
+        model.addQuests(new ArrayList<>(model.generated.subList(count / 2, 3 * count / 4)));
+        model.assertCoverage();
+
+        model.deleteQuests(15);
+        model.assertCoverage();
+
+        model.updateQuests();
+        model.assertCoverage();
+
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+        model.assertCoverage();
+
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_GOOD,
+                Arrays.asList(Quest.REQUIREMENT_CREAM, Quest.REQUIREMENT_POOL));
+        model.assertCoverage();
+
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        model.assertCoverage();
+
+        model.deleteQuests(5);
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+        model.assertCoverage();
+    }
+
+    /**
+     * A quest flagged as deleted is never drawn again, also after the
+     * collection was validated again.
+     */
+    @Test
+    public void deletedQuestIsNeverDrawnAgain() {
+        int level = QuestCollectionModel.MAX_LEVEL;
+        int category = model.getLargestCategory();
+        Quest quest = model.quests.getRandomQuest(level, category);
+        model.quests.setDeleteFlag();
+        model.deleted.add(quest);
+        Set<Quest> linked = model.getLinked(category, level);
+        assertFalse(linked.contains(quest));
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < 40 * linked.size(); i++)
+                assertTrue(linked.contains(model.quests.getRandomQuest(level, category)));
+            model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        }
+    }
+
+    /**
+     * Switching the level with every draw only draws quests linked for the
+     * current level, also right after quests were deleted or added.
+     */
+    @Test
+    public void drawsFollowEveryLevelChange() {
+        int category = model.getLargestCategory();
+        List<Set<Quest>> linked = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            linked.clear();
+            for (int level = 0; level <= QuestCollectionModel.MAX_LEVEL; level++)
+                linked.add(model.getLinked(category, level));
+            for (int i = 0; i < 5000; i++) {
+                int level = 1 + model.random.nextInt(QuestCollectionModel.MAX_LEVEL);
+                Quest quest = model.quests.getRandomQuest(level, category);
+                if (linked.get(level).isEmpty()) assertNull(quest);
+                else assertTrue(linked.get(level).contains(quest));
+            }
+            model.deleteQuests(5);
+            int count = QuestCollectionModel.QUEST_COUNT;
+            if (round == 0) model.addQuests(model.generated.subList(count / 2, count / 2 + 30));
+        }
+    }
+
+    /**
+     * Deleting quests drawn at random levels keeps every level of the pools
+     * intact until all quests are deleted: after each delete every level
+     * draws only linked quests and the text counts match.
+     */
+    @Test
+    public void deletesKeepEveryLevelUntilPoolsAreEmpty() {
+        int deletes = 0;
+        for (int c = 0; c < Quest.CATEGORY_SUM; c++) {
+            for (;;) {
+                int level = 1 + model.random.nextInt(QuestCollectionModel.MAX_LEVEL);
+                Quest quest = model.quests.getRandomQuest(level, c);
+                if (quest == null)
+                    quest = model.quests.getRandomQuest(QuestCollectionModel.MAX_LEVEL, c);
+                if (quest == null) break;
+                model.quests.setDeleteFlag();
+                model.deleted.add(quest);
+                if (++deletes % 10 == 0) model.assertCoverage();
+            }
+        }
+        model.assertCoverage();
+        for (int c = 0; c < Quest.CATEGORY_SUM; c++)
+            assertTrue(model.getLinked(c, QuestCollectionModel.MAX_LEVEL).isEmpty());
+    }
+
+    /**
+     * Validating for every location, friendship level and sex restriction
+     * with different requirements links the same quests as the model, also
+     * for a friendship level outside of the eligibility contexts.
+     */
+    @Test
+    public void validationMatchesEveryContext() {
+        model.deleteQuests(10);
+        List<List<Integer>> requirement_sets = new ArrayList<>();
+        requirement_sets.add(null);
+        requirement_sets.add(Collections.<Integer>emptyList());
+        for (int r = 0; r <= Quest.REQUIREMENT_POOL; r++) {
+            List<Integer> requirements = new ArrayList<>();
+            for (int i = 0; i <= Quest.REQUIREMENT_POOL; i++) if (i != r) requirements.add(i);
+            requirement_sets.add(requirements);
+        }
+        Integer[] restrictions = {null, User.SEX_FEMALE, User.SEX_MALE};
+        int[] friendship_levels = {Game.FRIENDS_BENEFITS, Game.FRIENDS_GOOD, Game.FRIENDS_LOOSE};
+        for (int location : new int[] {Game.LOCATION_PRIVATE, Game.LOCATION_PUBLIC}) {
+            for (int friendship_level : friendship_levels) {
+                for (Integer all_players_are : restrictions) {
+                    List<Integer> requirements =
+                            requirement_sets.get(model.random.nextInt(requirement_sets.size()));
+                    model.validate(location, friendship_level, all_players_are, requirements);
+                    model.assertCoverage();
+                }
+            }
+        }
+        for (List<Integer> requirements : requirement_sets) {
+            model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_GOOD, null, requirements);
+            model.assertCoverage();
+        }
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_LOOSE + 1, null, null);
+        model.assertCoverage();
+        model.addQuests(model.generated.subList(QuestCollectionModel.QUEST_COUNT / 2,
+                QuestCollectionModel.QUEST_COUNT / 2 + 20));
+        model.assertCoverage();
+    }
+
+    /**
+     * Switching back to settings validated before draws the same quests as
+     * the model, also when quests are deleted, added and updated between
+     * the switches.
+     */
+    @Test
+    public void switchingBackToCachedSettingsMatchesModel() {
+        List<Integer> requirements = Arrays.asList(Quest.REQUIREMENT_CREAM);
+        for (int round = 0; round < 4; round++) {
+            model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, requirements);
+            model.assertCoverage();
+            model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+            model.assertCoverage();
+            model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, requirements);
+            model.deleteQuests(3);
+            model.assertCoverage();
+            model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+            model.assertCoverage();
+            if (round == 1) {
+                int count = QuestCollectionModel.QUEST_COUNT;
+                model.addQuests(model.generated.subList(count / 2, count / 2 + 10));
+            }
+            if (round == 2) model.updateQuests();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package at.coala.games.tts.data.quest;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import at.coala.games.tts.data.Game;
+
+/**
+ * Checks that the weighted and dynamic draws of QuestCollection cover all
+ * linked quests and follow the weights of the model. The draws use the
+ * random numbers of Game, so the chi-squared bound is set wide enough to
+ * never fail by chance.
+ *
+ * @author Klaus
+ * @see QuestCollection
+ * @see QuestCollectionModel
+ */
+public class QuestCollectionWeightingTest {
+
+    /**
+     * A constant containing the number of draws for checking the frequency
+     * of the quests.
+     */
+    private static final int FREQUENCY_DRAWS = 200000;
+
+    /**
+     * Unweighted draws give every linked quest the same chance, also the
+     * lowest and the highest level quest of a pool.
+     */
+    @Test
+    public void uniformDrawsMatchEqualChances() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_NONE);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL / 2);
+        model.deleteQuests(10);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+    }
+
+    /**
+     * Draws by quest weight and by quest text weight out of alias tables
+     * cover all linked quests after adding, deleting, pack updates and
+     * validations.
+     */
+    @Test
+    public void aliasDrawsCoverLinkedQuests() {
+        for (int weighting : new int[] {
+                QuestCollection.WEIGHTING_QUEST, QuestCollection.WEIGHTING_TEXTS}) {
+            QuestCollectionModel model = new QuestCollectionModel(weighting);
+            model.assertCoverage();
+            model.deleteQuests(15);
+            model.assertCoverage();
+            model.updateQuests();
+            model.assertCoverage();
+            model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+            model.assertCoverage();
+            model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+            model.assertCoverage();
+        }
+    }
+
+    /**
+     * Draws out of alias tables follow the weights of the quests, also after
+     * deletes, level changes and pack updates left removed elements in the
+     * tables.
+     */
+    @Test
+    public void aliasDrawsMatchWeights() {
+        for (int weighting : new int[] {
+                QuestCollection.WEIGHTING_QUEST, QuestCollection.WEIGHTING_TEXTS}) {
+            QuestCollectionModel model = new QuestCollectionModel(weighting);
+            assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+            assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL / 2);
+            model.deleteQuests(10);
+            model.updateQuests();
+            assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+            assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL / 2);
+        }
+    }
+
+    /**
+     * Draws by dynamic weight out of binary indexed trees cover all linked
+     * quests after weight changes, adding, deleting, pack updates and
+     * validations.
+     */
+    @Test
+    public void treeDrawsCoverLinkedQuests() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_DYNAMIC);
+        model.assertCoverage();
+        model.changeDynamicWeights();
+        model.assertCoverage();
+        int count = QuestCollectionModel.QUEST_COUNT;
+        model.addQuests(model.generated.subList(count / 2, count / 2 + 20));
+        model.deleteQuests(15);
+        model.changeDynamicWeights();
+        model.assertCoverage();
+        model.updateQuests();
+        model.assertCoverage();
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_LOOSE, null);
+        model.assertCoverage();
+    }
+
+    /**
+     * Draws out of binary indexed trees follow the dynamic weights, also
+     * after weight changes, deletes, pack updates and switching back to a
+     * snapshot taken before weights were changed, also more than once.
+     */
+    @Test
+    public void treeDrawsMatchDynamicWeights() {
+        QuestCollectionModel model = new QuestCollectionModel(QuestCollection.WEIGHTING_DYNAMIC);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        model.changeDynamicWeights();
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        model.deleteQuests(10);
+        model.updateQuests();
+        model.changeDynamicWeights();
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL / 2);
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, null);
+        model.changeDynamicWeights();
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        model.changeDynamicWeights();
+        model.validate(Game.LOCATION_PUBLIC, Game.FRIENDS_GOOD, null);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        model.changeDynamicWeights();
+        model.changeDynamicWeights();
+        model.validate(Game.LOCATION_PRIVATE, Game.FRIENDS_BENEFITS, null);
+        assertDrawnByWeight(model, QuestCollectionModel.MAX_LEVEL);
+        model.deleteQuests(5);
+        model.assertCoverage();
+    }
+
+    /**
+     * Checks with a chi-squared test that the draws of the category with
+     * the most linked quests follow the weights of the model.
+     *
+     * @param model the collection and its model.
+     * @param level the level to draw at.
+     */
+    static void assertDrawnByWeight(QuestCollectionModel model, int level) {
+        int category = model.getLargestCategory();
+        Set<Quest> linked = model.getLinked(category, level);
+        Map<Quest, Integer> hits = new IdentityHashMap<>();
+        for (int i = 0; i < FREQUENCY_DRAWS; i++) {
+            Quest quest = model.quests.getRandomQuest(level, category);
+            assertTrue("Drawn a quest that is not linked.", linked.contains(quest));
+            Integer count = hits.get(quest);
+            hits.put(quest, (count == null) ? 1 : count + 1);
+        }
+        long total_weight = 0;
+        for (Quest quest : linked) total_weight += model.getWeight(quest);
+        double chi_squared = 0;
+        for (Quest quest : linked) {
+            double expected = (double) FREQUENCY_DRAWS * model.getWeight(quest) / total_weight;
+            Integer count = hits.get(quest);
+            double difference = ((count == null) ? 0 : count) - expected;
+            chi_squared += difference * difference / expected;
+        }
+        int freedom = linked.size() - 1;
+        assertTrue("Draws do not follow the weights, chi squared " + chi_squared
+                + " for " + freedom + " degrees of freedom.",
+                chi_squared < freedom + 8 * Math.sqrt(2.0 * freedom) + 10);
+    }
+}
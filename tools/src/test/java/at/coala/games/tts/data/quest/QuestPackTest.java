@@ -0,0 +1,236 @@
+package at.coala.games.tts.data.quest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import at.coala.games.tts.data.Game;
+
+/**
+ * Diffs versions of a quest pack and checks the computed delta.
+ *
+ * @author Klaus
+ * @see QuestPack
+ */
+public class QuestPackTest {
+
+    /**
+     * A new pack adds all of its quests and rules.
+     */
+    @Test
+    public void newPackAddsEverything() {
+        QuestPack pack = createPack(createRules("r0", "Regel"), "a", "b");
+        pack.diff(null);
+
+        assertTrue(pack.hasDelta());
+        assertEquals(pack.getQuests(), pack.getAdded());
+        assertTrue(pack.getChanged().isEmpty());
+        assertTrue(pack.getRemoved().isEmpty());
+        RuleMap rule_map = new RuleMap();
+        pack.apply(new QuestCollection(), rule_map);
+        assertEquals("Regel", rule_map.getRule("r0"));
+    }
+
+    /**
+     * A pack read again without changes has no delta and reuses the quest
+     * instances of the previous version.
+     */
+    @Test
+    public void unchangedPackReusesInstances() {
+        QuestPack previous = createPack(createRules("r0", "Regel"), "a", "b", "c");
+        previous.diff(null);
+        QuestPack pack = createPack(createRules("r0", "Regel"), "a", "b", "c");
+        pack.diff(previous);
+
+        assertFalse(pack.hasDelta());
+        for (int i = 0; i < 3; i++)
+            assertSame(previous.getQuests().get(i), pack.getQuests().get(i));
+    }
+
+    /**
+     * Appended quests are added, quests missing in the new version are
+     * removed, and the other quests are kept.
+     */
+    @Test
+    public void addedAndRemovedQuests() {
+        QuestPack first = createPack(new RuleMap(), "a", "b", "c");
+        first.diff(null);
+        QuestPack second = createPack(new RuleMap(), "a", "b", "c", "d");
+        second.diff(first);
+
+        assertEquals(Collections.singletonList(second.getQuests().get(3)), second.getAdded());
+        assertTrue(second.getChanged().isEmpty());
+        assertTrue(second.getRemoved().isEmpty());
+
+        QuestPack third = createPack(new RuleMap(), "a", "c", "d");
+        third.diff(second);
+
+        assertTrue(third.getAdded().isEmpty());
+        assertTrue(third.getChanged().isEmpty());
+        assertEquals(Collections.singletonList(first.getQuests().get(1)), third.getRemoved());
+        assertSame(first.getQuests().get(2), third.getQuests().get(1));
+        assertSame(second.getQuests().get(3), third.getQuests().get(2));
+    }
+
+    /**
+     * A quest edited in place is reported as changed, keyed by the instance
+     * of the previous version.
+     */
+    @Test
+    public void editedQuestIsChanged() {
+        QuestPack previous = createPack(new RuleMap(), "a", "b", "c");
+        previous.diff(null);
+        QuestPack pack = createPack(new RuleMap(), "a", "b2", "c");
+        pack.diff(previous);
+
+        assertTrue(pack.getAdded().isEmpty());
+        assertTrue(pack.getRemoved().isEmpty());
+        assertEquals(1, pack.getChanged().size());
+        assertSame(pack.getQuests().get(1), pack.getChanged().get(previous.getQuests().get(1)));
+    }
+
+    /**
+     * A quest removed in one place and a quest added in another are not
+     * paired as a changed quest.
+     */
+    @Test
+    public void removedAndAddedElsewhereAreNotChanged() {
+        QuestPack previous = createPack(new RuleMap(), "a", "b", "c");
+        previous.diff(null);
+        QuestPack pack = createPack(new RuleMap(), "a", "c", "d");
+        pack.diff(previous);
+
+        assertTrue(pack.getChanged().isEmpty());
+        assertEquals(Collections.singletonList(previous.getQuests().get(1)), pack.getRemoved());
+        assertEquals(Collections.singletonList(pack.getQuests().get(2)), pack.getAdded());
+        assertSame(previous.getQuests().get(2), pack.getQuests().get(1));
+    }
+
+    /**
+     * Quests are only equal if all of their content is equal, so a quest
+     * with a colliding hash is never taken for another one.
+     */
+    @Test
+    public void equalContentComparesEverything() {
+        QuestPack pack = createPack(new RuleMap(), "a", "a", "b");
+        List<Quest> quests = pack.getQuests();
+        assertTrue(QuestPack.hasEqualContent(quests.get(0), quests.get(1)));
+        assertFalse(QuestPack.hasEqualContent(quests.get(0), quests.get(2)));
+
+        QuestCreator creator = new QuestCreator();
+        creator.startNewQuest(Quest.CATEGORY_DRINKING, "a", 2, Quest.PLAYER_ONE,
+                Quest.PARTNER_NO, Game.FRIENDS_LOOSE, null, null);
+        assertFalse(QuestPack.hasEqualContent(quests.get(0), creator.craftQuest()));
+    }
+
+    /**
+     * Removed rules are removed from the rule map, changed and added rules
+     * are stored, and unchanged rules are not part of the delta.
+     */
+    @Test
+    public void changedRulesAreApplied() {
+        QuestPack previous = createPack(createRules("r0", "alt", "r1", "weg", "r2", "gleich"), "a");
+        previous.diff(null);
+        RuleMap rule_map = new RuleMap();
+        previous.apply(new QuestCollection(), rule_map);
+
+        QuestPack pack = createPack(createRules("r0", "neu", "r2", "gleich", "r3", "dazu"), "a");
+        pack.diff(previous);
+        assertTrue(pack.hasDelta());
+        pack.apply(new QuestCollection(), rule_map);
+
+        assertEquals("neu", rule_map.getRule("r0"));
+        assertFalse(rule_map.getRuleIds().contains("r1"));
+        assertNull(rule_map.getRule("r1"));
+        assertEquals("gleich", rule_map.getRule("r2"));
+        assertEquals("dazu", rule_map.getRule("r3"));
+    }
+
+    /**
+     * Two packs defining the same rule id as the game do not remove each
+     * other's rule: removing a rule brings back the text of the other pack,
+     * and once no pack defines the id, the text of the game.
+     */
+    @Test
+    public void sharedRulesAreRestored() {
+        RuleMap rule_map = createRules("r0", "Spiel");
+        QuestCollection collection = new QuestCollection();
+        QuestPack first = createPack("eins", createRules("r0", "eins"), "a");
+        first.diff(null);
+        first.apply(collection, rule_map);
+        QuestPack second = createPack("zwei", createRules("r0", "zwei", "r1", "zwei"), "b");
+        second.diff(null);
+        second.apply(collection, rule_map);
+        assertEquals("zwei", rule_map.getRule("r0"));
+
+        QuestPack second_removed = createPack("zwei", new RuleMap());
+        second_removed.diff(second);
+        second_removed.apply(collection, rule_map);
+        assertEquals("eins", rule_map.getRule("r0"));
+        assertNull(rule_map.getRule("r1"));
+
+        QuestPack first_changed = createPack("eins", createRules("r0", "neu"), "a");
+        first_changed.diff(first);
+        first_changed.apply(collection, rule_map);
+        assertEquals("neu", rule_map.getRule("r0"));
+
+        QuestPack first_removed = createPack("eins", new RuleMap());
+        first_removed.diff(first_changed);
+        first_removed.apply(collection, rule_map);
+        assertEquals("Spiel", rule_map.getRule("r0"));
+    }
+
+    /**
+     * Creates a quest pack with one quest per text.
+     *
+     * @param rules the rules of the pack.
+     * @param texts the text of each quest.
+     * @return the pack, not diffed yet.
+     * @see QuestPack
+     */
+    private static QuestPack createPack(RuleMap rules, String... texts) {
+        return createPack("pack", rules, texts);
+    }
+
+    /**
+     * Creates a named quest pack with one quest per text.
+     *
+     * @param name the name of the pack.
+     * @param rules the rules of the pack.
+     * @param texts the text of each quest.
+     * @return the pack, not diffed yet.
+     * @see QuestPack
+     */
+    private static QuestPack createPack(String name, RuleMap rules, String... texts) {
+        QuestCreator creator = new QuestCreator();
+        List<Quest> quests = new ArrayList<>();
+        for (String text : texts) {
+            creator.startNewQuest(Quest.CATEGORY_DRINKING, text, 1, Quest.PLAYER_ONE,
+                    Quest.PARTNER_NO, Game.FRIENDS_LOOSE, null, null);
+            quests.add(creator.craftQuest());
+        }
+        return new QuestPack(name, quests, rules);
+    }
+
+    /**
+     * Creates a rule map.
+     *
+     * @param ids_and_texts pairs of rule id and text.
+     * @return the rules.
+     * @see RuleMap
+     */
+    private static RuleMap createRules(String... ids_and_texts) {
+        RuleMap rules = new RuleMap();
+        for (int i = 0; i < ids_and_texts.length; i += 2)
+            rules.addRule(ids_and_texts[i], ids_and_texts[i + 1]);
+        return rules;
+    }
+}
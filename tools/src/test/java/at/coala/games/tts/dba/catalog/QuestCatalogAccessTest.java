@@ -0,0 +1,368 @@
+package at.coala.games.tts.dba.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import at.coala.games.tts.data.Game;
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.QuestConfiguration;
+import at.coala.games.tts.data.quest.QuestCreator;
+import at.coala.games.tts.data.quest.RuleMap;
+
+/**
+ * Writes generated quests and rules with QuestCatalogWriter and checks that
+ * QuestCatalogAccess reads back the same quests and rules.
+ *
+ * @author Klaus
+ * @see QuestCatalogAccess
+ * @see QuestCatalogWriter
+ */
+public class QuestCatalogAccessTest {
+
+    /**
+     * A constant containing the language code of the test catalogs.
+     */
+    private static final String LANG_CODE = "DE";
+
+    /**
+     * A constant containing the number of generated quests.
+     */
+    private static final int QUEST_COUNT = 60;
+
+    /**
+     * Every quest and rule written into a catalog is read back equal, in the
+     * order of the shards. Rule ids of quests missing in the map are read back as
+     * rules without text.
+     *
+     * @throws IOException if the catalog could not be written or read.
+     */
+    @Test
+    public void roundTripKeepsQuestsAndRules() throws IOException {
+        List<Quest> quests = createQuests(new Random(1), QUEST_COUNT);
+        RuleMap rules = createRules();
+        byte[] catalog = write(quests, rules);
+
+        List<Quest> read = new ArrayList<>();
+        RuleMap read_rules = new RuleMap();
+        new QuestCatalogAccess().getQuests(
+                read, read_rules, LANG_CODE, new ByteArrayInputStream(catalog));
+
+        assertQuestsEqual(inShardOrder(quests), read);
+        for (String id : rules.getRuleIds())
+            assertEquals(rules.getRule(id), read_rules.getRule(id));
+        assertTrue(read_rules.getRuleIds().contains("missing"));
+        assertNull(read_rules.getRule("missing"));
+    }
+
+    /**
+     * Quests read out of a direct buffer, as a mapped catalog is, decode
+     * their texts out of the buffer and equal the quests written. Reading
+     * leaves the position of the buffer untouched.
+     *
+     * @throws IOException if the catalog could not be written or read.
+     */
+    @Test
+    public void directBufferDecodesTextsOnAccess() throws IOException {
+        List<Quest> quests = createQuests(new Random(4), QUEST_COUNT);
+        byte[] catalog = write(quests, createRules());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(catalog.length);
+        buffer.put(catalog).flip();
+
+        List<Quest> read = new ArrayList<>();
+        new QuestCatalogAccess().getQuests(read, new RuleMap(), LANG_CODE, buffer);
+
+        assertEquals(0, buffer.position());
+        assertQuestsEqual(inShardOrder(quests), read);
+    }
+
+    /**
+     * Every language of a catalog with several languages reads back only
+     * its own quests and rules.
+     *
+     * @throws IOException if the catalog could not be written or read.
+     */
+    @Test
+    public void everyLanguageReadsItsOwnSection() throws IOException {
+        List<Quest> de = createQuests(new Random(5), QUEST_COUNT);
+        List<Quest> en = createQuests(new Random(6), 7);
+        RuleMap en_rules = new RuleMap();
+        en_rules.addRule("rule0", "Rule 0");
+        QuestCatalogWriter writer = new QuestCatalogWriter();
+        writer.addLanguage(LANG_CODE, de, createRules());
+        writer.addLanguage("EN", en, en_rules);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        byte[] catalog = out.toByteArray();
+
+        List<Quest> read = new ArrayList<>();
+        RuleMap read_rules = new RuleMap();
+        new QuestCatalogAccess().getQuests(
+                read, read_rules, "EN", new ByteArrayInputStream(catalog));
+        assertQuestsEqual(inShardOrder(en), read);
+        assertEquals("Rule 0", read_rules.getRule("rule0"));
+
+        read = new ArrayList<>();
+        new QuestCatalogAccess().getQuests(
+                read, new RuleMap(), LANG_CODE, new ByteArrayInputStream(catalog));
+        assertQuestsEqual(inShardOrder(de), read);
+    }
+
+    /**
+     * Shards are read in level order and only up to the requested level. All
+     * shards together hold every quest, each quest in the shard of its
+     * lowest level other than 0.
+     *
+     * @throws IOException if the catalog could not be written or read.
+     */
+    @Test
+    public void shardsAreReadUpToTheRequestedLevel() throws IOException {
+        List<Quest> quests = createQuests(new Random(7), QUEST_COUNT);
+        byte[] catalog = write(quests, createRules());
+        QuestCatalogShards shards = new QuestCatalogAccess().getShards(
+                new RuleMap(), LANG_CODE, ByteBuffer.wrap(catalog));
+
+        List<Quest> low = shards.readShards(2);
+        assertTrue(shards.getNextLevel() > 2);
+        List<Quest> read = new ArrayList<>(low);
+        read.addAll(shards.readShards(Integer.MAX_VALUE - 1));
+        assertEquals(Integer.MAX_VALUE, shards.getNextLevel());
+        assertTrue(shards.readShards(Integer.MAX_VALUE - 1).isEmpty());
+
+        List<Quest> expected = inShardOrder(quests);
+        assertQuestsEqual(expected, read);
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(i < low.size(), getShardLevel(expected.get(i)) <= 2);
+    }
+
+    /**
+     * A catalog of another language is rejected and nothing is stored.
+     *
+     * @throws IOException if the catalog could not be written.
+     */
+    @Test
+    public void otherLanguageIsRejected() throws IOException {
+        byte[] catalog = write(createQuests(new Random(2), 5), createRules());
+        assertRejected(catalog, "EN");
+    }
+
+    /**
+     * A file that is no catalog or a truncated catalog is rejected and
+     * nothing is stored.
+     *
+     * @throws IOException if the catalog could not be written.
+     */
+    @Test
+    public void brokenCatalogIsRejected() throws IOException {
+        byte[] catalog = write(createQuests(new Random(3), 5), createRules());
+        byte[] magic = catalog.clone();
+        magic[0] ^= 0x55;
+        assertRejected(magic, LANG_CODE);
+        byte[] truncated = new byte[catalog.length - 3];
+        System.arraycopy(catalog, 0, truncated, 0, truncated.length);
+        assertRejected(truncated, LANG_CODE);
+    }
+
+    /**
+     * Checks that two lists of configurations are equal.
+     *
+     * @param expected the expected configurations, or null.
+     * @param actual the configurations read, or null.
+     * @see QuestConfiguration
+     */
+    private static void assertConfigurationsEqual(
+            List<QuestConfiguration> expected, List<QuestConfiguration> actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            QuestConfiguration e = expected.get(i);
+            QuestConfiguration a = actual.get(i);
+            assertEquals(e.level, a.level);
+            assertEquals(e.player, a.player);
+            assertEquals(e.partner, a.partner);
+            assertEquals(e.friendship_level, a.friendship_level);
+            assertEquals(e.skip, a.skip);
+            assertEquals(e.allow_delete, a.allow_delete);
+        }
+    }
+
+    /**
+     * Checks that two quests have the same content.
+     *
+     * @param expected the quest written.
+     * @param actual the quest read.
+     * @see Quest
+     */
+    static void assertQuestEquals(Quest expected, Quest actual) {
+        assertEquals(expected.categories, actual.categories);
+        assertEquals(expected.requirements, actual.requirements);
+        assertEquals(expected.rule_ids, actual.rule_ids);
+        assertEquals(expected.quest_texts, actual.quest_texts);
+        assertEquals(expected.comments, actual.comments);
+        assertEquals(expected.getSource(), actual.getSource());
+        assertEquals(expected.weight, actual.weight);
+        assertConfigurationsEqual(expected.getConfigurations(Game.LOCATION_PRIVATE),
+                actual.getConfigurations(Game.LOCATION_PRIVATE));
+        assertConfigurationsEqual(expected.getConfigurations(Game.LOCATION_PUBLIC),
+                actual.getConfigurations(Game.LOCATION_PUBLIC));
+    }
+
+    /**
+     * Checks that two lists of quests have the same content in the same
+     * order.
+     *
+     * @param expected the quests written.
+     * @param actual the quests read.
+     * @see List
+     * @see Quest
+     */
+    static void assertQuestsEqual(List<Quest> expected, List<Quest> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) assertQuestEquals(expected.get(i), actual.get(i));
+    }
+
+    /**
+     * Checks that reading a catalog fails and stores neither quests nor
+     * rules.
+     *
+     * @param catalog the catalog.
+     * @param lang_code the language code to read.
+     */
+    private static void assertRejected(byte[] catalog, String lang_code) {
+        List<Quest> read = new ArrayList<>();
+        RuleMap read_rules = new RuleMap();
+        try {
+            new QuestCatalogAccess().getQuests(
+                    read, read_rules, lang_code, new ByteArrayInputStream(catalog));
+            fail("Catalog not rejected.");
+        } catch (IOException e) {
+            assertTrue(read.isEmpty());
+            assertTrue(read_rules.getRuleIds().isEmpty());
+        }
+    }
+
+    /**
+     * Generates quests using every field of the catalog, with texts outside
+     * of ASCII.
+     *
+     * @param random the random numbers to generate the quests with.
+     * @param count the number of quests.
+     * @return the quests.
+     * @see Quest
+     */
+    static List<Quest> createQuests(Random random, int count) {
+        QuestCreator creator = new QuestCreator();
+        List<Quest> quests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            creator.startNewQuest(random.nextInt(Quest.CATEGORY_SUM), "Aufgabe " + i + " für €",
+                    1 + random.nextInt(10), random.nextInt(Quest.PLAYER_ONE + 1),
+                    random.nextInt(Quest.PARTNER_YES + 1), random.nextInt(Game.FRIENDS_LOOSE + 1),
+                    random.nextInt(2), random.nextInt(2));
+            if (random.nextBoolean())
+                creator.addCategory(random.nextInt(Quest.CATEGORY_SUM));
+            for (int t = random.nextInt(3); t > 0; t--) creator.addText("Text " + t + " 🍺");
+            for (int c = random.nextInt(3); c > 0; c--) creator.addComment("Kommentar " + c);
+            if (random.nextBoolean()) creator.addSource("Quelle " + i);
+            if (random.nextInt(3) == 0) creator.addRuleId("rule" + random.nextInt(3));
+            if (i == 0) creator.addRuleId("missing");
+            if (random.nextInt(3) == 0)
+                creator.addRequirement(random.nextInt(Quest.REQUIREMENT_POOL + 1));
+            for (int c = random.nextInt(3); c > 0; c--) {
+                creator.addConfiguration(Game.LOCATION_PRIVATE, 1 + random.nextInt(10),
+                        random.nextInt(Quest.PLAYER_ONE + 1), null,
+                        random.nextInt(Game.FRIENDS_LOOSE + 1), null, null);
+            }
+            if (random.nextBoolean()) {
+                creator.addConfiguration(Game.LOCATION_PUBLIC, 1 + random.nextInt(10),
+                        null, random.nextInt(Quest.PARTNER_YES + 1), null, random.nextInt(2), null);
+            }
+            if (random.nextBoolean()) creator.setWeight(1 + random.nextInt(Quest.MAX_WEIGHT));
+            quests.add(creator.craftQuest());
+        }
+        return quests;
+    }
+
+    /**
+     * Creates the rules of the test catalogs.
+     *
+     * @return the rules.
+     * @see RuleMap
+     */
+    static RuleMap createRules() {
+        RuleMap rules = new RuleMap();
+        for (int i = 0; i < 3; i++)
+            rules.addRule("rule" + i, "Regel " + i + " mit Umlauten äöü");
+        return rules;
+    }
+
+    /**
+     * Returns the level of the shard a quest is written into: the lowest
+     * level other than 0 of all its configurations, or 0.
+     *
+     * @param quest the quest.
+     * @return the shard level.
+     * @see Quest
+     */
+    private static int getShardLevel(Quest quest) {
+        int level = Integer.MAX_VALUE;
+        for (int location : new int[] { Game.LOCATION_PRIVATE, Game.LOCATION_PUBLIC }) {
+            List<QuestConfiguration> confs = quest.getConfigurations(location);
+            if (confs == null) continue;
+            for (QuestConfiguration conf : confs)
+                if (conf.level != 0) level = Math.min(level, conf.level);
+        }
+        return (level == Integer.MAX_VALUE) ? 0 : level;
+    }
+
+    /**
+     * Returns the quests in the order a catalog stores them: grouped by
+     * shard level, in the given order within each shard.
+     *
+     * @param quests the quests in the order written.
+     * @return the quests in catalog order.
+     * @see List
+     * @see Quest
+     */
+    static List<Quest> inShardOrder(List<Quest> quests) {
+        List<Quest> sorted = new ArrayList<>(quests);
+        Collections.sort(sorted, new Comparator<Quest>() {
+            @Override
+            public int compare(Quest a, Quest b) {
+                return getShardLevel(a) - getShardLevel(b);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Writes quests and rules into a catalog.
+     *
+     * @param quests the quests.
+     * @param rules the rules.
+     * @return the catalog.
+     * @throws IOException if the catalog could not be written.
+     */
+    private static byte[] write(List<Quest> quests, RuleMap rules) throws IOException {
+        QuestCatalogWriter writer = new QuestCatalogWriter();
+        writer.addLanguage(LANG_CODE, quests, rules);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return out.toByteArray();
+    }
+}
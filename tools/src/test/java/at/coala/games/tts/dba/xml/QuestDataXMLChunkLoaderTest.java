@@ -0,0 +1,220 @@
+package at.coala.games.tts.dba.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import at.coala.games.tts.data.quest.Quest;
+import at.coala.games.tts.data.quest.RuleMap;
+
+/**
+ * Parses generated XML quest files with QuestDataXMLChunkLoader and checks
+ * the result against a single-threaded parse with QuestDataXMLAccess.
+ *
+ * @author Klaus
+ * @see QuestDataXMLAccess
+ * @see QuestDataXMLChunkLoader
+ */
+public class QuestDataXMLChunkLoaderTest {
+
+    /**
+     * A constant containing the names of the categories used in the files.
+     */
+    private static final String[] CATEGORIES = {"DRINKING", "NON_ALK_DRINKING", "DO_FUNNY_THINGS"};
+
+    /**
+     * A constant containing the language code of the test files.
+     */
+    private static final String LANG_CODE = "DE";
+
+    /**
+     * A constant containing the number of generated quests, enough for
+     * several chunks.
+     */
+    private static final int QUEST_COUNT = 400;
+
+    /**
+     * The pool parsing the chunks.
+     *
+     * @see ForkJoinPool
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Creates the pool parsing the chunks.
+     */
+    @BeforeClass
+    public static void createPool() { pool = new ForkJoinPool(2); }
+
+    /**
+     * Shuts the pool parsing the chunks down.
+     */
+    @AfterClass
+    public static void shutdownPool() { pool.shutdown(); }
+
+    /**
+     * A file split into several chunks is stored exactly as a single-threaded
+     * parse stores it: the same quests in document order and the same rules.
+     *
+     * @throws Exception if the file could not be parsed.
+     */
+    @Test
+    public void chunkedParseEqualsSingleParse() throws Exception {
+        String xml = createXml(-1);
+
+        List<Quest> expected = new ArrayList<>();
+        RuleMap expected_rules = new RuleMap();
+        new QuestDataXMLAccess().getQuests(expected, expected_rules, LANG_CODE, newParser(xml));
+
+        List<Quest> read = new ArrayList<>();
+        RuleMap read_rules = new RuleMap();
+        List<QuestDataXMLChunkLoader.ChunkFailure> failures = new QuestDataXMLChunkLoader(pool)
+                .getQuests(read, read_rules, LANG_CODE, toStream(xml));
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(QUEST_COUNT, expected.size());
+        assertEquals(expected.size(), read.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertQuestEquals(expected.get(i), read.get(i));
+        assertEquals(expected_rules.getRuleIds(), read_rules.getRuleIds());
+        for (String id : expected_rules.getRuleIds())
+            assertEquals(expected_rules.getRule(id), read_rules.getRule(id));
+    }
+
+    /**
+     * A broken quest fails only its own chunk. The failure is reported with
+     * the line of the error in the original file, the quests of all other
+     * chunks and the quests of the broken chunk read before the error are
+     * stored in document order.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    @Test
+    public void brokenChunkIsReportedWithItsLine() throws IOException {
+        int broken = 300;
+        String xml = createXml(broken);
+        int error = xml.indexOf("</quest_textt>");
+        int line = 1;
+        for (int i = 0; i < error; i++) if (xml.charAt(i) == '\n') line++;
+
+        List<Quest> read = new ArrayList<>();
+        RuleMap read_rules = new RuleMap();
+        List<QuestDataXMLChunkLoader.ChunkFailure> failures = new QuestDataXMLChunkLoader(pool)
+                .getQuests(read, read_rules, LANG_CODE, toStream(xml));
+
+        assertEquals(1, failures.size());
+        QuestDataXMLChunkLoader.ChunkFailure failure = failures.get(0);
+        assertEquals(line, failure.line);
+        assertTrue(failure.first_quest > 0 && failure.first_quest <= broken);
+        for (int i = 0; i < broken; i++)
+            assertEquals(getText(i), read.get(i).quest_texts.get(0));
+        assertEquals(getText(QUEST_COUNT - 1),
+                read.get(read.size() - 1).quest_texts.get(0));
+        assertEquals(2, read_rules.getRuleIds().size());
+    }
+
+    /**
+     * Checks that two quests have the same content.
+     *
+     * @param expected the quest of the single-threaded parse.
+     * @param actual the quest of the chunked parse.
+     * @see Quest
+     */
+    private static void assertQuestEquals(Quest expected, Quest actual) {
+        assertEquals(expected.categories, actual.categories);
+        assertEquals(expected.requirements, actual.requirements);
+        assertEquals(expected.rule_ids, actual.rule_ids);
+        assertEquals(expected.quest_texts, actual.quest_texts);
+        assertEquals(expected.comments, actual.comments);
+        assertEquals(expected.getSource(), actual.getSource());
+    }
+
+    /**
+     * Generates a quest file with rules behind the quests, comments and
+     * quests in another language that must be skipped.
+     *
+     * @param broken the index of the quest with a misspelled end-tag, or -1
+     *               for a valid file.
+     * @return the XML document.
+     */
+    private static String createXml(int broken) {
+        StringBuilder xml = new StringBuilder(QUEST_COUNT * 300);
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<!-- <quest> -->\n")
+                .append("<tts_data>\n<questions>\n");
+        for (int i = 0; i < QUEST_COUNT; i++) {
+            xml.append("<quest>\n");
+            xml.append("  <language lang_code=\"EN\">\n")
+                    .append("    <quest_text>Drink ").append(i).append(".</quest_text>\n")
+                    .append("  </language>\n");
+            xml.append("  <language lang_code=\"DE\">\n")
+                    .append("    <quest_text>").append(getText(i))
+                    .append((i == broken) ? "\n</quest_textt>\n" : "</quest_text>\n");
+            if (i % 3 == 0) xml.append("    <quest_text>Noch ein Text 🍺</quest_text>\n");
+            if (i % 5 == 0)
+                xml.append("    <comment><![CDATA[<quest> ").append(i).append("]]></comment>\n");
+            xml.append("  </language>\n");
+            xml.append("  <category category_name=\"")
+                    .append(CATEGORIES[i % CATEGORIES.length]).append("\" />\n");
+            if (i % 7 == 0) xml.append("  <apply_rule rule=\"rule").append(i % 2).append("\" />\n");
+            xml.append("  <conf level=\"").append(1 + i % 10).append("\" player=\"ONE\" />\n");
+            if (i % 4 == 0) xml.append("  <source>Quelle ").append(i).append("</source>\n");
+            xml.append("</quest>\n");
+            if (i % 50 == 0) xml.append("\n<!-- ").append(i).append(" -->\n\n");
+        }
+        xml.append("</questions>\n<rules>\n");
+        for (int i = 0; i < 2; i++) {
+            xml.append("<rule id=\"rule").append(i).append("\">\n")
+                    .append("  <rule_text lang_code=\"EN\">R").append(i).append("</rule_text>\n")
+                    .append("  <rule_text lang_code=\"DE\">").append(i).append("</rule_text>\n")
+                    .append("</rule>\n");
+        }
+        xml.append("</rules>\n</tts_data>\n");
+        return xml.toString();
+    }
+
+    /**
+     * Returns the first text of a generated quest.
+     *
+     * @param i the index of the quest.
+     * @return the text.
+     */
+    private static String getText(int i) { return "Trinke " + i + " mal für €."; }
+
+    /**
+     * Creates a pull-parser reading a XML document.
+     *
+     * @param xml the XML document.
+     * @return the parser.
+     * @throws XmlPullParserException if no parser could be created.
+     * @see XmlPullParser
+     */
+    private static XmlPullParser newParser(String xml) throws XmlPullParserException {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(xml));
+        return parser;
+    }
+
+    /**
+     * Encodes a XML document as UTF-8 stream.
+     *
+     * @param xml the XML document.
+     * @return the stream.
+     * @throws IOException if UTF-8 is not supported.
+     */
+    private static ByteArrayInputStream toStream(String xml) throws IOException {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+}